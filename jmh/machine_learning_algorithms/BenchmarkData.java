@@ -0,0 +1,35 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+
+final class BenchmarkData {
+
+    /**
+     * This Class supplies the data sets of the JMH benchmarks: the digits, scaled to the rows and
+     * features of each benchmark parameter combination by SyntheticData. Query rows use another
+     * seed, so they are not copies of training rows.
+     */
+
+    static final int QUERY_ROWS = 512; // Query rows scored by the batch and per-row benchmarks
+    static final long SEED = 42;
+
+    private static Dataset digits;
+
+    private BenchmarkData() {
+    }
+
+    static synchronized Dataset digits() throws IOException {
+        if (digits == null) {
+            digits = Dataset.concat(Dataset.loadAll(AlgorithmRunner.Dataset_1, AlgorithmRunner.Dataset_2));
+        }
+        return digits;
+    }
+
+    static Dataset training(int rows, int dim) throws IOException {
+        return SyntheticData.scale(digits(), rows, dim, SEED);
+    }
+
+    static Dataset queries(int dim) throws IOException {
+        return SyntheticData.scale(digits(), QUERY_ROWS, dim, SEED + 1);
+    }
+}
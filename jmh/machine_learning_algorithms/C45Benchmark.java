@@ -0,0 +1,66 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class C45Benchmark {
+
+    /**
+     * This Class times growing and pruning a C4.5 tree with the configured settings (op = one
+     * tree) and walking the compiled tree (op = one row).
+     */
+
+    @Param({"1000", "5000"})
+    public int rows;
+
+    @Param({"64"})
+    public int dim;
+
+    private Dataset training;
+    private Dataset queries;
+    private C45_Algorithm trained;
+
+    @Setup
+    public void setUp() throws IOException {
+        training = BenchmarkData.training(rows, dim);
+        queries = BenchmarkData.queries(dim);
+        trained = new C45_Algorithm();
+        trained.fit(training);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public C45_Algorithm buildTree() {
+        C45_Algorithm c45 = new C45_Algorithm();
+        c45.fit(training);
+        return c45;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(BenchmarkData.QUERY_ROWS)
+    public void classify(Blackhole blackhole) {
+        for (int row = 0; row < queries.rows(); row++) {
+            blackhole.consume(trained.predict(queries.features(), queries.offset(row)));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    /**
+     * This Class times the squared Euclidean distance kernel; op = one distance.
+     */
+
+    private static final int REFERENCE_ROWS = 256; // Reference rows per invocation
+
+    @Param({"64"})
+    public int dim;
+
+    private Dataset reference;
+    private Dataset queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        reference = BenchmarkData.training(REFERENCE_ROWS, dim);
+        queries = BenchmarkData.queries(dim);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REFERENCE_ROWS)
+    public double squaredEuclidean() {
+        int query = queries.offset(next++ % queries.rows());
+        double sum = 0;
+        for (int row = 0; row < REFERENCE_ROWS; row++) {
+            sum += DistanceKernels.squaredEuclidean(queries.features(), query, reference.features(), reference.offset(row), dim);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,59 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    /**
+     * This Class times training and scoring one stratified fold, as the evaluation engine does;
+     * op = one fold.
+     */
+
+    private static final int FOLDS = 5;
+
+    @Param({"1000", "5000"})
+    public int rows;
+
+    @Param({"64"})
+    public int dim;
+
+    @Param({KNN_Algorithm.Model_Kind, C45_Algorithm.Model_Kind, SOM_Algorithm.Model_Kind})
+    public String algorithm;
+
+    private Dataset training;
+    private Dataset test;
+
+    @Setup
+    public void setUp() throws IOException {
+        Dataset data = BenchmarkData.training(rows, dim);
+        Evaluation.Fold fold = Evaluation.stratifiedFolds(data, FOLDS, BenchmarkData.SEED)[0];
+        training = data.select(fold.train);
+        test = data.select(fold.test);
+    }
+
+    @Benchmark
+    public int[] fold() {
+        Classifier classifier = Classifier.create(algorithm, dim, WorkerPool.shared());
+        classifier.fit(training);
+        return classifier.predictBatch(test);
+    }
+}
@@ -0,0 +1,62 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KnnBenchmark {
+
+    /**
+     * This Class times KNN classification with the configured index (AlgorithmRunner.KNN_Index),
+     * one row at a time and as a parallel batch; op = one query.
+     */
+
+    @Param({"1000", "5000"})
+    public int rows;
+
+    @Param({"64"})
+    public int dim;
+
+    @Param({"1", "5"})
+    public int k;
+
+    private KNN_Algorithm knn;
+    private Dataset queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        knn = new KNN_Algorithm(WorkerPool.shared(), k);
+        knn.fit(BenchmarkData.training(rows, dim));
+        queries = BenchmarkData.queries(dim);
+    }
+
+    @Benchmark
+    public int classify() {
+        return knn.predict(queries.features(), queries.offset(next++ % queries.rows()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.QUERY_ROWS)
+    public int[] predictBatch() {
+        return knn.predictBatch(queries);
+    }
+}
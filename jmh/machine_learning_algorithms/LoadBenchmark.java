@@ -0,0 +1,67 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+    /**
+     * This Class times reading a data set of the given size from CSV and from the binary cache
+     * format; op = one file.
+     */
+
+    @Param({"1000", "5000"})
+    public int rows;
+
+    @Param({"64"})
+    public int dim;
+
+    private Path csv;
+    private Path binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        Dataset data = BenchmarkData.training(rows, dim);
+        csv = Files.createTempFile("benchmark", ".csv");
+        SyntheticData.writeCsv(data, csv);
+        binary = Files.createTempFile("benchmark", DatasetCache.Extension);
+        DatasetCache.write(data, binary, -1, -1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(binary);
+    }
+
+    @Benchmark
+    public Dataset csv() throws IOException {
+        return Dataset.parseCsv(csv.toString());
+    }
+
+    @Benchmark
+    public Dataset binary() throws IOException {
+        return DatasetCache.read(binary);
+    }
+}
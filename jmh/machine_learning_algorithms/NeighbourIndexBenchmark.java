@@ -0,0 +1,88 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeighbourIndexBenchmark {
+
+    /**
+     * This Class times each neighbour index against the plain linear scan ("plain"): single-threaded
+     * batched queries in tiles of BlockedScanIndex.Query_Tile rows (op = one query) and the index
+     * build (op = one build). "linear" prunes as KNN_Prune says. The leaf size only matters for the
+     * tree indexes; sweep it with e.g. -p leafSize=8,16,32,64. That every index returns the plain
+     * scan's neighbours is checked in NeighbourIndexTest.
+     */
+
+    @Param({"5000"})
+    public int rows;
+
+    @Param({"64"})
+    public int dim;
+
+    @Param({"5"})
+    public int k;
+
+    @Param({"plain", "linear", "blocked", "quantized", "kdtree", "vptree", "balltree"})
+    public String kind;
+
+    @Param({"16"})
+    public int leafSize;
+
+    private Dataset reference;
+    private Dataset queries;
+    private NeighbourIndex index;
+    private NeighbourHeap[] batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        reference = BenchmarkData.training(rows, dim);
+        queries = BenchmarkData.queries(dim);
+        index = build();
+        batch = new NeighbourHeap[BlockedScanIndex.Query_Tile];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new NeighbourHeap(k);
+        }
+    }
+
+    private NeighbourIndex build() {
+        return kind.equals("plain") ? new LinearScanIndex(reference, false) : NeighbourIndex.build(kind, reference, leafSize);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.QUERY_ROWS)
+    public NeighbourHeap[] searchBatch() {
+        for (int start = 0; start < queries.rows(); start += batch.length) {
+            int count = Math.min(batch.length, queries.rows() - start);
+            for (int i = 0; i < count; i++) {
+                batch[i].clear();
+            }
+            index.searchBatch(queries, start, count, batch);
+        }
+        return batch;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public NeighbourIndex buildIndex() {
+        return build();
+    }
+}
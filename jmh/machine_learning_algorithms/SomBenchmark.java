@@ -0,0 +1,81 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SomBenchmark {
+
+    /**
+     * This Class times the SOM: BMU lookups on a map trained for one epoch (op = one query),
+     * online training steps (op = one step) and one epoch of parallel batch training (op = one
+     * epoch).
+     */
+
+    private static final int ONLINE_STEPS = 1000; // Online steps per invocation
+
+    @Param({"1000", "5000"})
+    public int rows;
+
+    @Param({"64"})
+    public int dim;
+
+    @Param({"10"})
+    public int grid;
+
+    private Dataset training;
+    private Dataset queries;
+    private SOM_Algorithm trained;
+
+    @Setup
+    public void setUp() throws IOException {
+        training = BenchmarkData.training(rows, dim);
+        queries = BenchmarkData.queries(dim);
+        trained = new SOM_Algorithm(grid, grid, dim, WorkerPool.shared());
+        trained.trainBatch(training, 1);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(BenchmarkData.QUERY_ROWS)
+    public void findBMU(Blackhole blackhole) {
+        for (int row = 0; row < queries.rows(); row++) {
+            blackhole.consume(trained.lookup(queries.features(), queries.offset(row)));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(ONLINE_STEPS)
+    public SOM_Algorithm updateWeights() {
+        SOM_Algorithm som = new SOM_Algorithm(grid, grid, dim, WorkerPool.shared());
+        som.train(training, ONLINE_STEPS);
+        return som;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SOM_Algorithm train() {
+        SOM_Algorithm som = new SOM_Algorithm(grid, grid, dim, WorkerPool.shared());
+        som.trainBatch(training, 1);
+        return som;
+    }
+}
@@ -1,72 +1,141 @@
-package machine_learning_algorithms;
-
-import java.io.FileNotFoundException;
-
-public class AlgorithmRunner {
-
-    // Default settings
-    public static final String Dataset_1 = "./data/dataset1.csv"; 
-    public static final String Dataset_2 = "./data/dataset2.csv"; 
-    public final static boolean Print_Details = true; // If set to true will print the guess and original labels
-    
-    // K-nearest neighbors settings
-    public final static boolean KNN_Algorithm = false; // If set to true, it will run KNN algorithm
-    public final static int K_Value = 1; // Value for the amount of the numbers to check for (Best results with K = 1)
-    
-    // Random Guess settings
-    public final static boolean Random_Guess_Algorithm = false; // If set to true, it will run Random Guess algorithm
-    
-    // SOM Self-Organizing Maps settings
-    public final static boolean SOM_Algorithm = false; // If set to true, it will run SOM algorithm
-
-    // C4.5 Decision Tree settings
-    public final static boolean C45_Algorithm = true; // If set to true, it will run MLP algorithm
-
-    public static void main(String[] args) {
-    	// This will run the K-Nearest Neighbor Algorithm 
-        if (KNN_Algorithm) {
-            System.out.println("Running KNN algorithm...");
-            KNN_Algorithm knn = new KNN_Algorithm();
-            try {
-                knn.run();
-            } catch (FileNotFoundException File_Error) {
-                System.out.println("Error when reading KNN test or train file!");
-            }
-        }
-        
-        // This will run the Random Guess Number Algorithm
-        if (Random_Guess_Algorithm) {
-            System.out.println("Running Random Guess algorithm...");
-            Random_Guess_Algorithm randomGuess = new Random_Guess_Algorithm();
-            try {
-                randomGuess.run();
-            } catch (FileNotFoundException File_Error) {
-                System.out.println("Error when reading Random Guess test or train file!");
-            }
-        }
-        
-        // This will run the Self-Organizing Map Algorithm
-        if (SOM_Algorithm) {
-            System.out.println("Running SOM algorithm...");
-            try {
-                // Create an instance of SOM_Algorithm and run it
-                SOM_Algorithm som = new SOM_Algorithm(10, 10, 64); // Grid size 10x10, input dimensions 64
-                som.run();
-            } catch (FileNotFoundException File_Error) {
-                System.out.println("Error when reading SOM test or train file: " + File_Error.getMessage());
-            }
-        }
-        
-        // This will run the C4.5 Decision Tree Algorithm
-        if (C45_Algorithm) {
-            System.out.println("Running C4.5 algorithm...");
-            try {
-                // Create an instance of C45 Algorithm and run it
-                C45_Algorithm c45 = new C45_Algorithm();
-                c45.run();
-            } catch (Exception e) {
-                System.out.println("An error occurred: " + e.getMessage());
-            }
-        }
-    }
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+public class AlgorithmRunner {
+
+    // Default settings
+    public static final String Dataset_1 = "./data/dataSet1.csv"; 
+    public static final String Dataset_2 = "./data/dataSet2.csv"; 
+    public final static boolean Print_Details = true; // If set to true, every prediction (row, actual and predicted label, score, latency) is written to the prediction log
+    public final static String Prediction_Log = "predictions"; // Directory of the prediction logs, one file per algorithm (knn.csv, c45.csv, ...)
+    public final static String Prediction_Log_Format = "console"; // Prediction log: console (the correct/incorrect lines on standard output), csv or binary (28-byte .mlpl records), both written to the Prediction_Log directory
+    public final static int Prediction_Log_Capacity = 65536; // Predictions buffered between the algorithms and the background log writer
+    public final static String Prediction_Log_Policy = "block"; // When the buffer is full: block (wait for the writer) or drop (count and discard the prediction)
+    public final static boolean Use_Binary_Cache = true; // If set to true, CSV files are cached as binary .mlds files next to them
+    public final static int Thread_Count = 0; // Number of worker threads for parallel training and scoring (0 = all cores)
+    public final static boolean Evaluation_Engine = true; // If set to true, the selected algorithms are compared on shared folds in one report (false runs each algorithm's own two-fold test)
+    public final static int Evaluation_Folds = 0; // Evaluation folds: 0 = one per data file (train on one, test on the other), k >= 2 = stratified k-fold over all files
+    public final static long Evaluation_Seed = 42; // Shuffle seed of the stratified folds
+    public final static boolean Metrics_Enabled = false; // If set to true, phases, prediction latencies and algorithm counters are recorded (also as JFR events)
+    public final static String Metrics_File = "metrics.prom"; // Metrics snapshot written at the end of a run: Prometheus text, or JSON if the name ends in .json
+
+    // Scoring server settings (ScoringServer)
+    public final static int Server_Port = 8080; // Port the scoring server listens on (localhost only)
+    public final static int Server_Max_Batch = 64; // Most rows coalesced from concurrent requests into one predictBatch call
+    public final static long Server_Max_Wait_Micros = 200; // Longest a request waits for others to join its batch (0 = only what is already queued)
+    public final static int Server_Threads = 64; // Request threads when the JVM has no virtual threads
+    public final static int Server_Queue_Capacity = 4096; // Requests waiting for a batch before new ones are refused with 503
+    
+    // K-nearest neighbors settings
+    public final static boolean KNN_Algorithm = false; // If set to true, it will run KNN algorithm
+    public final static int K_Value = 1; // Value for the amount of the numbers to check for (Best results with K = 1)
+    public final static String KNN_Index = "blocked"; // Neighbour search: linear, blocked (batched), quantized (uint8), kdtree, vptree, balltree (exact) or hnsw (approximate)
+    public final static boolean KNN_Prune = true; // Linear scan rejects rows by lower bounds and abandons partial distances early
+    public final static int KNN_Rerank_Factor = 4; // Quantized search on non-integer data re-ranks K * factor candidates in full precision (0 = off)
+    public final static int KNN_Leaf_Size = 16; // Rows per leaf of the tree indexes
+    public final static int KNN_Hnsw_M = 16; // HNSW links per node (2 * M on the bottom level)
+    public final static int KNN_Hnsw_Ef_Construction = 200; // HNSW candidate list size while building
+    public final static int KNN_Hnsw_Ef_Search = 50; // HNSW candidate list size while searching (higher = better recall, slower)
+    public final static int KNN_Segment_Rows = 4096; // Rows added after training are scanned until a segment of this many is indexed
+    public final static double KNN_Compaction_Threshold = 0.2; // Deleted fraction of the indexed rows that starts a background compaction
+    public final static int KNN_Max_Segments = 8; // Indexed segments kept before a background compaction merges them
+    
+    // Random Guess settings
+    public final static boolean Random_Guess_Algorithm = false; // If set to true, it will run Random Guess algorithm
+    
+    // SOM Self-Organizing Maps settings
+    public final static boolean SOM_Algorithm = false; // If set to true, it will run SOM algorithm
+    public final static String SOM_Training = "batch"; // Training: batch (whole data set per epoch, parallel) or online (one random sample per step)
+    public final static int SOM_Epochs = 30; // Passes over the training data in batch mode
+    public final static int SOM_Iterations = 10000; // Random samples drawn in online mode
+    public final static String SOM_Bmu_Search = "exhaustive"; // BMU search: exhaustive, or local (windowed late training, coarse-to-fine lookups; approximate)
+    public final static int SOM_Bmu_Window = 2; // Local search: nodes searched on each side of a sample's previous BMU
+    public final static int SOM_Coarse_Block = 2; // Local search: side of the node blocks summarised for coarse-to-fine lookups
+    public final static int SOM_Coarse_Candidates = 3; // Local search: closest blocks searched exactly
+    public final static int SOM_Stream_Half_Life = 2000; // Streaming (partialFit): samples after which the learning rate and radius have halved
+    public final static double SOM_Stream_Min_Rate = 0.01; // Streaming: learning rate floor, so the map keeps following new data
+
+    // C4.5 Decision Tree settings
+    public final static boolean C45_Algorithm = true; // If set to true, it will run MLP algorithm
+    public final static String C45_Split_Search = "histogram"; // Split search: histogram (binned class counts) or presorted (exact, sorted columns)
+    public final static String C45_Split_Criterion = "gain"; // Attribute choice: gain (information gain) or gainratio (C4.5 gain ratio)
+    public final static boolean C45_Parallel = true; // If set to true, trees are built on the worker pool (same trees as the sequential build)
+    public final static double C45_Confidence = 0.25; // Pessimistic pruning confidence factor, smaller prunes harder (0 = no pruning)
+    public final static int C45_Max_Depth = 0; // Deepest allowed node (0 = unlimited)
+    public final static int C45_Min_Samples_Leaf = 2; // Smallest number of training rows a split may leave in a child
+    public final static double C45_Min_Gain = 0.0; // Smallest information gain (bits) a split must reach
+
+    // Command line arguments (see Evaluation) override the settings above and always use the evaluation engine
+    public static void main(String[] args) {
+        runAlgorithms(args);
+        if (Metrics.Enabled) {
+            try {
+                Metrics.writeSnapshot(Paths.get(Metrics_File));
+                System.out.println("\nMetrics written to " + Metrics_File);
+            } catch (IOException File_Error) {
+                System.out.println("Error when writing the metrics file: " + File_Error.getMessage());
+            }
+        }
+    }
+
+    private static void runAlgorithms(String[] args) {
+        if (Evaluation_Engine || args.length > 0) {
+            try {
+                Evaluation.fromArguments(args).run();
+            } catch (IOException File_Error) {
+                System.out.println("Error when reading a data file: " + File_Error.getMessage());
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
+
+    	// This will run the K-Nearest Neighbor Algorithm 
+        if (KNN_Algorithm) {
+            System.out.println("Running KNN algorithm...");
+            KNN_Algorithm knn = new KNN_Algorithm();
+            try {
+                knn.run();
+            } catch (IOException File_Error) {
+                System.out.println("Error when reading KNN test or train file!");
+            }
+        }
+        
+        // This will run the Random Guess Number Algorithm
+        if (Random_Guess_Algorithm) {
+            System.out.println("Running Random Guess algorithm...");
+            Random_Guess_Algorithm randomGuess = new Random_Guess_Algorithm();
+            try {
+                randomGuess.run();
+            } catch (IOException File_Error) {
+                System.out.println("Error when reading Random Guess test or train file!");
+            }
+        }
+        
+        // This will run the Self-Organizing Map Algorithm
+        if (SOM_Algorithm) {
+            System.out.println("Running SOM algorithm...");
+            try {
+                // Create an instance of SOM_Algorithm and run it
+                SOM_Algorithm som = new SOM_Algorithm(10, 10, 64); // Grid size 10x10, input dimensions 64
+                som.run();
+            } catch (IOException File_Error) {
+                System.out.println("Error when reading SOM test or train file: " + File_Error.getMessage());
+            }
+        }
+        
+        // This will run the C4.5 Decision Tree Algorithm
+        if (C45_Algorithm) {
+            System.out.println("Running C4.5 algorithm...");
+            try {
+                // Create an instance of C45 Algorithm and run it
+                C45_Algorithm c45 = new C45_Algorithm();
+                c45.run();
+            } catch (Exception e) {
+                System.out.println("An error occurred: " + e.getMessage());
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+
+class BallTreeIndex extends TreeIndex {
+
+    /**
+     * Ball tree: nodes are split at the median of their widest dimension and each node keeps the
+     * centroid and radius of the ball holding its rows. No row of a node can be closer to the query
+     * than its distance to the centroid minus the radius, which is the pruning bound.
+     */
+
+    private float[] centroids = new float[16 * dim];
+    private double[] radius = new double[16];
+
+    BallTreeIndex(Dataset reference, int leafSize) {
+        super(reference, leafSize);
+        if (order.length > 0) {
+            build(0, order.length);
+        }
+        finishBuild();
+    }
+
+    @Override
+    protected void growNodes(int capacity) {
+        centroids = Arrays.copyOf(centroids, capacity * dim);
+        radius = Arrays.copyOf(radius, capacity);
+    }
+
+    private int build(int start, int end) {
+        int node = addNode(start, end);
+        storeBall(node, start, end);
+
+        int splitDim = end - start > leafSize ? widestDimension(start, end) : -1;
+        if (splitDim < 0) {
+            return node;
+        }
+        int middle = splitAtMedian(start, end, splitDim);
+        int left = build(start, middle);
+        int right = build(middle, end);
+        nodeLeft[node] = left;
+        nodeRight[node] = right;
+        return node;
+    }
+
+    private void storeBall(int node, int start, int end) {
+        float[] features = reference.features();
+        int base = node * dim;
+        double[] sum = new double[dim];
+        for (int position = start; position < end; position++) {
+            int offset = order[position] * dim;
+            for (int d = 0; d < dim; d++) {
+                sum[d] += features[offset + d];
+            }
+        }
+        for (int d = 0; d < dim; d++) {
+            centroids[base + d] = (float) (sum[d] / (end - start));
+        }
+        double maxSquared = 0;
+        for (int position = start; position < end; position++) {
+            maxSquared = Math.max(maxSquared, DistanceKernels.squaredEuclidean(centroids, base, features, order[position] * dim, dim));
+        }
+        radius[node] = Math.sqrt(maxSquared);
+    }
+
+    @Override
+    public void search(float[] query, int queryOffset, NeighbourHeap nearest) {
+        if (nodeCount > 0) {
+            nearest.countEvaluations(1);
+            search(0, lowerBound(0, query, queryOffset), query, queryOffset, nearest);
+        }
+    }
+
+    private void search(int node, double bound, float[] query, int queryOffset, NeighbourHeap nearest) {
+        if (prunable(bound, Math.sqrt(nearest.worstDistance()))) {
+            return;
+        }
+        if (nodeLeft[node] < 0) {
+            scanLeaf(query, queryOffset, nodeStart[node], nodeEnd[node], nearest);
+            return;
+        }
+        // Visit the child whose ball is closer first
+        int left = nodeLeft[node];
+        int right = nodeRight[node];
+        double leftBound = lowerBound(left, query, queryOffset);
+        double rightBound = lowerBound(right, query, queryOffset);
+        nearest.countEvaluations(2);
+        if (leftBound <= rightBound) {
+            search(left, leftBound, query, queryOffset, nearest);
+            search(right, rightBound, query, queryOffset, nearest);
+        } else {
+            search(right, rightBound, query, queryOffset, nearest);
+            search(left, leftBound, query, queryOffset, nearest);
+        }
+    }
+
+    // Smallest possible distance from the query to a row of the node's ball
+    private double lowerBound(int node, float[] query, int queryOffset) {
+        double toCentroid = Math.sqrt(DistanceKernels.squaredEuclidean(query, queryOffset, centroids, node * dim, dim));
+        return Math.max(0, toCentroid - radius[node]);
+    }
+}
@@ -0,0 +1,205 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+class BlockedScanIndex implements NeighbourIndex {
+
+    /**
+     * Batch distance engine for scoring many queries against the reference set. Squared distances
+     * are expanded as ||q||^2 + ||r||^2 - 2 q.r with the reference norms computed once, so the work
+     * becomes dot products. The reference rows are stored as transposed tiles (feature-major,
+     * Reference_Tile rows wide) small enough to stay in cache. The micro-kernel takes four queries
+     * at a time and, per feature, adds query value x tile row into four accumulator rows: each
+     * loaded tile value is used four times and the inner loop has no reduction, so the JIT can
+     * vectorise it. Each distance goes straight into its query's top-K heap, so the full query by
+     * reference distance matrix is never stored.
+     *
+     * Dot products are accumulated in float. That is exact when the reference rows and the query
+     * are integers and every partial sum stays below 2^24, such as for the digit pixels. exact()
+     * holds for a reference set that allows it; a query outside that bound (fractional or too large
+     * values) is then scanned in full precision instead, like search(), and counted in statistics().
+     * For a reference set that does not allow it, near-tied neighbours may swap.
+     */
+
+    // Query rows per batch the caller should pass, and reference rows per transposed tile
+    static final int Query_Tile = 64;
+    static final int Reference_Tile = 256;
+    private static final int QUERY_GROUP = 4;
+
+    private final Dataset reference;
+    private final int dim;
+    private final int tileCount;
+    private final float[] tiles;
+    private final double[] referenceNorms;
+    private final boolean exact;
+    private final float maxMagnitude; // Largest absolute reference value
+    private final LongAdder fullPrecisionQueries = new LongAdder();
+    private final ThreadLocal<BatchScratch> scratch = ThreadLocal.withInitial(BatchScratch::new);
+
+    BlockedScanIndex(Dataset reference) {
+        this.reference = reference;
+        this.dim = reference.dim();
+        this.tileCount = (reference.rows() + Reference_Tile - 1) / Reference_Tile;
+        this.tiles = new float[tileCount * Reference_Tile * dim];
+        this.referenceNorms = new double[reference.rows()];
+
+        // Tile t holds feature d of its row j at t * Reference_Tile * dim + d * Reference_Tile + j
+        float[] features = reference.features();
+        float maxMagnitude = 0;
+        boolean integral = true;
+        for (int row = 0; row < reference.rows(); row++) {
+            int tileBase = row / Reference_Tile * Reference_Tile * dim + row % Reference_Tile;
+            double norm = 0;
+            for (int d = 0; d < dim; d++) {
+                float value = features[row * dim + d];
+                tiles[tileBase + d * Reference_Tile] = value;
+                norm += (double) value * value;
+                maxMagnitude = Math.max(maxMagnitude, Math.abs(value));
+                integral &= value == (int) value;
+            }
+            referenceNorms[row] = norm;
+        }
+        // Float sums of integers stay exact below 2^24; each query is checked against the same bound
+        this.maxMagnitude = maxMagnitude;
+        this.exact = integral && (double) dim * maxMagnitude * maxMagnitude < (1 << 24);
+    }
+
+    @Override
+    public Dataset reference() {
+        return reference;
+    }
+
+    @Override
+    public boolean exact() {
+        return exact;
+    }
+
+    @Override
+    public String statistics() {
+        long queries = fullPrecisionQueries.sum();
+        return queries == 0 ? null : queries + " queries outside the exact float range scanned in full precision";
+    }
+
+    // True if the float dot products of the query with every reference row are exact integers
+    private boolean exactFor(float[] query, int queryOffset) {
+        float queryMagnitude = 0;
+        for (int d = 0; d < dim; d++) {
+            float value = query[queryOffset + d];
+            if (value != (int) value) {
+                return false;
+            }
+            queryMagnitude = Math.max(queryMagnitude, Math.abs(value));
+        }
+        return (double) dim * queryMagnitude * maxMagnitude < (1 << 24);
+    }
+
+    @Override
+    public void search(float[] query, int queryOffset, NeighbourHeap nearest) {
+        float[] features = reference.features();
+        for (int row = 0; row < reference.rows(); row++) {
+            double distance = DistanceKernels.squaredEuclidean(query, queryOffset, features, row * dim, dim);
+            if (distance <= nearest.worstDistance()) {
+                nearest.offer(distance, row);
+            }
+        }
+        nearest.countEvaluations(reference.rows());
+    }
+
+    @Override
+    public void searchBatch(Dataset queries, int start, int count, NeighbourHeap[] nearest) {
+        float[] q = queries.features();
+        BatchScratch buffers = scratch.get();
+        float[][] sums = buffers.sums;
+        double[] queryNorms = buffers.queryNorms;
+        int[] offsets = buffers.offsets;
+
+        // With an exact index, queries the float kernel would round are scanned in full precision
+        int[] tiled = buffers.tiled(count);
+        int tiledCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (exact && !exactFor(q, queries.offset(start + i))) {
+                fullPrecisionQueries.increment();
+                search(q, queries.offset(start + i), nearest[i]);
+            } else {
+                tiled[tiledCount++] = i;
+            }
+        }
+
+        for (int group = 0; group < tiledCount; group += QUERY_GROUP) {
+            int groupSize = Math.min(QUERY_GROUP, tiledCount - group);
+            for (int i = 0; i < QUERY_GROUP; i++) {
+                // A short last group repeats its first query; the extra results are dropped
+                offsets[i] = queries.offset(start + tiled[group + (i < groupSize ? i : 0)]);
+                double norm = 0;
+                for (int d = 0; d < dim; d++) {
+                    norm += (double) q[offsets[i] + d] * q[offsets[i] + d];
+                }
+                queryNorms[i] = norm;
+            }
+
+            for (int tile = 0; tile < tileCount; tile++) {
+                multiplyTile(q, offsets, tile, sums);
+                int firstRow = tile * Reference_Tile;
+                int width = Math.min(Reference_Tile, reference.rows() - firstRow);
+                for (int i = 0; i < groupSize; i++) {
+                    NeighbourHeap heap = nearest[tiled[group + i]];
+                    float[] dots = sums[i];
+                    for (int j = 0; j < width; j++) {
+                        // Rounding in the expansion can leave tiny negatives for identical rows
+                        double distance = Math.max(0, queryNorms[i] + referenceNorms[firstRow + j] - 2.0 * dots[j]);
+                        if (distance <= heap.worstDistance()) {
+                            heap.offer(distance, firstRow + j);
+                        }
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < tiledCount; i++) {
+            nearest[tiled[i]].countEvaluations(reference.rows());
+        }
+    }
+
+    // Micro-kernel: dot products of four queries with every row of one transposed tile
+    private void multiplyTile(float[] q, int[] offsets, int tile, float[][] sums) {
+        float[] sum0 = sums[0];
+        float[] sum1 = sums[1];
+        float[] sum2 = sums[2];
+        float[] sum3 = sums[3];
+        Arrays.fill(sum0, 0);
+        Arrays.fill(sum1, 0);
+        Arrays.fill(sum2, 0);
+        Arrays.fill(sum3, 0);
+        int tileBase = tile * Reference_Tile * dim;
+        for (int d = 0; d < dim; d++) {
+            float v0 = q[offsets[0] + d];
+            float v1 = q[offsets[1] + d];
+            float v2 = q[offsets[2] + d];
+            float v3 = q[offsets[3] + d];
+            int column = tileBase + d * Reference_Tile;
+            for (int j = 0; j < Reference_Tile; j++) {
+                float b = tiles[column + j];
+                sum0[j] += v0 * b;
+                sum1[j] += v1 * b;
+                sum2[j] += v2 * b;
+                sum3[j] += v3 * b;
+            }
+        }
+    }
+
+    // Per-thread accumulator rows, query norms and query offsets of the current group
+    private static final class BatchScratch {
+        final float[][] sums = new float[QUERY_GROUP][Reference_Tile];
+        final double[] queryNorms = new double[QUERY_GROUP];
+        final int[] offsets = new int[QUERY_GROUP];
+        private int[] tiled = new int[Query_Tile];
+
+        // Positions in the batch of the queries the tiled kernel scores, room for count of them
+        int[] tiled(int count) {
+            if (tiled.length < count) {
+                tiled = new int[count];
+            }
+            return tiled;
+        }
+    }
+}
@@ -1,265 +1,342 @@
-package machine_learning_algorithms;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-public class C45_Algorithm {
-
-    /**
-     * This Class runs the C4.5 Algorithm with training and test data sets.
-     */
-    
-    public void run() {
-        List<String[]> dataset1 = loadData(AlgorithmRunner.Dataset_1);
-        List<String[]> dataset2 = loadData(AlgorithmRunner.Dataset_2);
-        System.out.printf("Dataset 1 Size: %d rows, %d columns%n", dataset1.size(), dataset1.get(0).length);
-        System.out.printf("Dataset 2 Size: %d rows, %d columns%n", dataset2.size(), dataset2.get(0).length);
-        int targetIndex = dataset1.get(0).length - 1;
-
-        // First fold: Train on Dataset 1, Test on Dataset 2
-        System.out.println("\nRunning Fold 1 (Training on Dataset 1, Testing on Dataset 2):");
-        List<Integer> attributes = new ArrayList<>();
-        for (int i = 0; i < targetIndex; i++) {
-            attributes.add(i);
-        }
-        Node tree = buildTree(dataset1, attributes, targetIndex);
-        double[][] confusionMatrixFold1 = evaluateModel(tree, dataset2, targetIndex);
-        printConfusionMatrix(confusionMatrixFold1);
-        double accuracyFold1 = calculateAccuracy(confusionMatrixFold1);
-        System.out.printf("Accuracy (Fold 1): %.2f%%\n", accuracyFold1 * 100);
-
-        // Second fold: Train on Dataset 2, Test on Dataset 1
-        System.out.println("\nRunning Fold 2 (Training on Dataset 2, Testing on Dataset 1):");
-        tree = buildTree(dataset2, attributes, targetIndex);
-        double[][] confusionMatrixFold2 = evaluateModel(tree, dataset1, targetIndex);
-        printConfusionMatrix(confusionMatrixFold2);
-        double accuracyFold2 = calculateAccuracy(confusionMatrixFold2);
-        System.out.printf("Accuracy (Fold 2): %.2f%%\n", accuracyFold2 * 100);
-        
-        // List out the results for both folds
-        System.out.println("\nAlgorithm: C4.5");
-        System.out.println("Summary of Results:");
-        System.out.printf("Fold 1 Accuracy: %.2f%%\n", accuracyFold1 * 100);
-        System.out.printf("Fold 2 Accuracy: %.2f%%\n", accuracyFold2 * 100);
-    }
-
-    // Loads data from a CSV file
-    public static List<String[]> loadData(String datasetFile) {
-        List<String[]> data = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(datasetFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                data.add(line.split(","));
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return data;
-    }
-    
-    // Prints the confusion matrix
-    public void printConfusionMatrix(double[][] confusionMatrix) {
-        System.out.println("\nConfusion Matrix:");
-        
-        // Print column headers (0 to 9 for class labels)
-        System.out.print("       ");
-        for (int i = 0; i < 10; i++) {
-            System.out.printf("%5d ", i);  // Adjust column width as needed
-        }
-        System.out.println();
-
-        // Print the matrix rows with row labels (0 to 9 for class labels)
-        for (int i = 0; i < confusionMatrix.length; i++) {
-            System.out.printf("%2d    ", i);  // Print row label
-            for (int j = 0; j < confusionMatrix[i].length; j++) {
-                System.out.printf("%5.0f ", confusionMatrix[i][j]);  // Print matrix values
-            }
-            System.out.println();
-        }
-    }
-    
-    // Calculate accuracy based on the confusion matrix
-    public double calculateAccuracy(double[][] confusionMatrix) {
-        double correctPredictions = 0;
-        double totalPredictions = 0;
-        for (int i = 0; i < confusionMatrix.length; i++) {
-            correctPredictions += confusionMatrix[i][i];
-            for (int j = 0; j < confusionMatrix[i].length; j++) {
-                totalPredictions += confusionMatrix[i][j];
-            }
-        }
-        return correctPredictions / totalPredictions;
-    }
-    
-    // Class representing a node in the decision tree
-    static class Node {
-        String attribute;
-        String label;
-        String majorityClass;
-        Map<String, Node> children = new HashMap<>();
-    }
-
-    // Builds the decision tree recursively
-    private Node buildTree(List<String[]> dataset, List<Integer> availableAttributes, int targetIndex) {
-        if (dataset.isEmpty()) {
-            return null;
-        }
-
-        // Check if all instances have the same label
-        Set<String> labels = new HashSet<>();
-        for (String[] instance : dataset) {
-            labels.add(instance[targetIndex]);
-        }
-        if (labels.size() == 1) {
-            Node leaf = new Node();
-            leaf.label = labels.iterator().next();
-            return leaf;
-        }
-
-        // Check if no attributes are available for splitting
-        if (availableAttributes.isEmpty()) {
-            Node leaf = new Node();
-            leaf.label = findMajorityClass(dataset, targetIndex);
-            return leaf;
-        }
-
-        // Find the best attribute to split on
-        int bestAttribute = selectBestAttribute(dataset, availableAttributes, targetIndex);
-        Node node = new Node();
-        node.attribute = "Attribute_" + bestAttribute;
-        node.majorityClass = findMajorityClass(dataset, targetIndex);
-
-        // Split dataset into subsets based on the best attribute
-        Map<String, List<String[]>> splitData = new HashMap<>();
-        for (String[] instance : dataset) {
-            String attributeValue = instance[bestAttribute];
-            splitData.computeIfAbsent(attributeValue, k -> new ArrayList<>()).add(instance);
-        }
-
-        // Recurse for each subset
-        List<Integer> remainingAttributes = new ArrayList<>(availableAttributes);
-        remainingAttributes.remove(Integer.valueOf(bestAttribute));
-        for (Map.Entry<String, List<String[]>> entry : splitData.entrySet()) {
-            String attributeValue = entry.getKey();
-            List<String[]> subset = entry.getValue();
-
-            if (subset.isEmpty()) {
-                Node leaf = new Node();
-                leaf.label = findMajorityClass(dataset, targetIndex);
-                node.children.put(attributeValue, leaf);
-            } else {
-                node.children.put(attributeValue, buildTree(subset, remainingAttributes, targetIndex));
-            }
-        }
-
-        return node;
-    }
-
-    // Classifies a single instance using the decision tree
-    private String classifyInstance(Node node, String[] instance) {
-        if (node.label != null) {
-            return node.label;
-        }
-
-        int attributeIndex = Integer.parseInt(node.attribute.split("_")[1]);
-        String attributeValue = instance[attributeIndex];
-        Node child = node.children.get(attributeValue);
-
-        if (child == null) {
-            System.out.printf("Fallback to majority class: %s at node splitting on '%s' (value: '%s')%n",
-                    node.majorityClass, node.attribute, attributeValue);
-            return node.majorityClass;
-        }
-
-        return classifyInstance(child, instance);
-    }
-
-    // Evaluates the decision tree on a test dataset and returns the confusion matrix
-    public double[][] evaluateModel(Node root, List<String[]> testData, int targetIndex) {
-        int numClasses = 10; // Assuming digits 0-9 (for a total of 10 classes)
-        double[][] confusionMatrix = new double[numClasses][numClasses]; // Initialize confusion matrix
-
-        for (String[] instance : testData) {
-            String predicted = classifyInstance(root, instance);
-            String actual = instance[targetIndex];
-
-            int predictedLabel = Integer.parseInt(predicted);
-            int actualLabel = Integer.parseInt(actual);
-
-            // Update the confusion matrix based on predicted and actual values
-            confusionMatrix[actualLabel][predictedLabel]++;
-        }
-
-        return confusionMatrix;
-    }
-
-    // Finds the majority class in a dataset
-    private String findMajorityClass(List<String[]> dataset, int targetIndex) {
-        Map<String, Integer> classCounts = new HashMap<>();
-        for (String[] instance : dataset) {
-            String targetValue = instance[targetIndex];
-            classCounts.put(targetValue, classCounts.getOrDefault(targetValue, 0) + 1);
-        }
-
-        return classCounts.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .get()
-                .getKey();
-    }
-
-    // Selects the best attribute for splitting using information gain
-    private int selectBestAttribute(List<String[]> dataset, List<Integer> availableAttributes, int targetIndex) {
-        double bestGain = Double.NEGATIVE_INFINITY;
-        int bestAttribute = -1;
-
-        for (int attribute : availableAttributes) {
-            double gain = calculateInformationGain(dataset, attribute, targetIndex);
-            if (gain > bestGain) {
-                bestGain = gain;
-                bestAttribute = attribute;
-            }
-        }
-        return bestAttribute;
-    }
-
-    // Calculates information gain for a specific attribute
-    private double calculateInformationGain(List<String[]> dataset, int attributeIndex, int targetIndex) {
-        double entropyBefore = calculateEntropy(dataset, targetIndex);
-        Map<String, List<String[]>> splitData = new HashMap<>();
-        for (String[] instance : dataset) {
-            String attributeValue = instance[attributeIndex];
-            splitData.computeIfAbsent(attributeValue, k -> new ArrayList<>()).add(instance);
-        }
-
-        double entropyAfter = 0.0;
-        for (List<String[]> subset : splitData.values()) {
-            double subsetProbability = (double) subset.size() / dataset.size();
-            entropyAfter += subsetProbability * calculateEntropy(subset, targetIndex);
-        }
-
-        return entropyBefore - entropyAfter;
-    }
-
-    // Calculates entropy of a dataset based on the target attribute
-    private double calculateEntropy(List<String[]> dataset, int targetIndex) {
-        Map<String, Integer> classCounts = new HashMap<>();
-        for (String[] instance : dataset) {
-            String targetValue = instance[targetIndex];
-            classCounts.put(targetValue, classCounts.getOrDefault(targetValue, 0) + 1);
-        }
-
-        double entropy = 0.0;
-        for (int count : classCounts.values()) {
-            double probability = (double) count / dataset.size();
-            entropy -= probability * Math.log(probability) / Math.log(2);
-        }
-        return entropy;
-    }
-}
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class C45_Algorithm implements Classifier {
+
+    /**
+     * This Class runs the C4.5 Algorithm with training and test data sets.
+     * Features are treated as continuous attributes: every inner node tests "attribute <= threshold",
+     * and an attribute can be tested again further down the tree.
+     */
+
+    public static final String Model_Kind = "c45";
+
+    private final ForkJoinPool pool;
+    private CompiledTree model; // Pruned tree of the last fit or load
+    private TrainedTree trained; // Trees and timings of the last fit, null after load
+    private String[] labelNames;
+    private int dim; // Features of the training rows
+
+    public C45_Algorithm() {
+        this(AlgorithmRunner.C45_Parallel ? WorkerPool.shared() : null);
+    }
+
+    // Trees are built on the given pool, or sequentially when it is null
+    public C45_Algorithm(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void run() throws IOException {
+        Dataset[] datasets = Dataset.loadAll(AlgorithmRunner.Dataset_1, AlgorithmRunner.Dataset_2);
+        Dataset dataset1 = datasets[0];
+        Dataset dataset2 = datasets[1];
+        System.out.printf("Dataset 1 Size: %d rows, %d columns%n", dataset1.rows(), dataset1.dim() + 1);
+        System.out.printf("Dataset 2 Size: %d rows, %d columns%n", dataset2.rows(), dataset2.dim() + 1);
+
+        // Both folds are trained at once, each build spreading its own work over the pool
+        TrainedTree[] trees = trainAll(dataset1, dataset2);
+
+        // First fold: Train on Dataset 1, Test on Dataset 2
+        System.out.println("\nRunning Fold 1 (Training on Dataset 1, Testing on Dataset 2):");
+        double[][] confusionMatrixFold1 = evaluateModel(trees[0].pruned, trees[0], dataset2);
+        printTreeReport(trees[0], dataset2);
+        printConfusionMatrix(confusionMatrixFold1);
+        double accuracyFold1 = calculateAccuracy(confusionMatrixFold1);
+        System.out.printf("Accuracy (Fold 1): %.2f%%\n", accuracyFold1 * 100);
+
+        // Second fold: Train on Dataset 2, Test on Dataset 1
+        System.out.println("\nRunning Fold 2 (Training on Dataset 2, Testing on Dataset 1):");
+        double[][] confusionMatrixFold2 = evaluateModel(trees[1].pruned, trees[1], dataset1);
+        printTreeReport(trees[1], dataset1);
+        printConfusionMatrix(confusionMatrixFold2);
+        double accuracyFold2 = calculateAccuracy(confusionMatrixFold2);
+        System.out.printf("Accuracy (Fold 2): %.2f%%\n", accuracyFold2 * 100);
+        
+        // List out the results for both folds
+        System.out.println("\nAlgorithm: C4.5");
+        System.out.println("Summary of Results:");
+        System.out.printf("Fold 1 Accuracy: %.2f%%\n", accuracyFold1 * 100);
+        System.out.printf("Fold 2 Accuracy: %.2f%%\n", accuracyFold2 * 100);
+    }
+
+    // Prints the confusion matrix
+    public void printConfusionMatrix(double[][] confusionMatrix) {
+        System.out.println("\nConfusion Matrix:");
+        
+        // Print column headers (0 to 9 for class labels)
+        System.out.print("       ");
+        for (int i = 0; i < confusionMatrix.length; i++) {
+            System.out.printf("%5d ", i);  // Adjust column width as needed
+        }
+        System.out.println();
+
+        // Print the matrix rows with row labels (0 to 9 for class labels)
+        for (int i = 0; i < confusionMatrix.length; i++) {
+            System.out.printf("%2d    ", i);  // Print row label
+            for (int j = 0; j < confusionMatrix[i].length; j++) {
+                System.out.printf("%5.0f ", confusionMatrix[i][j]);  // Print matrix values
+            }
+            System.out.println();
+        }
+    }
+    
+    // Calculate accuracy based on the confusion matrix
+    public double calculateAccuracy(double[][] confusionMatrix) {
+        double correctPredictions = 0;
+        double totalPredictions = 0;
+        for (int i = 0; i < confusionMatrix.length; i++) {
+            correctPredictions += confusionMatrix[i][i];
+            for (int j = 0; j < confusionMatrix[i].length; j++) {
+                totalPredictions += confusionMatrix[i][j];
+            }
+        }
+        return correctPredictions / totalPredictions;
+    }
+    
+    // Class representing a node in the decision tree
+    static class Node {
+        int attribute = -1; // Split attribute, -1 for leaves
+        float threshold; // Rows with attribute <= threshold go left
+        Node left;
+        Node right;
+        int label = -1; // Class id for leaves
+        int majorityClass;
+        int rows; // Training rows that reached the node
+        int errors; // Training rows not of the majority class
+    }
+
+    // A trained tree before and after pruning, with its build and pruning times
+    // and the time of the last batch predicted with the pruned tree
+    static class TrainedTree {
+        Node root;
+        CompiledTree unpruned;
+        CompiledTree pruned;
+        long buildNanos;
+        long pruneNanos;
+        volatile long predictNanos;
+        volatile int predictRows;
+    }
+
+    @Override
+    public void fit(Dataset training) {
+        trained = train(training);
+        trained.root = null; // Only the compiled trees are reported on
+        model = trained.pruned;
+        labelNames = training.labelNames();
+        dim = training.dim();
+    }
+
+    @Override
+    public int predict(float[] features, int offset) {
+        return trainedModel().predict(features, offset);
+    }
+
+    @Override
+    public int[] predictBatch(Dataset queries) {
+        CompiledTree tree = trainedModel();
+        return predictScored(tree, trained, queries);
+    }
+
+    // Predicts with the tree being scored, keeping the time of the batch for the tree report
+    private int[] predictScored(CompiledTree tree, TrainedTree timing, Dataset queries) {
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "predict");
+        long start = System.nanoTime();
+        try {
+            return tree.predict(queries, pool);
+        } finally {
+            phase.close();
+            if (timing != null) {
+                timing.predictNanos = System.nanoTime() - start;
+                timing.predictRows = queries.rows();
+            }
+        }
+    }
+
+    @Override
+    public String[] labelNames() {
+        return labelNames;
+    }
+
+    @Override
+    public int dim() {
+        trainedModel();
+        return dim;
+    }
+
+    // Only the compiled tree is stored, the node tree and its row statistics are not needed to predict
+    @Override
+    public void save(Path path) throws IOException {
+        CompiledTree tree = trainedModel();
+        ModelFile.Writer file = ModelFile.create(Model_Kind).putStrings(labelNames).putInt(dim);
+        tree.write(file);
+        file.save(path);
+    }
+
+    @Override
+    public void load(Path path) throws IOException {
+        ModelFile.Reader file = ModelFile.open(path, Model_Kind);
+        String[] names = file.getStrings();
+        int width = file.getInt();
+        model = CompiledTree.read(file, width, names.length);
+        trained = null;
+        labelNames = names;
+        dim = width;
+    }
+
+    private CompiledTree trainedModel() {
+        if (model == null) {
+            throw new IllegalStateException("fit or load must be called first");
+        }
+        return model;
+    }
+
+    // Builds the decision tree for a training set, pruned unless C45_Confidence is 0
+    public Node buildTree(Dataset dataset) {
+        return train(dataset).root;
+    }
+
+    // Builds one tree per training set, concurrently when a pool is set
+    public Node[] buildTrees(Dataset... datasets) {
+        TrainedTree[] built = trainAll(datasets);
+        Node[] trees = new Node[built.length];
+        for (int i = 0; i < built.length; i++) {
+            trees[i] = built[i].root;
+        }
+        return trees;
+    }
+
+    private TrainedTree[] trainAll(Dataset... datasets) {
+        TrainedTree[] trees = new TrainedTree[datasets.length];
+        if (pool == null) {
+            for (int i = 0; i < datasets.length; i++) {
+                trees[i] = train(datasets[i]);
+            }
+            return trees;
+        }
+        List<ForkJoinTask<TrainedTree>> builds = new ArrayList<>();
+        for (Dataset dataset : datasets) {
+            builds.add(pool.submit(() -> train(dataset)));
+        }
+        for (int i = 0; i < datasets.length; i++) {
+            trees[i] = builds.get(i).join();
+        }
+        return trees;
+    }
+
+    // Grows the tree within the configured limits, then prunes it
+    private TrainedTree train(Dataset dataset) {
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "fit");
+        try {
+            TrainedTree tree = new TrainedTree();
+            long start = System.nanoTime();
+            tree.root = createBuilder(dataset).build();
+            tree.buildNanos = System.nanoTime() - start;
+            tree.unpruned = CompiledTree.compile(tree.root);
+            tree.pruned = tree.unpruned;
+            if (AlgorithmRunner.C45_Confidence > 0) {
+                start = System.nanoTime();
+                new TreePruner(AlgorithmRunner.C45_Confidence).prune(tree.root);
+                tree.pruneNanos = System.nanoTime() - start;
+                tree.pruned = CompiledTree.compile(tree.root);
+            }
+            return tree;
+        } finally {
+            phase.close();
+        }
+    }
+
+    // Prints size and timing of a trained tree before and after pruning
+    private void printTreeReport(TrainedTree tree, Dataset testData) {
+        System.out.println(treeReport(tree, testData));
+    }
+
+    // Size and timings of the trees of the last fit, before and after pruning
+    @Override
+    public String statistics(Dataset test) {
+        return trained == null ? null : treeReport(trained, test);
+    }
+
+    // The pruned tree reports the time of its last scored batch. Only the unpruned tree, which is
+    // never scored, is run here, outside the counters and metrics of the scored predictions
+    private String treeReport(TrainedTree tree, Dataset testData) {
+        if (tree.pruned == tree.unpruned) {
+            return treeLine("Unpruned tree", tree.unpruned, tree.buildNanos, tree.predictRows, tree.predictNanos);
+        }
+        long start = System.nanoTime();
+        tree.unpruned.predictUncounted(testData, pool);
+        long elapsed = System.nanoTime() - start;
+        return treeLine("Unpruned tree", tree.unpruned, tree.buildNanos, testData.rows(), elapsed) + System.lineSeparator()
+                + treeLine("Pruned tree", tree.pruned, tree.buildNanos + tree.pruneNanos, tree.predictRows, tree.predictNanos);
+    }
+
+    private String treeLine(String name, CompiledTree tree, long trainNanos, int predictRows, long predictNanos) {
+        String line = String.format("%-14s %d nodes, depth %d, %d bytes, trained in %.2f ms",
+                name + ":", tree.nodeCount(), tree.depth(), tree.modelBytes(), trainNanos / 1e6);
+        if (predictRows == 0) {
+            return line;
+        }
+        return line + String.format(", predicted %d rows in %.2f ms (%.0f ns/row)",
+                predictRows, predictNanos / 1e6, (double) predictNanos / predictRows);
+    }
+
+    private DecisionTreeBuilder createBuilder(Dataset dataset) {
+        DecisionTreeBuilder builder;
+        switch (AlgorithmRunner.C45_Split_Search) {
+            case "histogram":
+                builder = new HistogramTreeBuilder(dataset, AlgorithmRunner.C45_Split_Criterion, AlgorithmRunner.C45_Max_Depth,
+                        AlgorithmRunner.C45_Min_Samples_Leaf, AlgorithmRunner.C45_Min_Gain, pool);
+                break;
+            case "presorted":
+                builder = new PresortedTreeBuilder(dataset, AlgorithmRunner.C45_Split_Criterion, AlgorithmRunner.C45_Max_Depth,
+                        AlgorithmRunner.C45_Min_Samples_Leaf, AlgorithmRunner.C45_Min_Gain, pool);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown split search '" + AlgorithmRunner.C45_Split_Search + "'");
+        }
+        return builder;
+    }
+
+    // Evaluates the decision tree on a test dataset and returns the confusion matrix
+    public double[][] evaluateModel(CompiledTree tree, Dataset testData) {
+        return evaluateModel(tree, null, testData);
+    }
+
+    // Same, keeping the prediction time in the trained tree for its report
+    private double[][] evaluateModel(CompiledTree tree, TrainedTree timing, Dataset testData) {
+        int numClasses = testData.labelCount(); // e.g. digits 0-9 (for a total of 10 classes)
+        double[][] confusionMatrix = new double[numClasses][numClasses]; // Initialize confusion matrix
+
+        long fallbacksBefore = tree.fallbackCount();
+        int[] predictions = predictScored(tree, timing, testData);
+        if (tree.fallbackCount() > fallbacksBefore) {
+            System.out.printf("Rows with missing values sent to the majority class: %d%n", tree.fallbackCount() - fallbacksBefore);
+        }
+
+        for (int row = 0; row < testData.rows(); row++) {
+            int predictedLabel = predictions[row];
+            int actualLabel = testData.label(row);
+
+            // Update the confusion matrix based on predicted and actual values
+            confusionMatrix[actualLabel][predictedLabel]++;
+        }
+
+        return confusionMatrix;
+    }
+
+    // The attribute and threshold chosen for a node
+    static class Split {
+        final int attribute;
+        final float threshold;
+
+        Split(int attribute, float threshold) {
+            this.attribute = attribute;
+            this.threshold = threshold;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+public interface Classifier {
+
+    /**
+     * This Interface is the common API of the four algorithms: train on a data set, predict label ids
+     * (indexes into labelNames()) for single rows or whole data sets, and save or load the trained
+     * model in the binary ModelFile format, so a scoring process can start without retraining.
+     */
+
+    // Trains the model on a data set, replacing any previous model
+    void fit(Dataset training);
+
+    // Predicts the label id of the row starting at features[offset]
+    int predict(float[] features, int offset);
+
+    // Predicts the label id of every row of a data set
+    default int[] predictBatch(Dataset queries) {
+        int[] predictions = new int[queries.rows()];
+        for (int row = 0; row < queries.rows(); row++) {
+            predictions[row] = predict(queries.features(), queries.offset(row));
+        }
+        return predictions;
+    }
+
+    // Like predictBatch, also queuing every prediction in the fold's log. This default logs no score
+    // and the per-row share of the batch time as latency; algorithms with a score override it
+    default int[] predictBatch(Dataset queries, PredictionLog.FoldLog log) {
+        long start = System.nanoTime();
+        int[] predictions = predictBatch(queries);
+        long latency = (System.nanoTime() - start) / Math.max(1, queries.rows());
+        for (int row = 0; row < queries.rows(); row++) {
+            log.record(row, queries.label(row), predictions[row], Float.NaN, latency);
+        }
+        return predictions;
+    }
+
+    // Diagnostics of the trained model after scoring the test rows (index statistics, tree sizes,
+    // search audits), one line each, or null if the algorithm reports none
+    default String statistics(Dataset test) {
+        return null;
+    }
+
+    // Label names of the training set, indexed by the predicted label ids
+    String[] labelNames();
+
+    // Features the model reads from each row, so shorter rows cannot be predicted (0 = any row)
+    int dim();
+
+    void save(Path path) throws IOException;
+
+    // Replaces this model with one read from a model file
+    void load(Path path) throws IOException;
+
+    // Untrained classifier of the given kind (knn, c45, som or random) for rows of the given dimension,
+    // running its parallel work on the pool
+    static Classifier create(String kind, int dim, ForkJoinPool pool) {
+        switch (kind) {
+            case KNN_Algorithm.Model_Kind:
+                return new KNN_Algorithm(pool);
+            case C45_Algorithm.Model_Kind:
+                return new C45_Algorithm(AlgorithmRunner.C45_Parallel ? pool : null);
+            case SOM_Algorithm.Model_Kind:
+                return new SOM_Algorithm(10, 10, dim, pool);
+            case Random_Guess_Algorithm.Model_Kind:
+                return new Random_Guess_Algorithm();
+            default:
+                throw new IllegalArgumentException("Unknown algorithm '" + kind + "'");
+        }
+    }
+
+    // Reads a model file of any algorithm
+    static Classifier open(Path path) throws IOException {
+        String kind = ModelFile.open(path, null).kind();
+        Classifier classifier;
+        try {
+            classifier = create(kind, 1, WorkerPool.shared());
+        } catch (IllegalArgumentException unknown) {
+            throw new IOException(path + " holds an unknown model kind '" + kind + "'");
+        }
+        classifier.load(path);
+        return classifier;
+    }
+}
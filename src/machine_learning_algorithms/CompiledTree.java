@@ -0,0 +1,240 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CompiledTree {
+
+    /**
+     * This Class is a trained C4.5 tree flattened into parallel primitive arrays for inference.
+     * Nodes are stored in pre-order, so the left child of an inner node is always the next node and
+     * only the right child needs an offset; most steps of a walk read the next slots of each array.
+     * Leaves have attribute -1 and hold their class id. A row whose tested value is NaN cannot be
+     * compared with the threshold; it gets the majority class of that node and is counted.
+     */
+
+    private final int[] attribute;
+    private final float[] threshold;
+    private final int[] right;
+    private final int[] classId; // Leaf class, or the majority class of an inner node
+    private final int depth;
+    private final LongAdder fallbacks = new LongAdder();
+
+    private static final Metrics.Counter Nodes_Visited = Metrics.counter("ml_c45_nodes_visited_total", "Tree nodes visited by C4.5 predictions");
+    private static final Metrics.Counter Fallbacks = Metrics.counter("ml_c45_majority_fallbacks_total",
+            "C4.5 predictions that stopped at a node's majority class because of a NaN value");
+    private static final Metrics.Histogram Latency = Metrics.histogram("ml_prediction_latency_seconds",
+            "Latency of one prediction (for batches, the per-row share of each batch)", "algorithm", C45_Algorithm.Model_Kind);
+
+    private CompiledTree(int[] attribute, float[] threshold, int[] right, int[] classId, int depth) {
+        this.attribute = attribute;
+        this.threshold = threshold;
+        this.right = right;
+        this.classId = classId;
+        this.depth = depth;
+    }
+
+    // Flattens a node tree
+    public static CompiledTree compile(C45_Algorithm.Node root) {
+        Builder builder = new Builder();
+        int depth = builder.add(root);
+        int n = builder.count;
+        return new CompiledTree(Arrays.copyOf(builder.attribute, n), Arrays.copyOf(builder.threshold, n),
+                Arrays.copyOf(builder.right, n), Arrays.copyOf(builder.classId, n), depth);
+    }
+
+    // Appends the node arrays to a model file
+    void write(ModelFile.Writer model) {
+        model.putInt(depth).putInts(attribute).putFloats(threshold).putInts(right).putInts(classId);
+    }
+
+    // Reads node arrays written by write, checking that every link stays inside the tree, every
+    // attribute inside rows of dim features and every class id inside the label dictionary
+    static CompiledTree read(ModelFile.Reader model, int dim, int labelCount) throws IOException {
+        int depth = model.getInt();
+        int[] attribute = model.getInts();
+        float[] threshold = model.getFloats();
+        int[] right = model.getInts();
+        int[] classId = model.getInts();
+        int n = attribute.length;
+        if (n == 0 || threshold.length != n || right.length != n || classId.length != n) {
+            throw model.corrupt("node arrays of different lengths");
+        }
+        if (depth < 0 || depth >= n) {
+            throw model.corrupt("depth " + depth + " for " + n + " nodes");
+        }
+        for (int node = 0; node < n; node++) {
+            if (attribute[node] < -1 || attribute[node] >= dim) {
+                throw model.corrupt("node " + node + " tests attribute " + attribute[node] + " of rows with " + dim);
+            }
+            if (attribute[node] >= 0 && (node + 1 >= n || right[node] <= node + 1 || right[node] >= n)) {
+                throw model.corrupt("node " + node + " links outside the tree");
+            }
+            if (classId[node] < 0 || classId[node] >= labelCount) {
+                throw model.corrupt("node " + node + " predicts class " + classId[node] + " of " + labelCount);
+            }
+        }
+        return new CompiledTree(attribute, threshold, right, classId, depth);
+    }
+
+    public int nodeCount() {
+        return attribute.length;
+    }
+
+    // Number of edges on the longest root-to-leaf path
+    public int depth() {
+        return depth;
+    }
+
+    // Approximate size of the node arrays in bytes
+    public long modelBytes() {
+        return 16L * attribute.length;
+    }
+
+    // Rows that fell back to a node's majority class because of a NaN value
+    public long fallbackCount() {
+        return fallbacks.sum();
+    }
+
+    // Predicts the class id of the row starting at features[offset]
+    public int predict(float[] features, int offset) {
+        long start = Metrics.start();
+        int node = 0;
+        int visited = 1;
+        while (attribute[node] >= 0) {
+            float value = features[offset + attribute[node]];
+            if (value <= threshold[node]) {
+                node++;
+            } else if (value > threshold[node]) {
+                node = right[node];
+            } else {
+                fallbacks.increment(); // NaN compares false both ways
+                if (Metrics.Enabled) {
+                    Fallbacks.increment();
+                }
+                break;
+            }
+            visited++;
+        }
+        if (Metrics.Enabled) {
+            Nodes_Visited.add(visited);
+            Latency.recordSince(start);
+        }
+        return classId[node];
+    }
+
+    public int predict(float[] row) {
+        return predict(row, 0);
+    }
+
+    // Same walk as predict, but neither counts fallbacks nor records metrics
+    private int predictUncounted(float[] features, int offset) {
+        int node = 0;
+        while (attribute[node] >= 0) {
+            float value = features[offset + attribute[node]];
+            if (value <= threshold[node]) {
+                node++;
+            } else if (value > threshold[node]) {
+                node = right[node];
+            } else {
+                break;
+            }
+        }
+        return classId[node];
+    }
+
+    // Predicts every row of the dataset, splitting the rows across the pool
+    public int[] predict(Dataset queries, ForkJoinPool pool) {
+        return predict(queries, pool, true);
+    }
+
+    // Predicts every row without counting fallbacks or recording metrics, for timing a tree that is not scored
+    int[] predictUncounted(Dataset queries, ForkJoinPool pool) {
+        return predict(queries, pool, false);
+    }
+
+    private int[] predict(Dataset queries, ForkJoinPool pool, boolean counted) {
+        int[] predictions = new int[queries.rows()];
+        if (pool == null) {
+            predictRange(queries, predictions, 0, queries.rows(), counted);
+        } else {
+            pool.invoke(new PredictTask(queries, predictions, 0, queries.rows(), WorkerPool.grainSize(queries.rows(), pool, 256), counted));
+        }
+        return predictions;
+    }
+
+    private void predictRange(Dataset queries, int[] predictions, int start, int end, boolean counted) {
+        float[] features = queries.features();
+        for (int row = start; row < end; row++) {
+            predictions[row] = counted ? predict(features, queries.offset(row)) : predictUncounted(features, queries.offset(row));
+        }
+    }
+
+    // Fork-join task predicting the rows [start, end)
+    private class PredictTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Dataset queries;
+        private final int[] predictions;
+        private final int start;
+        private final int end;
+        private final int grain;
+        private final boolean counted;
+
+        PredictTask(Dataset queries, int[] predictions, int start, int end, int grain, boolean counted) {
+            this.queries = queries;
+            this.predictions = predictions;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+            this.counted = counted;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > grain) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new PredictTask(queries, predictions, start, middle, grain, counted),
+                        new PredictTask(queries, predictions, middle, end, grain, counted));
+                return;
+            }
+            predictRange(queries, predictions, start, end, counted);
+        }
+    }
+
+    // Growable node arrays filled by a pre-order walk
+    private static class Builder {
+        int[] attribute = new int[64];
+        float[] threshold = new float[64];
+        int[] right = new int[64];
+        int[] classId = new int[64];
+        int count;
+
+        // Appends the subtree in pre-order and returns its depth
+        int add(C45_Algorithm.Node node) {
+            if (count == attribute.length) {
+                int capacity = count * 2;
+                attribute = Arrays.copyOf(attribute, capacity);
+                threshold = Arrays.copyOf(threshold, capacity);
+                right = Arrays.copyOf(right, capacity);
+                classId = Arrays.copyOf(classId, capacity);
+            }
+            int id = count++;
+            if (node.attribute < 0) {
+                attribute[id] = -1;
+                classId[id] = node.label;
+                return 0;
+            }
+            attribute[id] = node.attribute;
+            threshold[id] = node.threshold;
+            classId[id] = node.majorityClass;
+            int leftDepth = add(node.left);
+            right[id] = count;
+            int rightDepth = add(node.right);
+            return 1 + Math.max(leftDepth, rightDepth);
+        }
+    }
+}
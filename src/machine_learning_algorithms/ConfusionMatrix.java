@@ -0,0 +1,112 @@
+package machine_learning_algorithms;
+
+public class ConfusionMatrix {
+
+    /**
+     * This Class counts predictions per (actual, predicted) label id pair.
+     * Parallel workers each fill their own matrix and merge them at the end, so no counter is shared.
+     */
+
+    private final String[] labelNames;
+    private final int[][] counts;
+
+    public ConfusionMatrix(String[] labelNames) {
+        this.labelNames = labelNames;
+        this.counts = new int[labelNames.length][labelNames.length];
+    }
+
+    public void add(int actualLabel, int predictedLabel) {
+        counts[actualLabel][predictedLabel]++;
+    }
+
+    // Adds the counts of another matrix over the same labels to this one
+    public ConfusionMatrix merge(ConfusionMatrix other) {
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < counts.length; j++) {
+                counts[i][j] += other.counts[i][j];
+            }
+        }
+        return this;
+    }
+
+    public int[][] counts() {
+        return counts;
+    }
+
+    public String[] labelNames() {
+        return labelNames;
+    }
+
+    public int correct() {
+        int correct = 0;
+        for (int i = 0; i < counts.length; i++) {
+            correct += counts[i][i];
+        }
+        return correct;
+    }
+
+    public int total() {
+        int total = 0;
+        for (int[] row : counts) {
+            for (int count : row) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    // Accuracy as a percentage
+    public double accuracy() {
+        int total = total();
+        return total == 0 ? 0 : (double) correct() / total * 100;
+    }
+
+    // Fraction of the rows predicted as the label that really have it (0 when it was never predicted)
+    public double precision(int label) {
+        int predicted = 0;
+        for (int[] row : counts) {
+            predicted += row[label];
+        }
+        return predicted == 0 ? 0 : (double) counts[label][label] / predicted;
+    }
+
+    // Fraction of the rows with the label that were predicted as it (0 when it never occurs)
+    public double recall(int label) {
+        int actual = 0;
+        for (int count : counts[label]) {
+            actual += count;
+        }
+        return actual == 0 ? 0 : (double) counts[label][label] / actual;
+    }
+
+    public double f1(int label) {
+        double precision = precision(label);
+        double recall = recall(label);
+        return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+    }
+
+    // Unweighted mean F1 over the labels
+    public double macroF1() {
+        double sum = 0;
+        for (int label = 0; label < counts.length; label++) {
+            sum += f1(label);
+        }
+        return counts.length == 0 ? 0 : sum / counts.length;
+    }
+
+    // Prints the matrix (rows are actual labels, columns predicted) followed by per-label metrics
+    public void print() {
+        System.out.print("        ");
+        for (String label : labelNames) {
+            System.out.printf("%7s", label);
+        }
+        System.out.printf("%11s%8s%8s%n", "Precision", "Recall", "F1");
+        for (int i = 0; i < counts.length; i++) {
+            System.out.printf("%8s", labelNames[i]);
+            for (int j = 0; j < counts.length; j++) {
+                System.out.printf("%7d", counts[i][j]);
+            }
+            System.out.printf("%11.3f%8.3f%8.3f%n", precision(i), recall(i), f1(i));
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package machine_learning_algorithms;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class Dataset {
+
+    /**
+     * This Class holds a labelled data set in primitive form, shared by all the algorithms.
+     * Features are stored row-major in one contiguous float block (row i starts at i * dim),
+     * labels are stored as class ids and the label dictionary maps each id back to its name.
+     *
+     * A data set read from a binary .mlds file keeps its feature block in the file mapping
+     * (float32, or uint8 for small integers) instead of copying it to the heap. get, copyRow,
+     * select, concat and samples read the mapping directly, so folds and streams of a file
+     * larger than the heap can be taken from it; features() copies the block to the heap on its
+     * first call, for the algorithms whose kernels run on float arrays.
+     */
+
+    private final int rows;
+    private final int dim;
+    private volatile float[] features;
+    private final FloatBuffer mappedFloats; // Mapped float32 block, or null
+    private final ByteBuffer mappedBytes; // Mapped uint8 block, or null
+    private final int[] labels;
+    private String[] labelNames;
+
+    public Dataset(int rows, int dim, float[] features, int[] labels, String[] labelNames) {
+        this(rows, dim, features, null, null, labels, labelNames);
+        if (features.length < (long) rows * dim) {
+            throw new IllegalArgumentException("Feature block is smaller than " + rows + " x " + dim);
+        }
+    }
+
+    private Dataset(int rows, int dim, float[] features, FloatBuffer mappedFloats, ByteBuffer mappedBytes,
+                    int[] labels, String[] labelNames) {
+        if (labels.length < rows) {
+            throw new IllegalArgumentException("Label block is smaller than " + rows + " rows");
+        }
+        this.rows = rows;
+        this.dim = dim;
+        this.features = features;
+        this.mappedFloats = mappedFloats;
+        this.mappedBytes = mappedBytes;
+        this.labels = labels;
+        this.labelNames = labelNames;
+    }
+
+    // Data set over a mapped float32 feature block of rows * dim values, starting at the view's position 0
+    static Dataset mapped(int rows, int dim, FloatBuffer block, int[] labels, String[] labelNames) {
+        if (block.capacity() < (long) rows * dim) {
+            throw new IllegalArgumentException("Feature block is smaller than " + rows + " x " + dim);
+        }
+        return new Dataset(rows, dim, null, block, null, labels, labelNames);
+    }
+
+    // Data set over a mapped uint8 feature block of rows * dim values, starting at the view's position 0
+    static Dataset mappedUnsignedBytes(int rows, int dim, ByteBuffer block, int[] labels, String[] labelNames) {
+        if (block.capacity() < (long) rows * dim) {
+            throw new IllegalArgumentException("Feature block is smaller than " + rows + " x " + dim);
+        }
+        return new Dataset(rows, dim, null, null, block, labels, labelNames);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int dim() {
+        return dim;
+    }
+
+    // Row-major feature block, row i occupies [i * dim, (i + 1) * dim). A mapped data set copies its
+    // block to the heap here once
+    public float[] features() {
+        float[] block = features;
+        return block != null ? block : heapFeatures();
+    }
+
+    private synchronized float[] heapFeatures() {
+        if (features == null) {
+            float[] block = new float[rows * dim];
+            if (mappedFloats != null) {
+                mappedFloats.duplicate().get(block);
+            } else {
+                for (int i = 0; i < block.length; i++) {
+                    block[i] = mappedBytes.get(i) & 0xFF;
+                }
+            }
+            features = block;
+        }
+        return features;
+    }
+
+    // True while the feature block is only in the file mapping
+    public boolean isMapped() {
+        return features == null;
+    }
+
+    // Offset of a row inside the feature block
+    public int offset(int row) {
+        return row * dim;
+    }
+
+    public float get(int row, int column) {
+        return value(row * dim + column);
+    }
+
+    // Copies one row into target[targetOffset ..], from the heap block or the mapping
+    public void copyRow(int row, float[] target, int targetOffset) {
+        float[] block = features;
+        if (block != null) {
+            System.arraycopy(block, row * dim, target, targetOffset, dim);
+        } else if (mappedFloats != null) {
+            for (int d = 0; d < dim; d++) {
+                target[targetOffset + d] = mappedFloats.get(row * dim + d);
+            }
+        } else {
+            for (int d = 0; d < dim; d++) {
+                target[targetOffset + d] = mappedBytes.get(row * dim + d) & 0xFF;
+            }
+        }
+    }
+
+    private float value(int index) {
+        float[] block = features;
+        if (block != null) {
+            return block[index];
+        }
+        return mappedFloats != null ? mappedFloats.get(index) : mappedBytes.get(index) & 0xFF;
+    }
+
+    public int[] labels() {
+        return labels;
+    }
+
+    public int label(int row) {
+        return labels[row];
+    }
+
+    public int labelCount() {
+        return labelNames.length;
+    }
+
+    public String labelName(int labelId) {
+        return labelNames[labelId];
+    }
+
+    public String[] labelNames() {
+        return labelNames;
+    }
+
+    // The rows as a stream of labelled samples, for the incremental training paths
+    public Iterator<Sample> samples() {
+        return new Iterator<Sample>() {
+            private int row;
+
+            @Override
+            public boolean hasNext() {
+                return row < rows;
+            }
+
+            @Override
+            public Sample next() {
+                if (row == rows) {
+                    throw new NoSuchElementException();
+                }
+                float[] values = new float[dim];
+                copyRow(row, values, 0);
+                return new Sample(values, labelNames[labels[row++]]);
+            }
+        };
+    }
+
+    // Copies the given rows, in order, into a new contiguous data set with the same label dictionary
+    public Dataset select(int[] rowIds) {
+        float[] selected = new float[rowIds.length * dim];
+        int[] selectedLabels = new int[rowIds.length];
+        for (int i = 0; i < rowIds.length; i++) {
+            copyRow(rowIds[i], selected, i * dim);
+            selectedLabels[i] = labels[rowIds[i]];
+        }
+        return new Dataset(rowIds.length, dim, selected, selectedLabels, labelNames);
+    }
+
+    // Appends data sets that share one label dictionary (as returned by loadAll) into one
+    public static Dataset concat(Dataset... datasets) {
+        int rows = 0;
+        for (Dataset dataset : datasets) {
+            if (dataset.dim != datasets[0].dim || !Arrays.equals(dataset.labelNames, datasets[0].labelNames)) {
+                throw new IllegalArgumentException("Only data sets with the same dimension and label dictionary can be joined");
+            }
+            rows += dataset.rows;
+        }
+        int dim = datasets[0].dim;
+        float[] features = new float[rows * dim];
+        int[] labels = new int[rows];
+        int start = 0;
+        for (Dataset dataset : datasets) {
+            for (int row = 0; row < dataset.rows; row++) {
+                dataset.copyRow(row, features, (start + row) * dim);
+            }
+            System.arraycopy(dataset.labels, 0, labels, start, dataset.rows);
+            start += dataset.rows;
+        }
+        return new Dataset(rows, dim, features, labels, datasets[0].labelNames);
+    }
+
+    // Loads a single CSV file (features first, label in the last column) or a binary .mlds file
+    public static Dataset load(String filePath) throws IOException {
+        return loadAll(filePath)[0];
+    }
+
+    // Loads several CSV files so that they share one label dictionary, sorted by label name
+    public static Dataset[] loadAll(String... filePaths) throws IOException {
+        Metrics.Phase phase = Metrics.phase("dataset", "load");
+        try {
+            return loadFiles(filePaths);
+        } finally {
+            phase.close();
+        }
+    }
+
+    private static Dataset[] loadFiles(String... filePaths) throws IOException {
+        Dataset[] datasets = new Dataset[filePaths.length];
+        for (int i = 0; i < filePaths.length; i++) {
+            datasets[i] = filePaths[i].endsWith(DatasetCache.Extension)
+                    ? DatasetCache.read(Paths.get(filePaths[i]))
+                    : DatasetCache.load(filePaths[i]);
+            if (i > 0 && datasets[i].dim != datasets[0].dim) {
+                throw new IOException("Dimension mismatch: " + filePaths[i] + " has " + datasets[i].dim
+                        + " features but " + filePaths[0] + " has " + datasets[0].dim);
+            }
+        }
+        unifyLabels(datasets);
+        return datasets;
+    }
+
+    // Replaces the label dictionaries of the given data sets by one sorted dictionary and remaps the label ids
+    static void unifyLabels(Dataset... datasets) {
+        int total = 0;
+        for (Dataset dataset : datasets) {
+            total += dataset.labelNames.length;
+        }
+        String[] union = new String[total];
+        int count = 0;
+        for (Dataset dataset : datasets) {
+            for (String name : dataset.labelNames) {
+                boolean known = false;
+                for (int i = 0; i < count && !known; i++) {
+                    known = union[i].equals(name);
+                }
+                if (!known) {
+                    union[count++] = name;
+                }
+            }
+        }
+        union = Arrays.copyOf(union, count);
+        Arrays.sort(union, labelOrder(union));
+
+        for (Dataset dataset : datasets) {
+            int[] remap = new int[dataset.labelNames.length];
+            for (int i = 0; i < remap.length; i++) {
+                remap[i] = Arrays.asList(union).indexOf(dataset.labelNames[i]);
+            }
+            for (int row = 0; row < dataset.rows; row++) {
+                dataset.labels[row] = remap[dataset.labels[row]];
+            }
+            dataset.labelNames = union;
+        }
+    }
+
+    // Numeric labels (e.g. digits) are ordered by value, anything else alphabetically
+    private static Comparator<String> labelOrder(String[] names) {
+        for (String name : names) {
+            try {
+                Double.parseDouble(name);
+            } catch (NumberFormatException notNumeric) {
+                return Comparator.naturalOrder();
+            }
+        }
+        return Comparator.comparingDouble(Double::parseDouble);
+    }
+
+    // Parses a CSV file with a hand-rolled tokenizer that works directly on the byte buffer. A row with
+    // the wrong number of columns or an invalid number fails the load with its line number
+    static Dataset parseCsv(String filePath) throws IOException {
+        try (InputStream in = new FileInputStream(filePath)) {
+            CsvTokenizer tokenizer = new CsvTokenizer(in);
+            int dim = -1;
+            int rows = 0;
+            float[] features = new float[1 << 16];
+            int[] labels = new int[1 << 10];
+            byte[][] labelBytes = new byte[16][];
+            String[] labelNames = new String[16];
+            int labelCount = 0;
+
+            while (tokenizer.nextLine()) {
+                int columns = tokenizer.countFields();
+                if (columns == 1 && tokenizer.lineIsBlank()) {
+                    continue;
+                }
+                if (dim < 0) {
+                    if (!tokenizer.fieldIsNumber(0)) {
+                        continue; // Skip the header row
+                    }
+                    dim = columns - 1;
+                }
+                if (columns != dim + 1) {
+                    throw new IOException("Row " + tokenizer.lineNumber() + " of " + filePath
+                            + " has " + columns + " columns, expected " + (dim + 1));
+                }
+
+                if ((rows + 1) * dim > features.length) {
+                    features = Arrays.copyOf(features, Math.max(features.length * 2, (rows + 1) * dim));
+                }
+                if (rows == labels.length) {
+                    labels = Arrays.copyOf(labels, labels.length * 2);
+                }
+
+                int base = rows * dim;
+                for (int column = 0; column < dim; column++) {
+                    features[base + column] = tokenizer.parseFloat();
+                }
+
+                // Look the label up in the dictionary without building a String for it
+                int labelId = -1;
+                for (int i = 0; i < labelCount && labelId < 0; i++) {
+                    if (tokenizer.fieldEquals(labelBytes[i])) {
+                        labelId = i;
+                    }
+                }
+                if (labelId < 0) {
+                    if (labelCount == labelBytes.length) {
+                        labelBytes = Arrays.copyOf(labelBytes, labelCount * 2);
+                        labelNames = Arrays.copyOf(labelNames, labelCount * 2);
+                    }
+                    labelBytes[labelCount] = tokenizer.fieldBytes();
+                    labelNames[labelCount] = new String(labelBytes[labelCount], "UTF-8");
+                    labelId = labelCount++;
+                }
+                labels[rows++] = labelId;
+            }
+
+            if (dim < 0) {
+                throw new IOException("No data rows found in " + filePath);
+            }
+            return new Dataset(rows, dim, Arrays.copyOf(features, rows * dim), Arrays.copyOf(labels, rows),
+                    Arrays.copyOf(labelNames, labelCount));
+        }
+    }
+
+    // Line based CSV tokenizer: keeps the whole current line in its buffer and parses fields in place
+    private static final class CsvTokenizer {
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        private final InputStream in;
+        private byte[] buffer = new byte[1 << 16];
+        private int limit;
+        private int lineStart;
+        private int lineEnd;
+        private int nextLineStart;
+        private int cursor;
+        private int fieldEnd;
+        private int lineNumber;
+        private boolean endOfStream;
+
+        CsvTokenizer(InputStream in) {
+            this.in = in;
+        }
+
+        int lineNumber() {
+            return lineNumber;
+        }
+
+        // Advances to the next line, refilling (and growing) the buffer until the line is complete
+        boolean nextLine() throws IOException {
+            int scan = nextLineStart;
+            while (true) {
+                while (scan < limit && buffer[scan] != '\n') {
+                    scan++;
+                }
+                if (scan < limit || endOfStream) {
+                    break;
+                }
+                int consumed = nextLineStart;
+                int pending = limit - consumed;
+                if (consumed == 0 && pending == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                } else {
+                    System.arraycopy(buffer, consumed, buffer, 0, pending);
+                }
+                scan -= consumed;
+                nextLineStart = 0;
+                limit = pending;
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    endOfStream = true;
+                } else {
+                    limit += read;
+                }
+            }
+            if (nextLineStart >= limit) {
+                return false;
+            }
+            lineStart = nextLineStart;
+            lineEnd = scan;
+            nextLineStart = Math.min(scan + 1, limit);
+            if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            cursor = lineStart;
+            lineNumber++;
+            return true;
+        }
+
+        boolean lineIsBlank() {
+            for (int i = lineStart; i < lineEnd; i++) {
+                if (buffer[i] > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int countFields() {
+            int fields = 1;
+            for (int i = lineStart; i < lineEnd; i++) {
+                if (buffer[i] == ',') {
+                    fields++;
+                }
+            }
+            return fields;
+        }
+
+        // Checks whether the given field of the current line looks like a number, without consuming it
+        boolean fieldIsNumber(int field) {
+            int start = lineStart;
+            for (int i = 0; i < field; i++) {
+                while (buffer[start] != ',') {
+                    start++;
+                }
+                start++;
+            }
+            int end = start;
+            while (end < lineEnd && buffer[end] != ',') {
+                end++;
+            }
+            boolean digit = false;
+            for (int i = start; i < end; i++) {
+                byte b = buffer[i];
+                if (b >= '0' && b <= '9') {
+                    digit = true;
+                } else if (b != '-' && b != '+' && b != '.' && b != 'e' && b != 'E' && b > ' ') {
+                    return false;
+                }
+            }
+            return digit;
+        }
+
+        // Marks the bounds of the next field (trimmed) and moves the cursor past its delimiter
+        private int nextField() {
+            int start = cursor;
+            int end = start;
+            while (end < lineEnd && buffer[end] != ',') {
+                end++;
+            }
+            cursor = end + 1;
+            while (start < end && buffer[start] <= ' ') {
+                start++;
+            }
+            while (end > start && buffer[end - 1] <= ' ') {
+                end--;
+            }
+            fieldEnd = end;
+            return start;
+        }
+
+        float parseFloat() throws IOException {
+            int start = nextField();
+            int end = fieldEnd;
+            int i = start;
+            boolean negative = false;
+            if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+                negative = buffer[i] == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = 0;
+            boolean fraction = false;
+            for (; i < end; i++) {
+                byte b = buffer[i];
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (fraction) {
+                        fractionDigits++;
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+            }
+            if (i < end || digits == 0 || digits > 15 || fractionDigits >= POWERS_OF_TEN.length) {
+                // Exponents, very long numbers and malformed cells take the slow path
+                String cell = new String(buffer, start, end - start, "US-ASCII");
+                try {
+                    return (float) Double.parseDouble(cell);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid number '" + cell + "' on line " + lineNumber);
+                }
+            }
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return (float) (negative ? -value : value);
+        }
+
+        boolean fieldEquals(byte[] expected) {
+            int start = cursor;
+            int end = start;
+            while (end < lineEnd && buffer[end] != ',') {
+                end++;
+            }
+            while (start < end && buffer[start] <= ' ') {
+                start++;
+            }
+            while (end > start && buffer[end - 1] <= ' ') {
+                end--;
+            }
+            if (end - start != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < expected.length; i++) {
+                if (buffer[start + i] != expected[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        byte[] fieldBytes() {
+            int start = nextField();
+            return Arrays.copyOfRange(buffer, start, fieldEnd);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package machine_learning_algorithms;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class DatasetCache {
+
+    /**
+     * This Class reads and writes the compact binary data set format and keeps a sidecar
+     * cache (<file>.mlds) next to each CSV file, so the text is only parsed once.
+     *
+     * Layout (little-endian):
+     *   magic "MLDS", version, source size, source mtime, rows, dim, feature dtype,
+     *   label dictionary (count, then length-prefixed UTF-8 names), int label ids,
+     *   padding to a 64-byte boundary, then the row-major feature block.
+     *
+     * Reading validates the header against the file size and returns a data set whose feature
+     * block stays in the mapping (see Dataset), so a file is limited by the 2 GB of one mapped
+     * buffer rather than by the heap.
+     */
+
+    public static final String Extension = ".mlds";
+
+    private static final int MAGIC = 0x53444C4D; // "MLDS" read as a little-endian int
+    private static final int VERSION = 1;
+    private static final int BLOCK_ALIGNMENT = 64;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 1 + 4; // Up to and including the label count
+
+    // Feature data types of the feature block
+    static final byte DTYPE_FLOAT32 = 0;
+    static final byte DTYPE_UINT8 = 1;
+
+    // Loads a CSV file through its binary sidecar, parsing and writing the sidecar when it is missing or stale
+    public static Dataset load(String csvPath) throws IOException {
+        if (!AlgorithmRunner.Use_Binary_Cache) {
+            return Dataset.parseCsv(csvPath);
+        }
+        File source = new File(csvPath);
+        Path cachePath = Paths.get(csvPath + Extension);
+        if (Files.isRegularFile(cachePath)) {
+            try {
+                Dataset cached = read(cachePath, source.length(), source.lastModified());
+                if (cached != null) {
+                    return cached;
+                }
+            } catch (IOException corrupt) {
+                System.out.println("Warning: Ignoring unreadable cache " + cachePath + ": " + corrupt.getMessage());
+            }
+        }
+
+        Dataset dataset = Dataset.parseCsv(csvPath);
+        try {
+            write(dataset, cachePath, source.length(), source.lastModified());
+        } catch (IOException readOnly) {
+            System.out.println("Warning: Could not write cache " + cachePath + ": " + readOnly.getMessage());
+        }
+        return dataset;
+    }
+
+    // Reads a binary data set file without checking it against a source file
+    public static Dataset read(Path path) throws IOException {
+        return read(path, -1, -1);
+    }
+
+    // Maps the file and reads it; returns null if the header does not match the expected source size and mtime
+    private static Dataset read(Path path, long sourceSize, long sourceModified) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("binary data set files over 2 GB cannot be mapped");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("not a binary data set file");
+            }
+            if (buffer.getInt() != VERSION) {
+                return null; // Written by another version, rebuild it
+            }
+            long size = buffer.getLong();
+            long modified = buffer.getLong();
+            if (sourceSize >= 0 && (size != sourceSize || modified != sourceModified)) {
+                return null;
+            }
+            int rows = buffer.getInt();
+            int dim = buffer.getInt();
+            byte dtype = buffer.get();
+            if (rows < 0 || dim < 0 || (long) rows * dim > Integer.MAX_VALUE) {
+                throw new IOException("invalid size " + rows + " x " + dim);
+            }
+            if (dtype != DTYPE_FLOAT32 && dtype != DTYPE_UINT8) {
+                throw new IOException("unknown feature dtype " + dtype);
+            }
+
+            int labelCount = buffer.getInt();
+            if (labelCount < 0 || labelCount > buffer.remaining() / 2) {
+                throw new IOException("invalid label count " + labelCount);
+            }
+            String[] labelNames = new String[labelCount];
+            for (int i = 0; i < labelNames.length; i++) {
+                int length = buffer.getShort() & 0xFFFF;
+                if (length > buffer.remaining()) {
+                    throw new IOException("truncated label dictionary");
+                }
+                byte[] name = new byte[length];
+                buffer.get(name);
+                labelNames[i] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            long featureStart = align(buffer.position() + 4L * rows);
+            long featureBytes = (long) rows * dim * (dtype == DTYPE_UINT8 ? 1 : 4);
+            if (featureStart + featureBytes > buffer.limit()) {
+                throw new IOException("truncated file: " + rows + " x " + dim + " rows need "
+                        + (featureStart + featureBytes) + " bytes, the file has " + buffer.limit());
+            }
+            int[] labels = new int[rows];
+            buffer.asIntBuffer().get(labels);
+            for (int label : labels) {
+                if (label < 0 || label >= labelCount) {
+                    throw new IOException("label id " + label + " outside the dictionary of " + labelCount);
+                }
+            }
+
+            // The feature block is not copied: the data set reads it through the mapping
+            buffer.position((int) featureStart);
+            ByteBuffer block = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            block.limit((int) featureBytes);
+            if (dtype == DTYPE_FLOAT32) {
+                return Dataset.mapped(rows, dim, block.asFloatBuffer(), labels, labelNames);
+            }
+            return Dataset.mappedUnsignedBytes(rows, dim, block, labels, labelNames);
+        }
+    }
+
+    // Writes a data set to the binary format (through a temporary file so readers never see a partial file)
+    public static void write(Dataset dataset, Path path, long sourceSize, long sourceModified) throws IOException {
+        byte dtype = fitsUnsignedByte(dataset.features(), dataset.rows() * dataset.dim()) ? DTYPE_UINT8 : DTYPE_FLOAT32;
+
+        byte[][] names = new byte[dataset.labelCount()][];
+        long headerSize = HEADER_SIZE;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = dataset.labelName(i).getBytes(StandardCharsets.UTF_8);
+            headerSize += 2 + names[i].length;
+        }
+        int featureStart = (int) align(headerSize + 4L * dataset.rows());
+        int cells = dataset.rows() * dataset.dim();
+        long fileSize = (long) featureStart + (long) cells * (dtype == DTYPE_UINT8 ? 1 : 4);
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("binary data set files over 2 GB cannot be mapped");
+        }
+
+        // Created like any other new file, so it gets the default permissions rather than a temp file's 0600
+        Path temporary = path.resolveSibling(path.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified);
+            buffer.putInt(dataset.rows()).putInt(dataset.dim()).put(dtype);
+            buffer.putInt(names.length);
+            for (byte[] name : names) {
+                buffer.putShort((short) name.length).put(name);
+            }
+            buffer.asIntBuffer().put(dataset.labels(), 0, dataset.rows());
+            buffer.position(featureStart);
+            if (dtype == DTYPE_UINT8) {
+                float[] features = dataset.features();
+                for (int i = 0; i < cells; i++) {
+                    buffer.put((byte) features[i]);
+                }
+            } else {
+                buffer.asFloatBuffer().put(dataset.features(), 0, cells);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Integer features in 0..255 (such as the 0..16 digit pixels) are stored one byte each
+    private static boolean fitsUnsignedByte(float[] features, int cells) {
+        for (int i = 0; i < cells; i++) {
+            float value = features[i];
+            if (value < 0 || value > 255 || value != (int) value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long align(long position) {
+        return (position + BLOCK_ALIGNMENT - 1) / BLOCK_ALIGNMENT * BLOCK_ALIGNMENT;
+    }
+}
@@ -0,0 +1,325 @@
+package machine_learning_algorithms;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+abstract class DecisionTreeBuilder {
+
+    /**
+     * Shared parts of the C4.5 split engines. Entropies are computed from class counts alone with a
+     * table of n * log2(n), so scoring a candidate split needs no logarithms or allocation. Each engine
+     * finds the best threshold of every attribute by information gain; chooseSplit then picks the
+     * attribute, by plain gain or by C4.5's gain ratio among the attributes with at least average gain.
+     * Growth stops early at maxDepth, when a split would leave fewer than minSamplesLeaf rows in a
+     * child, or when the best gain is below minGain.
+     *
+     * Each node carries the set of attributes still worth scoring as a bitset (one long per 64
+     * attributes). An attribute that is constant within a node is constant in all its descendants,
+     * so it is dropped from the children's set and never scanned again below that node.
+     *
+     * With a pool the build runs in parallel: nodes with many rows score their attributes on several
+     * workers, and children with many rows are built as separate subtree tasks. Each task carries its
+     * own SplitScratch (thread-locals are unsafe here, a worker waiting on a join may run another
+     * node). Every node's split depends only on its rows, so the tree equals the sequential one.
+     */
+
+    // Nodes with at least this many rows spread their attributes over the pool
+    static final int Attribute_Task_Rows = 1024;
+    // Both children need at least this many rows before the left one is forked
+    static final int Subtree_Task_Rows = 128;
+
+    protected final Dataset dataset;
+    protected final int attributeCount;
+    protected final int classCount;
+    protected final boolean gainRatio;
+    protected final int maxDepth; // 0 for unlimited
+    protected final int minSamplesLeaf;
+    protected final double minGain;
+    protected final ForkJoinPool pool; // null builds sequentially
+
+    // n * log2(n) for every count up to the row count
+    protected final double[] nLogN;
+
+    DecisionTreeBuilder(Dataset dataset, String criterion, int maxDepth, int minSamplesLeaf, double minGain, ForkJoinPool pool) {
+        if (dataset.rows() == 0) {
+            throw new IllegalArgumentException("Cannot build a tree from an empty training set");
+        }
+        if (maxDepth < 0 || minSamplesLeaf < 1 || !(minGain >= 0)) {
+            throw new IllegalArgumentException("Tree limits need maxDepth >= 0, minSamplesLeaf >= 1 and minGain >= 0");
+        }
+        switch (criterion) {
+            case "gain":
+                this.gainRatio = false;
+                break;
+            case "gainratio":
+                this.gainRatio = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown split criterion '" + criterion + "'");
+        }
+        this.dataset = dataset;
+        this.attributeCount = dataset.dim();
+        this.classCount = dataset.labelCount();
+        this.maxDepth = maxDepth;
+        this.minSamplesLeaf = minSamplesLeaf;
+        this.minGain = minGain;
+        this.pool = pool != null && pool.getParallelism() > 1 ? pool : null;
+        this.nLogN = new double[dataset.rows() + 1];
+        for (int n = 1; n <= dataset.rows(); n++) {
+            nLogN[n] = n * Math.log(n) / Math.log(2);
+        }
+    }
+
+    // Grows the whole tree
+    final C45_Algorithm.Node build() {
+        if (pool == null) {
+            return buildRoot(new SplitScratch());
+        }
+        return pool.invoke(new SubtreeTask(this::buildRoot));
+    }
+
+    abstract C45_Algorithm.Node buildRoot(SplitScratch scratch);
+
+    // Whether a node may be split at all: not pure, not at maxDepth, and large enough for two leaves
+    protected boolean mayGrow(int rows, int majorityCount, int depth) {
+        return majorityCount < rows && rows >= 2 * minSamplesLeaf && (maxDepth == 0 || depth < maxDepth);
+    }
+
+    // Leaf predicting the majority class of its training rows
+    protected static C45_Algorithm.Node leaf(int majorityClass, int rows, int majorityCount) {
+        C45_Algorithm.Node node = node(majorityClass, rows, majorityCount);
+        node.label = majorityClass;
+        return node;
+    }
+
+    // Inner node for a chosen split; the children are filled in by buildChildren
+    protected static C45_Algorithm.Node inner(int majorityClass, int rows, int majorityCount, C45_Algorithm.Split split) {
+        C45_Algorithm.Node node = node(majorityClass, rows, majorityCount);
+        node.attribute = split.attribute;
+        node.threshold = split.threshold;
+        return node;
+    }
+
+    private static C45_Algorithm.Node node(int majorityClass, int rows, int majorityCount) {
+        C45_Algorithm.Node node = new C45_Algorithm.Node();
+        node.majorityClass = majorityClass;
+        node.rows = rows;
+        node.errors = rows - majorityCount;
+        return node;
+    }
+
+    // Builds both children, forking the left one when both are large enough to be worth a task
+    protected void buildChildren(C45_Algorithm.Node node, int leftRows, int rightRows, SplitScratch scratch,
+                                 Function<SplitScratch, C45_Algorithm.Node> left, Function<SplitScratch, C45_Algorithm.Node> right) {
+        if (pool == null || Math.min(leftRows, rightRows) < Subtree_Task_Rows) {
+            node.left = left.apply(scratch);
+            node.right = right.apply(scratch);
+            return;
+        }
+        SubtreeTask leftTask = new SubtreeTask(left);
+        leftTask.fork();
+        node.right = right.apply(scratch);
+        node.left = leftTask.join();
+    }
+
+    // Runs the action for every attribute in the set, over the pool for nodes with many rows
+    protected void forEachAttribute(int nodeRows, long[] attributes, SplitScratch scratch, AttributeAction action) {
+        if (pool == null || nodeRows < Attribute_Task_Rows) {
+            for (int attribute = 0; attribute < attributeCount; attribute++) {
+                if (contains(attributes, attribute)) {
+                    action.apply(attribute, scratch);
+                }
+            }
+            return;
+        }
+        int grain = Math.max(1, attributeCount / (pool.getParallelism() * 4));
+        new AttributeTask(action, attributes, 0, attributeCount, grain).invoke();
+    }
+
+    // Bitset holding every attribute
+    protected long[] allAttributes() {
+        long[] set = new long[(attributeCount + 63) >>> 6];
+        for (int attribute = 0; attribute < attributeCount; attribute++) {
+            set[attribute >>> 6] |= 1L << attribute;
+        }
+        return set;
+    }
+
+    protected static boolean contains(long[] set, int attribute) {
+        return (set[attribute >>> 6] & (1L << attribute)) != 0;
+    }
+
+    // The set without the attributes the last split search found constant, shared when there are none
+    protected long[] withoutConstant(long[] set, SplitScratch scratch) {
+        long[] reduced = set;
+        for (int attribute = 0; attribute < attributeCount; attribute++) {
+            if (scratch.constant[attribute] && contains(set, attribute)) {
+                if (reduced == set) {
+                    reduced = set.clone();
+                }
+                reduced[attribute >>> 6] &= ~(1L << attribute);
+            }
+        }
+        return reduced;
+    }
+
+    // Entropy (in bits) of a class distribution with the given total
+    protected double entropy(int[] counts, int total) {
+        double sum = 0;
+        for (int count : counts) {
+            sum += nLogN[count];
+        }
+        return (nLogN[total] - sum) / total;
+    }
+
+    // Weighted entropy of a binary split, in bits times total
+    protected double splitEntropy(int[] left, int leftTotal, int[] right, int rightTotal) {
+        double sum = nLogN[leftTotal] + nLogN[rightTotal];
+        for (int c = 0; c < classCount; c++) {
+            sum -= nLogN[left[c]] + nLogN[right[c]];
+        }
+        return sum;
+    }
+
+    // Records an attribute's best threshold; the split information is that of the two child sizes
+    protected void recordCandidate(SplitScratch candidates, int attribute, float threshold, double gain, int leftTotal, int total) {
+        candidates.thresholds[attribute] = threshold;
+        candidates.gains[attribute] = gain;
+        candidates.splitInfo[attribute] = (nLogN[total] - nLogN[leftTotal] - nLogN[total - leftTotal]) / total;
+    }
+
+    // Picks the attribute to split on, or null when no attribute gains information
+    protected C45_Algorithm.Split chooseSplit(SplitScratch candidates) {
+        double[] gains = candidates.gains;
+        double minimumGain = Math.max(1e-12, minGain);
+        if (gainRatio) {
+            // Gain ratio favours very uneven splits, so C4.5 only considers attributes with average gain or more
+            double sum = 0;
+            int count = 0;
+            for (int a = 0; a < attributeCount; a++) {
+                if (gains[a] > minimumGain) {
+                    sum += gains[a];
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return null;
+            }
+            minimumGain = Math.max(minimumGain, sum / count - 1e-12);
+        }
+
+        int best = -1;
+        double bestScore = 0;
+        for (int a = 0; a < attributeCount; a++) {
+            double gain = gains[a];
+            if (!(gain >= minimumGain)) {
+                continue;
+            }
+            double score = gainRatio ? gain / candidates.splitInfo[a] : gain;
+            if (best < 0 || score > bestScore) {
+                best = a;
+                bestScore = score;
+            }
+        }
+        return best < 0 ? null : new C45_Algorithm.Split(best, candidates.thresholds[best]);
+    }
+
+    protected static int majority(int[] classCounts) {
+        int majority = 0;
+        for (int label = 1; label < classCounts.length; label++) {
+            if (classCounts[label] > classCounts[majority]) {
+                majority = label;
+            }
+        }
+        return majority;
+    }
+
+    // Work on one attribute of the current node, using the given scratch for its counts
+    interface AttributeAction {
+        void apply(int attribute, SplitScratch scratch);
+    }
+
+    // Buffers owned by one build task: class counts, per-attribute candidates and recycled arrays
+    final class SplitScratch {
+        final int[] classCounts = new int[classCount];
+        final int[] leftCounts = new int[classCount];
+        final int[] rightCounts = new int[classCount];
+
+        // Best threshold per attribute at the current node, NaN gain when the attribute cannot split it
+        final float[] thresholds = new float[attributeCount];
+        final double[] gains = new double[attributeCount];
+        final double[] splitInfo = new double[attributeCount];
+        final boolean[] constant = new boolean[attributeCount];
+
+        final ArrayDeque<int[]> tables = new ArrayDeque<>();
+        int[] buffer = new int[0];
+
+        void clearCandidates() {
+            Arrays.fill(gains, Double.NaN);
+            Arrays.fill(constant, false);
+        }
+
+        // Temporary int buffer of at least the given length
+        int[] buffer(int length) {
+            if (buffer.length < length) {
+                buffer = new int[length];
+            }
+            return buffer;
+        }
+    }
+
+    // Fork-join task building one subtree with its own scratch
+    private final class SubtreeTask extends RecursiveTask<C45_Algorithm.Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Function<SplitScratch, C45_Algorithm.Node> subtree;
+
+        SubtreeTask(Function<SplitScratch, C45_Algorithm.Node> subtree) {
+            this.subtree = subtree;
+        }
+
+        @Override
+        protected C45_Algorithm.Node compute() {
+            return subtree.apply(new SplitScratch());
+        }
+    }
+
+    // Fork-join task applying an attribute action to the attributes [start, end)
+    private final class AttributeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final AttributeAction action;
+        private final long[] attributes;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        AttributeTask(AttributeAction action, long[] attributes, int start, int end, int grain) {
+            this.action = action;
+            this.attributes = attributes;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > grain) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new AttributeTask(action, attributes, start, middle, grain),
+                        new AttributeTask(action, attributes, middle, end, grain));
+                return;
+            }
+            SplitScratch scratch = new SplitScratch();
+            for (int attribute = start; attribute < end; attribute++) {
+                if (contains(attributes, attribute)) {
+                    action.apply(attribute, scratch);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package machine_learning_algorithms;
+
+public final class DistanceKernels {
+
+    /**
+     * This Class holds the distance kernels shared by the neighbour searches.
+     * Only the ranking of neighbours matters, so the kernels return squared distances and skip the sqrt.
+     * The kernels are plain scalar loops that C2 unrolls and vectorises on its own. They do not use
+     * the jdk.incubator.vector API: the build targets release 11 and does not add the incubator module.
+     */
+
+    // Largest dimension whose uint8 squared distance (at most 255 * 255 per feature) still fits an int
+    public static final int Max_Uint8_Dim = Integer.MAX_VALUE / (255 * 255);
+
+    private DistanceKernels() {
+    }
+
+    // Squared Euclidean distance between two rows stored in flat feature blocks
+    public static double squaredEuclidean(float[] a, int offsetA, float[] b, int offsetB, int dim) {
+        double sum = 0.0;
+        for (int i = 0; i < dim; i++) {
+            double difference = a[offsetA + i] - b[offsetB + i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    // Squared Euclidean distance between two uint8 rows, in integer arithmetic
+    public static int squaredEuclideanUint8(byte[] a, int offsetA, byte[] b, int offsetB, int dim) {
+        int sum = 0;
+        for (int i = 0; i < dim; i++) {
+            int difference = (a[offsetA + i] & 0xFF) - (b[offsetB + i] & 0xFF);
+            sum += difference * difference;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,397 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class Evaluation {
+
+    /**
+     * This Class compares several algorithms with cross-validation. The data files are loaded once
+     * and joined; folds are either one per data file (the classic swap: train on the other files,
+     * test on this one) or stratified, shuffled k-fold splits. A fold is only two arrays of row ids
+     * into the joined data; its rows are gathered into contiguous training and test sets by the run
+     * that uses them, so only the runs in progress hold a copy.
+     *
+     * Every (algorithm, fold) run is submitted to one fork-join pool at once, and each run spreads
+     * its own training and scoring over the same pool, so the comparison takes about as long as its
+     * slowest run instead of the sum of all of them. The confusion matrices of the folds are merged
+     * into one report per algorithm, each fold listed with the statistics its classifier reports
+     * (index pruning and recall, tree sizes, search audits).
+     *
+     * Usage: AlgorithmRunner [--algorithms knn,c45,som,random] [--folds files|k] [--seed n] [--threads n] [data files...]
+     */
+
+    private static final String USAGE =
+            "Usage: AlgorithmRunner [--algorithms knn,c45,som,random] [--folds files|k] [--seed n] [--threads n] [data files...]";
+
+    private final String[] algorithms;
+    private final String[] dataFiles;
+    private final int folds; // 0 = one fold per data file
+    private final long seed;
+    private final ForkJoinPool pool;
+    private boolean ownsPool; // The --threads pool is shut down at the end of run
+
+    public Evaluation(String[] algorithms, String[] dataFiles, int folds, long seed, ForkJoinPool pool) {
+        if (algorithms.length == 0) {
+            throw new IllegalArgumentException("No algorithm selected");
+        }
+        if (folds == 1 || folds < 0) {
+            throw new IllegalArgumentException("Folds must be at least 2 (or 'files'), got " + folds);
+        }
+        if (folds == 0 && dataFiles.length < 2) {
+            throw new IllegalArgumentException("One fold per data file needs at least two data files");
+        }
+        for (String algorithm : algorithms) {
+            displayName(algorithm); // Rejects unknown names before any data is loaded
+        }
+        this.algorithms = algorithms;
+        this.dataFiles = dataFiles;
+        this.folds = folds;
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    // Parses command line arguments; anything not given comes from the AlgorithmRunner settings
+    public static Evaluation fromArguments(String[] args) {
+        List<String> algorithms = new ArrayList<>();
+        if (AlgorithmRunner.KNN_Algorithm) {
+            algorithms.add(KNN_Algorithm.Model_Kind);
+        }
+        if (AlgorithmRunner.C45_Algorithm) {
+            algorithms.add(C45_Algorithm.Model_Kind);
+        }
+        if (AlgorithmRunner.SOM_Algorithm) {
+            algorithms.add(SOM_Algorithm.Model_Kind);
+        }
+        if (AlgorithmRunner.Random_Guess_Algorithm) {
+            algorithms.add(Random_Guess_Algorithm.Model_Kind);
+        }
+        String[] selected = algorithms.toArray(new String[0]);
+        int folds = AlgorithmRunner.Evaluation_Folds;
+        long seed = AlgorithmRunner.Evaluation_Seed;
+        int threads = 0; // 0 = the shared pool
+        List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                files.add(arg);
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg + "\n" + USAGE);
+            }
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--algorithms":
+                        selected = value.split(",");
+                        break;
+                    case "--folds":
+                        folds = value.equals("files") ? 0 : Integer.parseInt(value);
+                        if (folds == 0 && !value.equals("files")) {
+                            // 0 stands for 'files' inside, but is no fold count on the command line
+                            throw new IllegalArgumentException("Folds must be at least 2 (or 'files'), got 0\n" + USAGE);
+                        }
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        if (threads < 1) {
+                            throw new IllegalArgumentException("Threads must be at least 1, got " + threads + "\n" + USAGE);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg + "\n" + USAGE);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value '" + value + "' for " + arg + "\n" + USAGE);
+            }
+        }
+        if (files.isEmpty()) {
+            files.add(AlgorithmRunner.Dataset_1);
+            files.add(AlgorithmRunner.Dataset_2);
+        }
+        String[] dataFiles = files.toArray(new String[0]);
+        if (threads == 0) {
+            return new Evaluation(selected, dataFiles, folds, seed, WorkerPool.shared());
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Evaluation evaluation = new Evaluation(selected, dataFiles, folds, seed, pool);
+            evaluation.ownsPool = true;
+            return evaluation;
+        } catch (IllegalArgumentException invalid) {
+            pool.shutdown();
+            throw invalid;
+        }
+    }
+
+    public void run() throws IOException {
+        try {
+            evaluate();
+        } finally {
+            if (ownsPool) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private void evaluate() throws IOException {
+        Dataset[] parts = Dataset.loadAll(dataFiles);
+        Dataset data = parts.length == 1 ? parts[0] : Dataset.concat(parts);
+        Fold[] split = folds == 0 ? fileFolds(parts) : stratifiedFolds(data, folds, seed);
+        System.out.printf("Evaluating %d algorithm(s) on %d rows x %d features, %s, %d threads%n",
+                algorithms.length, data.rows(), data.dim(),
+                folds == 0 ? "one fold per data file" : String.format("stratified %d-fold (seed %d)", folds, seed),
+                pool.getParallelism());
+
+        // With Print_Details every prediction goes to one log per algorithm, rows numbered as in the full data
+        PredictionLog[] logs = new PredictionLog[algorithms.length];
+        FoldResult[][] results = new FoldResult[algorithms.length][split.length];
+        long start = System.nanoTime();
+        try {
+            if (AlgorithmRunner.Print_Details) {
+                for (int a = 0; a < algorithms.length; a++) {
+                    logs[a] = PredictionLog.open(algorithms[a], data.labelNames());
+                }
+            }
+
+            // Every run is queued at once, the pool interleaves them with their own parallel work
+            List<ForkJoinTask<FoldResult>> runs = new ArrayList<>();
+            for (int a = 0; a < algorithms.length; a++) {
+                for (int f = 0; f < split.length; f++) {
+                    String algorithm = algorithms[a];
+                    Fold fold = split[f];
+                    PredictionLog.FoldLog log = logs[a] == null ? null : logs[a].fold(f + 1, fold.test);
+                    runs.add(pool.submit(() -> runFold(algorithm, data, fold, log)));
+                }
+            }
+            for (int a = 0; a < algorithms.length; a++) {
+                for (int f = 0; f < split.length; f++) {
+                    results[a][f] = runs.get(a * split.length + f).join();
+                }
+            }
+        } finally {
+            for (PredictionLog log : logs) {
+                if (log != null) {
+                    log.close();
+                }
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        long runNanos = 0;
+        for (int a = 0; a < algorithms.length; a++) {
+            printAlgorithmReport(algorithms[a], results[a], data.labelNames());
+            for (FoldResult result : results[a]) {
+                runNanos += result.fitNanos + result.predictNanos;
+            }
+        }
+        printSummary(results);
+        System.out.printf("%nWall time %.0f ms for %.0f ms of runs (%.1fx)%n",
+                wallNanos / 1e6, runNanos / 1e6, (double) runNanos / Math.max(1, wallNanos));
+        for (PredictionLog log : logs) {
+            if (log != null) {
+                System.out.println(log.summary());
+            }
+        }
+    }
+
+    // Trains one algorithm on the training rows of a fold and scores its test rows, logging them unless log is null
+    private FoldResult runFold(String algorithm, Dataset data, Fold fold, PredictionLog.FoldLog log) {
+        Dataset training = data.select(fold.train);
+        Dataset test = data.select(fold.test);
+        Classifier classifier = Classifier.create(algorithm, data.dim(), pool);
+        FoldResult result = new FoldResult(data.labelNames());
+        long start = System.nanoTime();
+        classifier.fit(training);
+        result.fitNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        int[] predictions = log == null ? classifier.predictBatch(test) : classifier.predictBatch(test, log);
+        result.predictNanos = System.nanoTime() - start;
+        for (int row = 0; row < test.rows(); row++) {
+            result.matrix.add(test.label(row), predictions[row]);
+        }
+        result.statistics = classifier.statistics(test);
+        return result;
+    }
+
+    // Fold i tests on the rows of data file i and trains on the rows of all the others
+    static Fold[] fileFolds(Dataset[] parts) {
+        int total = 0;
+        for (Dataset part : parts) {
+            total += part.rows();
+        }
+        Fold[] split = new Fold[parts.length];
+        int start = 0;
+        for (int i = 0; i < parts.length; i++) {
+            int end = start + parts[i].rows();
+            int[] test = new int[end - start];
+            int[] train = new int[total - test.length];
+            for (int row = 0, t = 0; row < total; row++) {
+                if (row >= start && row < end) {
+                    test[row - start] = row;
+                } else {
+                    train[t++] = row;
+                }
+            }
+            split[i] = new Fold(train, test);
+            start = end;
+        }
+        return split;
+    }
+
+    // Shuffles the rows of each label, then deals them out to the folds in turn, label after label,
+    // so every fold gets each label's share and fold sizes differ by at most one row
+    static Fold[] stratifiedFolds(Dataset data, int k, long seed) {
+        if (k > data.rows()) {
+            throw new IllegalArgumentException("Cannot split " + data.rows() + " rows into " + k + " folds");
+        }
+        int[] byLabel = new int[data.rows()];
+        int[] labelStart = new int[data.labelCount() + 1];
+        for (int row = 0; row < data.rows(); row++) {
+            labelStart[data.label(row) + 1]++;
+        }
+        for (int label = 0; label < data.labelCount(); label++) {
+            labelStart[label + 1] += labelStart[label];
+        }
+        int[] fill = Arrays.copyOf(labelStart, data.labelCount());
+        for (int row = 0; row < data.rows(); row++) {
+            byLabel[fill[data.label(row)]++] = row;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int label = 0; label < data.labelCount(); label++) {
+            for (int i = labelStart[label + 1] - 1; i > labelStart[label]; i--) {
+                int j = labelStart[label] + random.nextInt(i - labelStart[label] + 1);
+                int swap = byLabel[i];
+                byLabel[i] = byLabel[j];
+                byLabel[j] = swap;
+            }
+        }
+
+        int[] foldOf = new int[data.rows()];
+        int[] foldSize = new int[k];
+        for (int i = 0; i < byLabel.length; i++) {
+            foldOf[byLabel[i]] = i % k;
+            foldSize[i % k]++;
+        }
+        Fold[] split = new Fold[k];
+        for (int f = 0; f < k; f++) {
+            int[] train = new int[data.rows() - foldSize[f]];
+            int[] test = new int[foldSize[f]];
+            for (int row = 0, r = 0, t = 0; row < data.rows(); row++) {
+                if (foldOf[row] == f) {
+                    test[t++] = row;
+                } else {
+                    train[r++] = row;
+                }
+            }
+            split[f] = new Fold(train, test);
+        }
+        return split;
+    }
+
+    private void printAlgorithmReport(String algorithm, FoldResult[] results, String[] labelNames) {
+        ConfusionMatrix pooled = new ConfusionMatrix(labelNames);
+        for (FoldResult result : results) {
+            pooled.merge(result.matrix);
+        }
+        System.out.printf("%nAlgorithm: %s%n", displayName(algorithm));
+        System.out.println("Confusion Matrix (all folds):");
+        pooled.print();
+        for (int f = 0; f < results.length; f++) {
+            System.out.printf("Fold %d Accuracy: %.2f%% (%d test rows, fit %.1f ms, predict %.1f ms, %.0f queries/sec)%n", f + 1,
+                    results[f].matrix.accuracy(), results[f].matrix.total(), results[f].fitNanos / 1e6, results[f].predictNanos / 1e6,
+                    results[f].matrix.total() / Math.max(1e-9, results[f].predictNanos / 1e9));
+            if (results[f].statistics != null) {
+                System.out.println("  " + results[f].statistics.replace(System.lineSeparator(), System.lineSeparator() + "  "));
+            }
+        }
+        System.out.printf("Accuracy: %.2f%% +/- %.2f over folds, %.2f%% pooled, macro F1 %.4f%n",
+                meanAccuracy(results), accuracyDeviation(results), pooled.accuracy(), pooled.macroF1());
+    }
+
+    // One line per algorithm, in the order they were given
+    private void printSummary(FoldResult[][] results) {
+        System.out.println("\nSummary of Results:");
+        System.out.printf("%-22s %10s %8s %10s %12s %12s%n", "Algorithm", "Accuracy", "+/-", "Macro F1", "Fit ms", "Predict ms");
+        for (int a = 0; a < algorithms.length; a++) {
+            ConfusionMatrix pooled = new ConfusionMatrix(results[a][0].matrix.labelNames());
+            double fitNanos = 0;
+            double predictNanos = 0;
+            for (FoldResult result : results[a]) {
+                pooled.merge(result.matrix);
+                fitNanos += result.fitNanos;
+                predictNanos += result.predictNanos;
+            }
+            System.out.printf("%-22s %9.2f%% %8.2f %10.4f %12.1f %12.1f%n", displayName(algorithms[a]),
+                    meanAccuracy(results[a]), accuracyDeviation(results[a]), pooled.macroF1(),
+                    fitNanos / results[a].length / 1e6, predictNanos / results[a].length / 1e6);
+        }
+    }
+
+    private static double meanAccuracy(FoldResult[] results) {
+        double sum = 0;
+        for (FoldResult result : results) {
+            sum += result.matrix.accuracy();
+        }
+        return sum / results.length;
+    }
+
+    // Sample standard deviation of the fold accuracies
+    private static double accuracyDeviation(FoldResult[] results) {
+        double mean = meanAccuracy(results);
+        double sum = 0;
+        for (FoldResult result : results) {
+            double difference = result.matrix.accuracy() - mean;
+            sum += difference * difference;
+        }
+        return results.length < 2 ? 0 : Math.sqrt(sum / (results.length - 1));
+    }
+
+    private static String displayName(String algorithm) {
+        switch (algorithm) {
+            case KNN_Algorithm.Model_Kind:
+                return "K-Nearest Neighbors";
+            case C45_Algorithm.Model_Kind:
+                return "C4.5";
+            case SOM_Algorithm.Model_Kind:
+                return "Self-Organizing Map";
+            case Random_Guess_Algorithm.Model_Kind:
+                return "Random Guess";
+            default:
+                throw new IllegalArgumentException("Unknown algorithm '" + algorithm + "'\n" + USAGE);
+        }
+    }
+
+    // Row ids of the training and test rows of one fold
+    static class Fold {
+        final int[] train;
+        final int[] test;
+
+        Fold(int[] train, int[] test) {
+            this.train = train;
+            this.test = test;
+        }
+    }
+
+    // Confusion matrix, timings and the classifier's own statistics of one (algorithm, fold) run
+    static class FoldResult {
+        final ConfusionMatrix matrix;
+        long fitNanos;
+        long predictNanos;
+        String statistics; // Null if the algorithm reports none
+
+        FoldResult(String[] labelNames) {
+            this.matrix = new ConfusionMatrix(labelNames);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+class HistogramTreeBuilder extends DecisionTreeBuilder {
+
+    /**
+     * Histogram split search. Every feature is binned once: one bin per distinct value when there
+     * are at most Max_Bins of them (the digits need 17), quantile bins otherwise. A node is then
+     * summarised by one flat int table of counts indexed by [attribute][bin][class], and every split
+     * of every attribute is scored from that table with a sweep over its bins.
+     *
+     * Only the smaller child's table is counted from its rows; the larger child's is the parent's
+     * minus the smaller one, computed in place in the parent's table. Tables are recycled through the
+     * build task's scratch. The rows live in one shared index buffer that is partitioned in place,
+     * quicksort-style, so every node owns a range [start, end) of it and memory stays O(rows).
+     */
+
+    static final int Max_Bins = 256;
+
+    private final int rows;
+    private final byte[] bins; // Column-major bin ids (unsigned), bins[attribute * rows + row]
+    private final float[][] binUpper; // Largest training value in each bin, used as the threshold
+    private final int[] tableOffset; // Start of each attribute's [bin][class] block
+    private final int classOffset; // Start of the block of class totals after the attribute blocks
+    private final int tableSize;
+    private final int[] order; // Row ids, each node owning a contiguous range
+
+    HistogramTreeBuilder(Dataset dataset, String criterion, int maxDepth, int minSamplesLeaf, double minGain, ForkJoinPool pool) {
+        super(dataset, criterion, maxDepth, minSamplesLeaf, minGain, pool);
+        this.rows = dataset.rows();
+        this.bins = new byte[rows * attributeCount];
+        this.binUpper = new float[attributeCount][];
+        this.tableOffset = new int[attributeCount];
+        int offset = 0;
+        for (int attribute = 0; attribute < attributeCount; attribute++) {
+            binUpper[attribute] = binAttribute(attribute);
+            tableOffset[attribute] = offset;
+            offset += binUpper[attribute].length * classCount;
+        }
+        this.classOffset = offset;
+        this.tableSize = offset + classCount;
+        this.order = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            order[row] = row;
+        }
+    }
+
+    @Override
+    C45_Algorithm.Node buildRoot(SplitScratch scratch) {
+        long[] attributes = allAttributes();
+        int[] table = acquireTable(scratch);
+        fillTable(0, rows, attributes, table, scratch);
+        return buildNode(0, rows, attributes, table, 0, scratch);
+    }
+
+    // Chooses the bin boundaries of one attribute and stores every row's bin id
+    private float[] binAttribute(int attribute) {
+        float[] values = new float[rows];
+        for (int row = 0; row < rows; row++) {
+            values[row] = dataset.get(row, attribute);
+        }
+        Arrays.sort(values);
+        int distinct = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+
+        float[] upper;
+        if (distinct <= Max_Bins) {
+            upper = Arrays.copyOf(values, distinct);
+        } else {
+            // Equal-frequency bins over the distinct values, each bin ending on a real training value
+            upper = new float[Max_Bins];
+            for (int b = 0; b < Max_Bins; b++) {
+                upper[b] = values[(int) ((long) (b + 1) * distinct / Max_Bins) - 1];
+            }
+        }
+
+        for (int row = 0; row < rows; row++) {
+            int bin = Arrays.binarySearch(upper, dataset.get(row, attribute));
+            bins[attribute * rows + row] = (byte) (bin >= 0 ? bin : -bin - 1);
+        }
+        return upper;
+    }
+
+    private C45_Algorithm.Node buildNode(int start, int end, long[] attributes, int[] table, int depth, SplitScratch scratch) {
+        int total = end - start;
+        int[] classCounts = scratch.classCounts;
+        System.arraycopy(table, classOffset, classCounts, 0, classCount);
+        int majorityClass = majority(classCounts);
+        int majorityCount = classCounts[majorityClass];
+
+        // Stop when all instances have the same label, a limit is reached or no split gains enough
+        C45_Algorithm.Split split = mayGrow(total, majorityCount, depth) ? findBestSplit(total, attributes, table, scratch) : null;
+        if (split == null) {
+            scratch.tables.push(table);
+            return leaf(majorityClass, total, majorityCount);
+        }
+        long[] childAttributes = withoutConstant(attributes, scratch);
+
+        // Hoare-style partition of the range: rows going left first, then rows going right
+        int column = split.attribute * rows;
+        int lastLeftBin = Arrays.binarySearch(binUpper[split.attribute], split.threshold);
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            if ((bins[column + order[i]] & 0xFF) <= lastLeftBin) {
+                i++;
+            } else {
+                int swap = order[i];
+                order[i] = order[j];
+                order[j--] = swap;
+            }
+        }
+        int middle = i;
+
+        // Count the smaller child, then turn the parent's table into the larger child's by subtraction
+        boolean leftSmaller = middle - start <= end - middle;
+        int[] smallTable = acquireTable(scratch);
+        if (leftSmaller) {
+            fillTable(start, middle, childAttributes, smallTable, scratch);
+        } else {
+            fillTable(middle, end, childAttributes, smallTable, scratch);
+        }
+        subtract(table, smallTable, childAttributes);
+
+        C45_Algorithm.Node node = inner(majorityClass, total, majorityCount, split);
+        int[] leftTable = leftSmaller ? smallTable : table;
+        int[] rightTable = leftSmaller ? table : smallTable;
+        buildChildren(node, middle - start, end - middle, scratch,
+                s -> buildNode(start, middle, childAttributes, leftTable, depth + 1, s),
+                s -> buildNode(middle, end, childAttributes, rightTable, depth + 1, s));
+        return node;
+    }
+
+    // Sweeps the bins of every attribute, the left side growing by one bin at a time
+    private C45_Algorithm.Split findBestSplit(int total, long[] attributes, int[] table, SplitScratch scratch) {
+        int[] classCounts = scratch.classCounts;
+        double entropyBefore = entropy(classCounts, total);
+        scratch.clearCandidates();
+
+        forEachAttribute(total, attributes, scratch, (attribute, counts) -> {
+            int[] leftCounts = counts.leftCounts;
+            int[] rightCounts = counts.rightCounts;
+            int base = tableOffset[attribute];
+            int binCount = binUpper[attribute].length;
+            Arrays.fill(leftCounts, 0);
+            System.arraycopy(classCounts, 0, rightCounts, 0, classCount);
+            int leftTotal = 0;
+            double bestEntropy = Double.POSITIVE_INFINITY;
+            int bestLeft = 0;
+            float bestThreshold = 0;
+            for (int b = 0; b < binCount - 1; b++) {
+                int binTotal = 0;
+                int cell = base + b * classCount;
+                for (int c = 0; c < classCount; c++) {
+                    int count = table[cell + c];
+                    leftCounts[c] += count;
+                    rightCounts[c] -= count;
+                    binTotal += count;
+                }
+                if (binTotal == 0) {
+                    continue;
+                }
+                if (binTotal == total) {
+                    break;
+                }
+                leftTotal += binTotal;
+                if (total - leftTotal < minSamplesLeaf) {
+                    break;
+                }
+                if (leftTotal < minSamplesLeaf) {
+                    continue;
+                }
+                double entropyAfter = splitEntropy(leftCounts, leftTotal, rightCounts, total - leftTotal);
+                if (entropyAfter < bestEntropy) {
+                    bestEntropy = entropyAfter;
+                    bestLeft = leftTotal;
+                    bestThreshold = binUpper[attribute][b];
+                }
+            }
+            if (leftTotal == 0) {
+                scratch.constant[attribute] = true; // Every row of the node has the same value
+            } else if (bestLeft > 0) {
+                recordCandidate(scratch, attribute, bestThreshold, entropyBefore - bestEntropy / total, bestLeft, total);
+            }
+        });
+        return chooseSplit(scratch);
+    }
+
+    // Counts the rows of order[start, end) into a zeroed table: class totals, then each attribute block
+    private void fillTable(int start, int end, long[] attributes, int[] table, SplitScratch scratch) {
+        int[] labels = dataset.labels();
+        for (int i = start; i < end; i++) {
+            table[classOffset + labels[order[i]]]++;
+        }
+        forEachAttribute(end - start, attributes, scratch, (attribute, unused) -> {
+            int base = tableOffset[attribute];
+            int column = attribute * rows;
+            for (int i = start; i < end; i++) {
+                int row = order[i];
+                table[base + (bins[column + row] & 0xFF) * classCount + labels[row]]++;
+            }
+        });
+    }
+
+    // table -= other over the class totals and the blocks of the given attributes
+    private void subtract(int[] table, int[] other, long[] attributes) {
+        for (int c = classOffset; c < tableSize; c++) {
+            table[c] -= other[c];
+        }
+        for (int attribute = 0; attribute < attributeCount; attribute++) {
+            if (contains(attributes, attribute)) {
+                int end = tableOffset[attribute] + binUpper[attribute].length * classCount;
+                for (int c = tableOffset[attribute]; c < end; c++) {
+                    table[c] -= other[c];
+                }
+            }
+        }
+    }
+
+    private int[] acquireTable(SplitScratch scratch) {
+        int[] table = scratch.tables.poll();
+        if (table == null) {
+            return new int[tableSize];
+        }
+        Arrays.fill(table, 0);
+        return table;
+    }
+}
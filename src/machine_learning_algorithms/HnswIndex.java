@@ -0,0 +1,374 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+class HnswIndex implements NeighbourIndex {
+
+    /**
+     * Approximate search on a hierarchical navigable small-world graph. Every row is a graph node
+     * on level 0 and, with exponentially decaying probability, on higher levels. Queries walk
+     * greedily down the sparse upper levels and run a best-first search with efSearch candidates
+     * on level 0. Trades a small recall loss for far fewer distance evaluations.
+     *
+     * Rows are inserted in parallel; each node's links are guarded by its own lock while building,
+     * so the graph (not the search results' correctness) depends on the thread interleaving.
+     */
+
+    private static final long SEED = 42;
+
+    private final Dataset reference;
+    private final int dim;
+    private final float[] points;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+
+    // links[node][level] = {count, neighbour ids...}; level 0 holds up to 2M links, higher levels M
+    private final int[][][] links;
+    private final int[] levels;
+    private final Object[] locks;
+    private volatile boolean building = true;
+    private int entryPoint;
+    private int topLevel;
+
+    private final ThreadLocal<SearchScratch> scratch;
+
+    HnswIndex(Dataset reference, int m, int efConstruction, int efSearch, ForkJoinPool pool) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("HNSW needs M >= 2 and positive ef values");
+        }
+        this.reference = reference;
+        this.dim = reference.dim();
+        this.points = reference.features();
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+
+        int rows = reference.rows();
+        this.links = new int[rows][][];
+        this.levels = new int[rows];
+        this.locks = new Object[rows];
+        this.scratch = ThreadLocal.withInitial(() -> new SearchScratch(rows, Math.max(efConstruction, efSearch)));
+
+        // Levels are drawn up front from a seeded generator, so the layer structure is reproducible
+        SplittableRandom random = new SplittableRandom(SEED);
+        double levelScale = 1 / Math.log(m);
+        for (int node = 0; node < rows; node++) {
+            levels[node] = (int) (-Math.log(1 - random.nextDouble()) * levelScale);
+            links[node] = new int[levels[node] + 1][];
+            for (int level = 0; level <= levels[node]; level++) {
+                links[node][level] = new int[capacity(level) + 1];
+            }
+            locks[node] = new Object();
+        }
+
+        if (rows > 0) {
+            entryPoint = 0;
+            topLevel = levels[0];
+            pool.invoke(new InsertTask(1, rows, Math.max(64, rows / (pool.getParallelism() * 8))));
+        }
+        building = false;
+    }
+
+    @Override
+    public Dataset reference() {
+        return reference;
+    }
+
+    @Override
+    public boolean exact() {
+        return false;
+    }
+
+    private int capacity(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    @Override
+    public void search(float[] query, int queryOffset, NeighbourHeap nearest) {
+        if (reference.rows() == 0) {
+            return;
+        }
+        SearchScratch buffers = scratch.get();
+        buffers.evaluations = 0;
+        int current = entryPoint;
+        for (int level = topLevel; level > 0; level--) {
+            current = greedyClosest(query, queryOffset, current, level, buffers);
+        }
+        NeighbourHeap candidates = buffers.results(Math.max(efSearch, nearest.capacity()));
+        searchLevel(query, queryOffset, current, 0, candidates, buffers);
+        for (int i = 0; i < candidates.size(); i++) {
+            nearest.offer(candidates.distance(i), candidates.row(i));
+        }
+        nearest.countEvaluations(buffers.evaluations);
+    }
+
+    // Inserts one row: greedy descent to its top level, then links it on every level below
+    private void insert(int node) {
+        int offset = node * dim;
+        SearchScratch buffers = scratch.get();
+        int nodeLevel = levels[node];
+
+        int current;
+        int currentTop;
+        synchronized (this) {
+            current = entryPoint;
+            currentTop = topLevel;
+        }
+        for (int level = currentTop; level > nodeLevel; level--) {
+            current = greedyClosest(points, offset, current, level, buffers);
+        }
+
+        for (int level = Math.min(nodeLevel, currentTop); level >= 0; level--) {
+            NeighbourHeap candidates = buffers.results(efConstruction);
+            searchLevel(points, offset, current, level, candidates, buffers);
+            candidates.sortAscending();
+            int[] selected = selectNeighbours(candidates, capacity(level) / (level == 0 ? 2 : 1), buffers);
+            synchronized (locks[node]) {
+                int[] own = links[node][level];
+                own[0] = selected.length;
+                System.arraycopy(selected, 0, own, 1, selected.length);
+            }
+            for (int neighbour : selected) {
+                link(neighbour, node, level);
+            }
+            current = candidates.row(0);
+        }
+
+        if (nodeLevel > currentTop) {
+            synchronized (this) {
+                if (nodeLevel > topLevel) {
+                    topLevel = nodeLevel;
+                    entryPoint = node;
+                }
+            }
+        }
+    }
+
+    // Adds a back link, shrinking the neighbour's list to its closest links when it overflows
+    private void link(int from, int to, int level) {
+        synchronized (locks[from]) {
+            int[] list = links[from][level];
+            int count = list[0];
+            int max = capacity(level);
+            if (count < max) {
+                list[count + 1] = to;
+                list[0] = count + 1;
+                return;
+            }
+            NeighbourHeap keep = new NeighbourHeap(max);
+            int offset = from * dim;
+            for (int i = 0; i <= count; i++) {
+                int candidate = i < count ? list[i + 1] : to;
+                keep.offer(DistanceKernels.squaredEuclidean(points, offset, points, candidate * dim, dim), candidate);
+            }
+            for (int i = 0; i < max; i++) {
+                list[i + 1] = keep.row(i);
+            }
+            list[0] = max;
+        }
+    }
+
+    // Neighbour selection heuristic: keep a candidate only if it is closer to the new row than to any kept one
+    private int[] selectNeighbours(NeighbourHeap sortedCandidates, int max, SearchScratch buffers) {
+        int[] selected = buffers.selected;
+        int count = 0;
+        for (int i = 0; i < sortedCandidates.size() && count < max; i++) {
+            int candidate = sortedCandidates.row(i);
+            double distance = sortedCandidates.distance(i);
+            boolean diverse = true;
+            for (int j = 0; j < count && diverse; j++) {
+                diverse = DistanceKernels.squaredEuclidean(points, candidate * dim, points, selected[j] * dim, dim) > distance;
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    // Walks to the closest node on one level, moving while a neighbour is closer than the current node
+    private int greedyClosest(float[] query, int queryOffset, int start, int level, SearchScratch buffers) {
+        int current = start;
+        double currentDistance = DistanceKernels.squaredEuclidean(query, queryOffset, points, current * dim, dim);
+        buffers.evaluations++;
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int[] neighbours = neighbours(current, level, buffers);
+            buffers.evaluations += neighbours[0];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                double distance = DistanceKernels.squaredEuclidean(query, queryOffset, points, candidate * dim, dim);
+                if (distance < currentDistance) {
+                    currentDistance = distance;
+                    current = candidate;
+                    moved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Best-first search on one level, leaving the closest nodes found in the results heap
+    private void searchLevel(float[] query, int queryOffset, int start, int level, NeighbourHeap results, SearchScratch buffers) {
+        buffers.nextVisit();
+        buffers.visit(start);
+        double startDistance = DistanceKernels.squaredEuclidean(query, queryOffset, points, start * dim, dim);
+        buffers.evaluations++;
+        buffers.pushCandidate(startDistance, start);
+        results.offer(startDistance, start);
+
+        while (buffers.candidateCount > 0) {
+            double closest = buffers.candidateDistances[0];
+            if (closest > results.worstDistance()) {
+                break; // Every remaining candidate is further than the current results
+            }
+            int node = buffers.popCandidate();
+            int[] neighbours = neighbours(node, level, buffers);
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                if (!buffers.visit(candidate)) {
+                    continue;
+                }
+                double distance = DistanceKernels.squaredEuclidean(query, queryOffset, points, candidate * dim, dim);
+                buffers.evaluations++;
+                if (distance < results.worstDistance() || !results.isFull()) {
+                    buffers.pushCandidate(distance, candidate);
+                    results.offer(distance, candidate);
+                }
+            }
+        }
+        buffers.candidateCount = 0;
+    }
+
+    // The neighbour list of a node; copied under its lock while other threads may still be linking
+    private int[] neighbours(int node, int level, SearchScratch buffers) {
+        int[] list = links[node][level];
+        if (!building) {
+            return list;
+        }
+        synchronized (locks[node]) {
+            System.arraycopy(list, 0, buffers.linkCopy, 0, list[0] + 1);
+        }
+        return buffers.linkCopy;
+    }
+
+    // Fork-join task inserting rows [start, end)
+    private class InsertTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        InsertTask(int start, int end, int grain) {
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > grain) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new InsertTask(start, middle, grain), new InsertTask(middle, end, grain));
+                return;
+            }
+            for (int node = start; node < end; node++) {
+                insert(node);
+            }
+        }
+    }
+
+    // Per-thread search buffers: visit stamps, the candidate min-heap and result heaps
+    private final class SearchScratch {
+        final int[] visited;
+        int visitStamp;
+        double[] candidateDistances = new double[64];
+        int[] candidateRows = new int[64];
+        int candidateCount;
+        long evaluations; // Distances computed by the current search
+        final int[] linkCopy = new int[2 * m + 1];
+        final int[] selected = new int[2 * m + Math.max(efConstruction, efSearch)];
+        private NeighbourHeap results;
+
+        SearchScratch(int rows, int ef) {
+            this.visited = new int[rows];
+            this.results = new NeighbourHeap(ef);
+        }
+
+        // Result heap with the given capacity, cleared
+        NeighbourHeap results(int capacity) {
+            if (results.capacity() != capacity) {
+                results = new NeighbourHeap(capacity);
+            }
+            results.clear();
+            return results;
+        }
+
+        void nextVisit() {
+            if (++visitStamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                visitStamp = 1;
+            }
+        }
+
+        // Marks a node visited, returns false if it already was
+        boolean visit(int node) {
+            if (visited[node] == visitStamp) {
+                return false;
+            }
+            visited[node] = visitStamp;
+            return true;
+        }
+
+        void pushCandidate(double distance, int row) {
+            if (candidateCount == candidateRows.length) {
+                candidateDistances = Arrays.copyOf(candidateDistances, candidateCount * 2);
+                candidateRows = Arrays.copyOf(candidateRows, candidateCount * 2);
+            }
+            int child = candidateCount++;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (candidateDistances[parent] <= distance) {
+                    break;
+                }
+                candidateDistances[child] = candidateDistances[parent];
+                candidateRows[child] = candidateRows[parent];
+                child = parent;
+            }
+            candidateDistances[child] = distance;
+            candidateRows[child] = row;
+        }
+
+        // Removes and returns the closest candidate
+        int popCandidate() {
+            int top = candidateRows[0];
+            double distance = candidateDistances[--candidateCount];
+            int row = candidateRows[candidateCount];
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= candidateCount) {
+                    break;
+                }
+                if (child + 1 < candidateCount && candidateDistances[child + 1] < candidateDistances[child]) {
+                    child++;
+                }
+                if (candidateDistances[child] >= distance) {
+                    break;
+                }
+                candidateDistances[parent] = candidateDistances[child];
+                candidateRows[parent] = candidateRows[child];
+                parent = child;
+            }
+            candidateDistances[parent] = distance;
+            candidateRows[parent] = row;
+            return top;
+        }
+    }
+}
@@ -1,179 +1,441 @@
-package machine_learning_algorithms;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Scanner;
-
-public class KNN_Algorithm {
-
-    /**
-     * This Class runs the K-Nearest Neighbors Algorithm with training and test data sets.
-     */
-    
-    public void run() throws FileNotFoundException {
-        List<DataPoint> Dataset_1 = loadData(AlgorithmRunner.Dataset_1);
-        List<DataPoint> Dataset_2 = loadData(AlgorithmRunner.Dataset_2);
-
-        // First fold: Train with original training and test with original test data
-        System.out.println("Running Fold 1 (Training on Dataset 1, Testing on Dataset 2):");
-        double fold1Accuracy = performKNN(Dataset_1, Dataset_2);
-
-        // Second fold: Swap training and test data (Train with Test Data and Test with Training Data)
-        System.out.println("Running Fold 2 (Training on Dataset 2, Testing on Dataset 1):");
-        double fold2Accuracy = performKNN(Dataset_2, Dataset_1);
-
-        // List out the results for both folds
-        System.out.println("\nAlgorithm: K-Nearest Neighbors");
-        System.out.println("Summary of Results:");
-        System.out.printf("Fold 1 Accuracy: %.2f%%\n", fold1Accuracy);
-        System.out.printf("Fold 2 Accuracy: %.2f%%\n", fold2Accuracy);
-    }
-
-    // Method to perform KNN classification
-    private double performKNN(List<DataPoint> trainingData, List<DataPoint> testData) {
-        // Determine unique labels for confusion matrix
-        List<String> labels = determineUniqueLabels(trainingData, testData);
-        int[][] confusionMatrix = new int[labels.size()][labels.size()];
-        int correctPredictions = 0;
-
-        // Iterate through each test point for classification
-        for (DataPoint testPoint : testData) {
-            String predictedLabel = classify(testPoint, trainingData);
-
-            // Get indices for confusion matrix
-            int actualIndex = labels.indexOf(testPoint.label);
-            int predictedIndex = labels.indexOf(predictedLabel);
-
-            // Update confusion matrix
-            confusionMatrix[actualIndex][predictedIndex]++;
-
-            // Check if the prediction matches the actual label
-            if (testPoint.label.equals(predictedLabel)) {
-                correctPredictions++;
-                if (AlgorithmRunner.Print_Details) {
-                    System.out.println("✔ Correct! Actual: " + testPoint.label + ", Predicted: " + predictedLabel);
-                }
-            } else if (AlgorithmRunner.Print_Details) {
-                System.out.println("❌ Incorrect! Actual: " + testPoint.label + ", Predicted: " + predictedLabel);
-            }
-        }
-
-        // Print confusion matrix
-        System.out.println("\nConfusion Matrix:");
-        printConfusionMatrix(confusionMatrix, labels);
-
-        // Calculate and return accuracy
-        double accuracyPercentage = (double) correctPredictions / testData.size() * 100;
-        return accuracyPercentage;
-    }
-
-    // Method to determine unique labels in training and test data
-    private List<String> determineUniqueLabels(List<DataPoint> trainingData, List<DataPoint> testData) {
-        Map<String, Boolean> labelSet = new HashMap<>();
-        for (DataPoint point : trainingData) {
-            labelSet.put(point.label, true);
-        }
-        for (DataPoint point : testData) {
-            labelSet.put(point.label, true);
-        }
-        return new ArrayList<>(labelSet.keySet());
-    }
-
-    // Method to print the confusion matrix
-    private void printConfusionMatrix(int[][] confusionMatrix, List<String> labels) {
-        System.out.print("       ");
-        for (String label : labels) {
-            System.out.printf("%-8s", label);
-        }
-        System.out.println();
-
-        for (int i = 0; i < confusionMatrix.length; i++) {
-            System.out.printf("%-8s", labels.get(i));
-            for (int j = 0; j < confusionMatrix[i].length; j++) {
-                System.out.printf("%-8d", confusionMatrix[i][j]);
-            }
-            System.out.println();
-        }
-    }
-
-    // Load data from CSV file
-    private List<DataPoint> loadData(String filePath) throws FileNotFoundException {
-        List<DataPoint> dataPoints = new ArrayList<>();
-        try (Scanner scanner = new Scanner(new File(filePath))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] lineComponents = line.split(",");
-                int featureCount = lineComponents.length;
-                List<Double> features = new ArrayList<>();
-                for (int i = 0; i < featureCount - 1; i++) {
-                    features.add(Double.parseDouble(lineComponents[i]));
-                }
-                String label = lineComponents[featureCount - 1];
-                dataPoints.add(new DataPoint(features, label));
-            }
-        }
-        return dataPoints;
-    }
-
-    // Classify a test point based on training data
-    private String classify(DataPoint testPoint, List<DataPoint> trainingData) {
-        // Priority queue to store the neighbors sorted by distance
-        PriorityQueue<Result> result = new PriorityQueue<>(Comparator.comparingDouble(n -> n.distance));
-
-        // Calculate the distance for each training data point and add to the queue
-        for (DataPoint trainPoint : trainingData) {
-            double distance = calculateEuclideanDistance(testPoint.features, trainPoint.features);
-            result.add(new Result(trainPoint.label, distance));
-        }
-
-        // Use majority voting to determine the predicted label
-        Map<String, Integer> labelCount = new HashMap<>();
-        for (int i = 0; i < AlgorithmRunner.K_Value && !result.isEmpty(); i++) {
-            Result final_result = result.poll();
-            labelCount.put(final_result.label, labelCount.getOrDefault(final_result.label, 0) + 1);
-        }
-
-        // Return the label with the highest count
-        return labelCount.entrySet().stream()
-                .max(Comparator.comparingInt(Map.Entry::getValue))
-                .orElseThrow()
-                .getKey();
-    }
-
-    // Calculate the Euclidean distance between two points
-    private double calculateEuclideanDistance(List<Double> Point_A, List<Double> Point_B) {
-        double squaredDistanceSum = 0.0;
-        for (int featureIndex = 0; featureIndex < Point_A.size(); featureIndex++) {
-            squaredDistanceSum += Math.pow(Point_A.get(featureIndex) - Point_B.get(featureIndex), 2);
-        }
-        return Math.sqrt(squaredDistanceSum);
-    }
-
-    // Inner class for representing a data point
-    static class DataPoint {
-        List<Double> features;
-        String label;
-
-        DataPoint(List<Double> features, String label) {
-            this.features = features;
-            this.label = label;
-        }
-    }
-
-    // Inner class for storing the result
-    static class Result {
-        String label;
-        double distance;
-
-        Result(String label, double distance) {
-            this.label = label;
-            this.distance = distance;
-        }
-    }
-}
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class KNN_Algorithm implements Classifier {
+
+    /**
+     * This Class runs the K-Nearest Neighbors Algorithm with training and test data sets.
+     */
+
+    public static final String Model_Kind = "knn";
+
+    private static final Metrics.Counter Distance_Evaluations =
+            Metrics.counter("ml_knn_distance_evaluations_total", "Distances computed by KNN neighbour searches");
+    private static final Metrics.Counter Queries = Metrics.counter("ml_knn_queries_total", "Rows classified by KNN");
+    private static final Metrics.Histogram Latency = Metrics.histogram("ml_prediction_latency_seconds",
+            "Latency of one prediction (for batches, the per-row share of each batch)", "algorithm", Model_Kind);
+
+    private final ForkJoinPool pool;
+    private int k = AlgorithmRunner.K_Value;
+    private String indexKind = AlgorithmRunner.KNN_Index;
+    private int leafSize = AlgorithmRunner.KNN_Leaf_Size;
+    private Dataset trainingData;
+    private NeighbourIndex index;
+    private volatile ReferenceStore store; // Set by the first add or remove, then answers every query
+
+    // Per-thread neighbour heap and vote histogram, reused by every query so classify allocates nothing
+    private ThreadLocal<QueryScratch> queryScratch = newQueryScratch();
+
+    public KNN_Algorithm() {
+        this(WorkerPool.shared());
+    }
+
+    // Batch scoring runs on the given pool, so callers can choose the number of threads
+    public KNN_Algorithm(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Votes over k neighbours instead of K_Value
+    public KNN_Algorithm(ForkJoinPool pool, int k) {
+        this(pool);
+        if (k < 1) {
+            throw new IllegalArgumentException("K must be at least 1, got " + k);
+        }
+        this.k = k;
+        this.queryScratch = newQueryScratch();
+    }
+
+    public void run() throws IOException {
+        Dataset[] datasets = Dataset.loadAll(AlgorithmRunner.Dataset_1, AlgorithmRunner.Dataset_2);
+        Dataset Dataset_1 = datasets[0];
+        Dataset Dataset_2 = datasets[1];
+
+        // Every prediction goes to the prediction log, written by a background thread
+        PredictionLog log = AlgorithmRunner.Print_Details ? PredictionLog.open(Model_Kind, Dataset_1.labelNames()) : null;
+        double fold1Accuracy;
+        double fold2Accuracy;
+        try {
+            // First fold: Train with original training and test with original test data
+            System.out.println("Running Fold 1 (Training on Dataset 1, Testing on Dataset 2):");
+            fold1Accuracy = performKNN(Dataset_1, Dataset_2, log == null ? null : log.fold(1, null));
+
+            // Second fold: Swap training and test data (Train with Test Data and Test with Training Data)
+            System.out.println("Running Fold 2 (Training on Dataset 2, Testing on Dataset 1):");
+            fold2Accuracy = performKNN(Dataset_2, Dataset_1, log == null ? null : log.fold(2, null));
+        } finally {
+            if (log != null) {
+                log.close();
+            }
+        }
+        if (log != null) {
+            System.out.println(log.summary());
+        }
+
+        // List out the results for both folds
+        System.out.println("\nAlgorithm: K-Nearest Neighbors");
+        System.out.println("Summary of Results:");
+        System.out.printf("Fold 1 Accuracy: %.2f%%\n", fold1Accuracy);
+        System.out.printf("Fold 2 Accuracy: %.2f%%\n", fold2Accuracy);
+    }
+
+    // Method to perform KNN classification
+    private double performKNN(Dataset trainingData, Dataset testData, PredictionLog.FoldLog log) {
+        fit(trainingData);
+
+        // Score every test point in parallel, then count the predictions
+        int[] predictions = new int[testData.rows()];
+        long scoringStart = System.nanoTime();
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "predict");
+        try {
+            pool.invoke(new ScoringTask(testData, predictions, 0, testData.rows(), log));
+        } finally {
+            phase.close();
+        }
+        double scoringSeconds = (System.nanoTime() - scoringStart) / 1e9;
+        ConfusionMatrix confusionMatrix = new ConfusionMatrix(testData.labelNames());
+        for (int row = 0; row < testData.rows(); row++) {
+            confusionMatrix.add(testData.label(row), predictions[row]);
+        }
+
+        // Print confusion matrix
+        System.out.println("\nConfusion Matrix:");
+        printConfusionMatrix(confusionMatrix.counts(), testData.labelNames());
+
+        System.out.printf("Index: %s, Accuracy: %.2f%%, Throughput: %.0f queries/sec%n",
+                indexKind, confusionMatrix.accuracy(), testData.rows() / scoringSeconds);
+        String statistics = statistics(testData);
+        if (statistics != null) {
+            System.out.println(statistics);
+        }
+
+        // Return accuracy
+        return confusionMatrix.accuracy();
+    }
+
+    // Builds the neighbour index over the reference set once, it is then shared by every query
+    @Override
+    public void fit(Dataset trainingData) {
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "fit");
+        try {
+            this.trainingData = trainingData;
+            this.index = NeighbourIndex.build(indexKind, trainingData, leafSize, pool);
+            this.store = null;
+        } finally {
+            phase.close();
+        }
+    }
+
+    @Override
+    public String[] labelNames() {
+        ReferenceStore mutable = store;
+        return mutable != null ? mutable.labelNames() : trainingData.labelNames();
+    }
+
+    @Override
+    public int dim() {
+        return trainingData.dim();
+    }
+
+    // Adds a labelled row to the reference set while queries keep running, and returns its row id
+    // (the training rows have ids 0 to rows - 1)
+    public int add(Sample sample) {
+        return mutableStore().add(sample);
+    }
+
+    // Removes a reference row by id; false if there was no such row
+    public boolean remove(int id) {
+        return mutableStore().delete(id);
+    }
+
+    // Rows the queries search, with the rows added and removed since fit
+    public int referenceRows() {
+        ReferenceStore mutable = store;
+        return mutable != null ? mutable.size() : trainingData.rows();
+    }
+
+    // The first change moves the trained reference set and its index into a mutable store
+    private ReferenceStore mutableStore() {
+        ReferenceStore mutable = store;
+        if (mutable == null) {
+            synchronized (this) {
+                if (trainingData == null) {
+                    throw new IllegalStateException("fit must be called before add or remove");
+                }
+                if (store == null) {
+                    store = new ReferenceStore(trainingData, index, indexKind, leafSize, pool);
+                }
+                mutable = store;
+            }
+        }
+        return mutable;
+    }
+
+    // A KNN model is its settings and the reference set; the index is rebuilt from them when loading.
+    // Rows added or removed since fit are included, under new ids
+    @Override
+    public void save(Path path) throws IOException {
+        if (trainingData == null) {
+            throw new IllegalStateException("fit must be called before save");
+        }
+        ReferenceStore mutable = store;
+        Dataset reference = mutable != null ? mutable.liveRows() : trainingData;
+        ModelFile.create(Model_Kind).putInt(k).putString(indexKind).putInt(leafSize).putDataset(reference).save(path);
+    }
+
+    @Override
+    public void load(Path path) throws IOException {
+        ModelFile.Reader model = ModelFile.open(path, Model_Kind);
+        int neighbours = model.getInt();
+        String kind = model.getString();
+        int leaf = model.getInt();
+        Dataset reference = model.getDataset();
+        if (neighbours < 1 || leaf < 1) {
+            throw model.corrupt("K " + neighbours + " and leaf size " + leaf + " must be positive");
+        }
+        NeighbourIndex loaded;
+        try {
+            loaded = NeighbourIndex.build(kind, reference, leaf, pool);
+        } catch (IllegalArgumentException unknown) {
+            throw model.corrupt(unknown.getMessage());
+        }
+        k = neighbours;
+        indexKind = kind;
+        leafSize = leaf;
+        queryScratch = newQueryScratch();
+        trainingData = reference;
+        index = loaded;
+        store = null;
+    }
+
+    private ThreadLocal<QueryScratch> newQueryScratch() {
+        int neighbours = k;
+        return ThreadLocal.withInitial(() -> new QueryScratch(neighbours));
+    }
+
+    // Predicts the label id of every query row, splitting the queries across the pool
+    @Override
+    public int[] predictBatch(Dataset queries) {
+        return predictBatch(queries, (PredictionLog.FoldLog) null);
+    }
+
+    // Logs the squared distance to the nearest neighbour as the score
+    @Override
+    public int[] predictBatch(Dataset queries, PredictionLog.FoldLog log) {
+        if (trainingData == null) {
+            throw new IllegalStateException("fit must be called before predict");
+        }
+        int[] predictions = new int[queries.rows()];
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "predict");
+        try {
+            pool.invoke(new ScoringTask(queries, predictions, 0, queries.rows(), log));
+        } finally {
+            phase.close();
+        }
+        return predictions;
+    }
+
+    // Method to print the confusion matrix
+    private void printConfusionMatrix(int[][] confusionMatrix, String[] labels) {
+        System.out.print("       ");
+        for (String label : labels) {
+            System.out.printf("%-8s", label);
+        }
+        System.out.println();
+
+        for (int i = 0; i < confusionMatrix.length; i++) {
+            System.out.printf("%-8s", labels[i]);
+            for (int j = 0; j < confusionMatrix[i].length; j++) {
+                System.out.printf("%-8d", confusionMatrix[i][j]);
+            }
+            System.out.println();
+        }
+    }
+
+    // Pruning counters of the index and, for an approximate index, its recall on the test rows
+    @Override
+    public String statistics(Dataset test) {
+        if (trainingData == null || store != null) {
+            return null; // Rows added since fit are not in the index, nor in the exact reference set
+        }
+        String statistics = index.statistics();
+        if (!index.exact()) {
+            String recall = String.format("Recall@%d against exact search: %.4f", k, measureRecall(test));
+            statistics = statistics == null ? recall : statistics + System.lineSeparator() + recall;
+        }
+        return statistics;
+    }
+
+    // Fraction of the exact K nearest neighbours that the (approximate) index also returns
+    public double measureRecall(Dataset queries) {
+        NeighbourIndex exactIndex = new LinearScanIndex(trainingData);
+        long hits = WorkerPool.parallelSum(pool, queries.rows(), row -> {
+            NeighbourHeap approximate = new NeighbourHeap(k);
+            NeighbourHeap exact = new NeighbourHeap(k);
+            index.search(queries.features(), queries.offset(row), approximate);
+            exactIndex.search(queries.features(), queries.offset(row), exact);
+            int found = 0;
+            for (int i = 0; i < exact.size(); i++) {
+                for (int j = 0; j < approximate.size(); j++) {
+                    if (approximate.row(j) == exact.row(i)) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+            return found;
+        });
+        return (double) hits / ((long) queries.rows() * Math.min(k, trainingData.rows()));
+    }
+
+    // Classify a test point based on training data
+    @Override
+    public int predict(float[] testPoint, int testOffset) {
+        if (trainingData == null) {
+            throw new IllegalStateException("fit must be called before predict");
+        }
+        long start = Metrics.start();
+        QueryScratch scratch = queryScratch.get();
+        NeighbourHeap nearest = scratch.nearest;
+        nearest.clear();
+
+        // Search the index for the K nearest training data points
+        int predictedLabel;
+        ReferenceStore mutable = store;
+        if (mutable != null) {
+            mutable.search(testPoint, testOffset, nearest);
+            predictedLabel = vote(nearest, mutable.labels(), scratch.votes(mutable.labelCount()));
+        } else {
+            index.search(testPoint, testOffset, nearest);
+            predictedLabel = vote(nearest, trainingData.labels(), scratch.votes(trainingData.labelCount()));
+        }
+        if (Metrics.Enabled) {
+            Distance_Evaluations.add(nearest.takeEvaluations());
+            Queries.increment();
+            Latency.recordSince(start);
+        }
+        return predictedLabel;
+    }
+
+    // Use majority voting over the neighbours; ties go to the label whose member is nearest
+    private static int vote(NeighbourHeap nearest, int[] labels, int[] votes) {
+        if (nearest.size() == 0) {
+            throw new IllegalStateException("The reference set is empty");
+        }
+        nearest.sortAscending();
+        for (int i = 0; i < nearest.size(); i++) {
+            votes[labels[nearest.row(i)]]++;
+        }
+        int predictedLabel = labels[nearest.row(0)];
+        for (int i = 1; i < nearest.size(); i++) {
+            int label = labels[nearest.row(i)];
+            if (votes[label] > votes[predictedLabel]) {
+                predictedLabel = label;
+            }
+        }
+        for (int i = 0; i < nearest.size(); i++) {
+            votes[labels[nearest.row(i)]] = 0;
+        }
+        return predictedLabel;
+    }
+
+    // Fork-join task scoring the query rows [start, end) into predictions;
+    // with a log, every prediction is also queued there
+    private class ScoringTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Dataset queries;
+        private final int[] predictions;
+        private final int start;
+        private final int end;
+        private final PredictionLog.FoldLog log;
+
+        ScoringTask(Dataset queries, int[] predictions, int start, int end, PredictionLog.FoldLog log) {
+            this.queries = queries;
+            this.predictions = predictions;
+            this.start = start;
+            this.end = end;
+            this.log = log;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > WorkerPool.grainSize(queries.rows(), pool, 16)) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ScoringTask(queries, predictions, start, middle, log),
+                        new ScoringTask(queries, predictions, middle, end, log));
+                return;
+            }
+            // Queries are searched in batches, so indexes that score whole tiles at once can do so
+            QueryScratch scratch = queryScratch.get();
+            ReferenceStore mutable = store;
+            for (int batchStart = start; batchStart < end; batchStart += scratch.batch.length) {
+                int count = Math.min(scratch.batch.length, end - batchStart);
+                long searchStart = Metrics.Enabled || log != null ? System.nanoTime() : 0;
+                for (int i = 0; i < count; i++) {
+                    scratch.batch[i].clear();
+                }
+                int[] labels;
+                int[] votes;
+                if (mutable != null) {
+                    for (int i = 0; i < count; i++) {
+                        mutable.search(queries.features(), queries.offset(batchStart + i), scratch.batch[i]);
+                    }
+                    // Read after the search, so they cover every row it could return
+                    labels = mutable.labels();
+                    votes = scratch.votes(mutable.labelCount());
+                } else {
+                    index.searchBatch(queries, batchStart, count, scratch.batch);
+                    labels = trainingData.labels();
+                    votes = scratch.votes(trainingData.labelCount());
+                }
+                for (int i = 0; i < count; i++) {
+                    int row = batchStart + i;
+                    predictions[row] = vote(scratch.batch[i], labels, votes);
+                }
+                if (log != null) {
+                    // Latency is the per-row share of the batch, like the latency histogram
+                    long latency = (System.nanoTime() - searchStart) / count;
+                    for (int i = 0; i < count; i++) {
+                        int row = batchStart + i;
+                        log.record(row, queries.label(row), predictions[row], (float) scratch.batch[i].distance(0), latency);
+                    }
+                }
+                if (Metrics.Enabled) {
+                    long evaluations = 0;
+                    for (int i = 0; i < count; i++) {
+                        evaluations += scratch.batch[i].takeEvaluations();
+                    }
+                    Distance_Evaluations.add(evaluations);
+                    Queries.add(count);
+                    Latency.record((System.nanoTime() - searchStart) / count, count);
+                }
+            }
+        }
+    }
+
+    // Inner class for the reusable per-thread query buffers
+    static class QueryScratch {
+        final NeighbourHeap nearest;
+        final NeighbourHeap[] batch = new NeighbourHeap[BlockedScanIndex.Query_Tile];
+        int[] votes = new int[0];
+
+        QueryScratch(int k) {
+            this.nearest = new NeighbourHeap(k);
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = new NeighbourHeap(k);
+            }
+        }
+
+        // Vote histogram with one slot per label id, all zero between queries
+        int[] votes(int labelCount) {
+            if (votes.length < labelCount) {
+                votes = new int[labelCount];
+            }
+            return votes;
+        }
+    }
+}
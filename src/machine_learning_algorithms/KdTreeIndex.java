@@ -0,0 +1,106 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+
+class KdTreeIndex extends TreeIndex {
+
+    /**
+     * KD-tree: every inner node splits its rows at the median of the dimension with the widest range.
+     * Each node keeps the bounding box of its rows; a subtree is skipped when the squared distance
+     * from the query to its box is larger than the current K-th best distance.
+     */
+
+    private int[] splitDimension = new int[16];
+    private float[] splitValue = new float[16];
+    private float[] boxes = new float[16 * 2 * dim];
+
+    KdTreeIndex(Dataset reference, int leafSize) {
+        super(reference, leafSize);
+        if (order.length > 0) {
+            build(0, order.length);
+        }
+        finishBuild();
+    }
+
+    @Override
+    protected void growNodes(int capacity) {
+        splitDimension = Arrays.copyOf(splitDimension, capacity);
+        splitValue = Arrays.copyOf(splitValue, capacity);
+        boxes = Arrays.copyOf(boxes, capacity * 2 * dim);
+    }
+
+    private int build(int start, int end) {
+        int node = addNode(start, end);
+        storeBoundingBox(node, start, end);
+
+        int splitDim = end - start > leafSize ? widestDimension(start, end) : -1;
+        splitDimension[node] = splitDim;
+        if (splitDim < 0) {
+            return node; // Leaf: small enough, or all rows identical
+        }
+        int middle = splitAtMedian(start, end, splitDim);
+        splitValue[node] = (float) keys[middle];
+        int left = build(start, middle);
+        int right = build(middle, end);
+        nodeLeft[node] = left;
+        nodeRight[node] = right;
+        return node;
+    }
+
+    // Box layout per node: dim minimums followed by dim maximums
+    private void storeBoundingBox(int node, int start, int end) {
+        float[] features = reference.features();
+        int base = node * 2 * dim;
+        Arrays.fill(boxes, base, base + dim, Float.POSITIVE_INFINITY);
+        Arrays.fill(boxes, base + dim, base + 2 * dim, Float.NEGATIVE_INFINITY);
+        for (int position = start; position < end; position++) {
+            int offset = order[position] * dim;
+            for (int d = 0; d < dim; d++) {
+                float value = features[offset + d];
+                boxes[base + d] = Math.min(boxes[base + d], value);
+                boxes[base + dim + d] = Math.max(boxes[base + dim + d], value);
+            }
+        }
+    }
+
+    @Override
+    public void search(float[] query, int queryOffset, NeighbourHeap nearest) {
+        if (nodeCount > 0) {
+            search(0, query, queryOffset, nearest);
+        }
+    }
+
+    private void search(int node, float[] query, int queryOffset, NeighbourHeap nearest) {
+        if (splitDimension[node] < 0) {
+            scanLeaf(query, queryOffset, nodeStart[node], nodeEnd[node], nearest);
+            return;
+        }
+        // Descend into the side of the split the query lies on first
+        boolean leftFirst = query[queryOffset + splitDimension[node]] <= splitValue[node];
+        int first = leftFirst ? nodeLeft[node] : nodeRight[node];
+        int second = leftFirst ? nodeRight[node] : nodeLeft[node];
+        if (!prunableSquared(boxDistance(first, query, queryOffset), nearest.worstDistance())) {
+            search(first, query, queryOffset, nearest);
+        }
+        if (!prunableSquared(boxDistance(second, query, queryOffset), nearest.worstDistance())) {
+            search(second, query, queryOffset, nearest);
+        }
+    }
+
+    // Squared distance from the query to the closest point of a node's bounding box
+    private double boxDistance(int node, float[] query, int queryOffset) {
+        int base = node * 2 * dim;
+        double sum = 0;
+        for (int d = 0; d < dim; d++) {
+            float value = query[queryOffset + d];
+            double gap = 0;
+            if (value < boxes[base + d]) {
+                gap = boxes[base + d] - value;
+            } else if (value > boxes[base + dim + d]) {
+                gap = value - boxes[base + dim + d];
+            }
+            sum += gap * gap;
+        }
+        return sum;
+    }
+}
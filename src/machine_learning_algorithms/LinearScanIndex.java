@@ -0,0 +1,226 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+class LinearScanIndex implements NeighbourIndex {
+
+    /**
+     * Brute-force search: compares the query with every reference row.
+     *
+     * With pruning on, most rows are rejected before their full distance is summed. Once K
+     * neighbours are known, a row is first checked against two cheap lower bounds of its squared
+     * distance: (||q|| - ||r||)^2, and the pooled bound sum over groups of (sum_q - sum_r)^2 / size
+     * (2x2 pixel blocks for square images such as the 8x8 digits, runs of four features otherwise).
+     * Rows that survive are summed with the features in decreasing-variance order and abandoned as
+     * soon as the partial sum passes the K-th best distance. Rejections are counted for statistics().
+     */
+
+    private static final int ABANDON_STRIDE = 8;
+    private static final int GROUP_SIZE = 4;
+
+    private final Dataset reference;
+    private final boolean pruning;
+    private final int dim;
+
+    // Pruning state: permuted rows, row norms and pooled group sums
+    private int[] dimensionOrder;
+    private float[] points;
+    private double[] norms;
+    private int groupCount;
+    private int[] groupOf;
+    private float[] groupSizes;
+    private double[] groupSums;
+    private ThreadLocal<QueryScratch> scratch;
+
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder prunedByNorm = new LongAdder();
+    private final LongAdder prunedByPooling = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder dimensionsSkipped = new LongAdder();
+
+    LinearScanIndex(Dataset reference) {
+        this(reference, false);
+    }
+
+    LinearScanIndex(Dataset reference, boolean pruning) {
+        this.reference = reference;
+        this.pruning = pruning;
+        this.dim = reference.dim();
+        if (pruning) {
+            preparePruning();
+        }
+    }
+
+    @Override
+    public Dataset reference() {
+        return reference;
+    }
+
+    private void preparePruning() {
+        int rows = reference.rows();
+        float[] features = reference.features();
+
+        // Features with the largest variance first, they grow the partial distance fastest
+        double[] sum = new double[dim];
+        double[] sumOfSquares = new double[dim];
+        for (int row = 0; row < rows; row++) {
+            for (int d = 0; d < dim; d++) {
+                double value = features[row * dim + d];
+                sum[d] += value;
+                sumOfSquares[d] += value * value;
+            }
+        }
+        Integer[] byVariance = new Integer[dim];
+        double[] variance = new double[dim];
+        for (int d = 0; d < dim; d++) {
+            byVariance[d] = d;
+            double mean = rows == 0 ? 0 : sum[d] / rows;
+            variance[d] = rows == 0 ? 0 : sumOfSquares[d] / rows - mean * mean;
+        }
+        Arrays.sort(byVariance, (a, b) -> Double.compare(variance[b], variance[a]));
+        dimensionOrder = new int[dim];
+        for (int d = 0; d < dim; d++) {
+            dimensionOrder[d] = byVariance[d];
+        }
+
+        // Pooling groups: 2x2 blocks when the features form a square image with an even side
+        groupOf = new int[dim];
+        int side = (int) Math.round(Math.sqrt(dim));
+        if (side * side == dim && side % 2 == 0) {
+            groupCount = (side / 2) * (side / 2);
+            for (int d = 0; d < dim; d++) {
+                groupOf[d] = (d / side / 2) * (side / 2) + (d % side) / 2;
+            }
+        } else {
+            groupCount = (dim + GROUP_SIZE - 1) / GROUP_SIZE;
+            for (int d = 0; d < dim; d++) {
+                groupOf[d] = d / GROUP_SIZE;
+            }
+        }
+        groupSizes = new float[groupCount];
+        for (int d = 0; d < dim; d++) {
+            groupSizes[groupOf[d]]++;
+        }
+
+        points = new float[rows * dim];
+        norms = new double[rows];
+        groupSums = new double[rows * groupCount];
+        for (int row = 0; row < rows; row++) {
+            double norm = 0;
+            for (int d = 0; d < dim; d++) {
+                float value = features[row * dim + dimensionOrder[d]];
+                points[row * dim + d] = value;
+                norm += (double) value * value;
+                groupSums[row * groupCount + groupOf[d]] += features[row * dim + d];
+            }
+            norms[row] = Math.sqrt(norm);
+        }
+        scratch = ThreadLocal.withInitial(() -> new QueryScratch(dim, groupCount));
+    }
+
+    @Override
+    public void search(float[] query, int queryOffset, NeighbourHeap nearest) {
+        if (!pruning) {
+            float[] features = reference.features();
+            for (int row = 0; row < reference.rows(); row++) {
+                double distance = DistanceKernels.squaredEuclidean(query, queryOffset, features, row * dim, dim);
+                if (distance <= nearest.worstDistance()) {
+                    nearest.offer(distance, row);
+                }
+            }
+            nearest.countEvaluations(reference.rows());
+            return;
+        }
+
+        QueryScratch buffers = scratch.get();
+        float[] permuted = buffers.query;
+        double[] querySums = buffers.groupSums;
+        Arrays.fill(querySums, 0);
+        double queryNorm = 0;
+        for (int d = 0; d < dim; d++) {
+            float value = query[queryOffset + dimensionOrder[d]];
+            permuted[d] = value;
+            queryNorm += (double) value * value;
+            querySums[groupOf[d]] += query[queryOffset + d];
+        }
+        queryNorm = Math.sqrt(queryNorm);
+
+        int normRejects = 0;
+        int poolingRejects = 0;
+        int abandons = 0;
+        long skipped = 0;
+        for (int row = 0; row < reference.rows(); row++) {
+            double worst = nearest.worstDistance();
+            if (nearest.isFull()) {
+                double normGap = queryNorm - norms[row];
+                if (TreeIndex.prunableSquared(normGap * normGap, worst)) {
+                    normRejects++;
+                    continue;
+                }
+                double pooled = 0;
+                int groupBase = row * groupCount;
+                for (int g = 0; g < groupCount; g++) {
+                    double gap = querySums[g] - groupSums[groupBase + g];
+                    pooled += gap * gap / groupSizes[g];
+                }
+                if (TreeIndex.prunableSquared(pooled, worst)) {
+                    poolingRejects++;
+                    continue;
+                }
+            }
+
+            // Partial distance, abandoned once it exceeds the K-th best
+            int base = row * dim;
+            double distance = 0;
+            int d = 0;
+            while (d < dim) {
+                int end = Math.min(dim, d + ABANDON_STRIDE);
+                for (; d < end; d++) {
+                    double difference = permuted[d] - points[base + d];
+                    distance += difference * difference;
+                }
+                if (distance > worst) {
+                    break;
+                }
+            }
+            if (d < dim) {
+                abandons++;
+                skipped += dim - d;
+            } else if (distance <= worst) {
+                nearest.offer(distance, row);
+            }
+        }
+
+        nearest.countEvaluations(reference.rows() - normRejects - poolingRejects);
+        rowsScanned.add(reference.rows());
+        prunedByNorm.add(normRejects);
+        prunedByPooling.add(poolingRejects);
+        abandoned.add(abandons);
+        dimensionsSkipped.add(skipped);
+    }
+
+    @Override
+    public String statistics() {
+        if (!pruning) {
+            return null;
+        }
+        long rows = Math.max(1, rowsScanned.sum());
+        return String.format("Linear scan pruning: %d rows checked, %.1f%% rejected by norm bound, %.1f%% by pooled bound, "
+                        + "%.1f%% abandoned early, %.1f%% of feature terms skipped",
+                rowsScanned.sum(), 100.0 * prunedByNorm.sum() / rows, 100.0 * prunedByPooling.sum() / rows,
+                100.0 * abandoned.sum() / rows,
+                100.0 * (dimensionsSkipped.sum() + (long) dim * (prunedByNorm.sum() + prunedByPooling.sum())) / (rows * dim));
+    }
+
+    // Per-thread permuted query and its pooled sums
+    private static final class QueryScratch {
+        final float[] query;
+        final double[] groupSums;
+
+        QueryScratch(int dim, int groupCount) {
+            this.query = new float[dim];
+            this.groupSums = new double[groupCount];
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package machine_learning_algorithms;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Metrics {
+
+    /**
+     * This Class is the metrics layer of the algorithms: counters, latency histograms and phase
+     * timers, exported as JFR events while running and as a Prometheus text or JSON snapshot at
+     * the end of a run.
+     *
+     * Enabled is a compile-time constant copied from AlgorithmRunner.Metrics_Enabled, so with
+     * metrics off every "if (Metrics.Enabled)" block is dropped by the compiler and the hot paths
+     * are the same code as without metrics. Counters and histograms are registered once, in static
+     * fields of the classes that use them; hot loops count into a local variable and add it once
+     * per query or per batch.
+     *
+     * Histograms are HDR-style: values below 64 ns get a bucket each, larger values 32 buckets per
+     * power of two, so every recorded value is kept to within about 3% in a fixed 15 KB array that
+     * threads update without locks.
+     */
+
+    public static final boolean Enabled = AlgorithmRunner.Metrics_Enabled;
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private Metrics() {
+    }
+
+    // The counter with the given name and labels (alternating label names and values), created on first use
+    public static Counter counter(String name, String help, String... labels) {
+        return counters.computeIfAbsent(key(name, labels), key -> new Counter(name, help, labels));
+    }
+
+    // The histogram of nanosecond values with the given name and labels, created on first use
+    public static Histogram histogram(String name, String help, String... labels) {
+        return histograms.computeIfAbsent(key(name, labels), key -> new Histogram(name, help, labels));
+    }
+
+    // Start time for a latency measurement, 0 when metrics are off
+    public static long start() {
+        return Enabled ? System.nanoTime() : 0;
+    }
+
+    // Times one phase of an algorithm (load, fit, predict) until it is closed, in a finally block
+    public static Phase phase(String algorithm, String phase) {
+        return Enabled ? new Phase(algorithm, phase) : Phase.DISABLED;
+    }
+
+    // Writes every metric to the file, as JSON if its name ends in .json and in Prometheus text format
+    // otherwise, and emits the final values as JFR events
+    public static void writeSnapshot(Path path) throws IOException {
+        List<Counter> counterList = new ArrayList<>(counters.values());
+        List<Histogram> histogramList = new ArrayList<>(histograms.values());
+        // Grouped by name, so each name gets one HELP and TYPE line
+        counterList.sort((a, b) -> a.name.equals(b.name) ? a.key.compareTo(b.key) : a.name.compareTo(b.name));
+        histogramList.sort((a, b) -> a.name.equals(b.name) ? a.key.compareTo(b.key) : a.name.compareTo(b.name));
+        if (MetricsEvents.Available) {
+            MetricsEvents.commitSnapshot(counterList, histogramList);
+        }
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            if (path.getFileName().toString().endsWith(".json")) {
+                writeJson(out, counterList, histogramList);
+            } else {
+                writePrometheus(out, counterList, histogramList);
+            }
+        }
+    }
+
+    // Prometheus text exposition format; histograms are exported as summaries in seconds
+    static void writePrometheus(Writer out, List<Counter> counterList, List<Histogram> histogramList) throws IOException {
+        String lastName = null;
+        for (Counter counter : counterList) {
+            if (!counter.name.equals(lastName)) {
+                out.write("# HELP " + counter.name + " " + counter.help + "\n");
+                out.write("# TYPE " + counter.name + " counter\n");
+                lastName = counter.name;
+            }
+            out.write(counter.name + prometheusLabels(counter.labels, null) + " " + counter.value() + "\n");
+        }
+        for (Histogram histogram : histogramList) {
+            if (!histogram.name.equals(lastName)) {
+                out.write("# HELP " + histogram.name + " " + histogram.help + "\n");
+                out.write("# TYPE " + histogram.name + " summary\n");
+                lastName = histogram.name;
+            }
+            for (double quantile : QUANTILES) {
+                out.write(histogram.name + prometheusLabels(histogram.labels, "quantile=\"" + quantile + "\"") + " "
+                        + seconds(histogram.quantile(quantile)) + "\n");
+            }
+            out.write(histogram.name + "_sum" + prometheusLabels(histogram.labels, null) + " " + seconds(histogram.sum()) + "\n");
+            out.write(histogram.name + "_count" + prometheusLabels(histogram.labels, null) + " " + histogram.count() + "\n");
+        }
+    }
+
+    static void writeJson(Writer out, List<Counter> counterList, List<Histogram> histogramList) throws IOException {
+        out.write("{\n  \"counters\": [");
+        for (int i = 0; i < counterList.size(); i++) {
+            Counter counter = counterList.get(i);
+            out.write((i == 0 ? "\n" : ",\n") + "    {\"name\": " + quote(counter.name) + ", \"labels\": " + jsonLabels(counter.labels)
+                    + ", \"value\": " + counter.value() + "}");
+        }
+        out.write("\n  ],\n  \"histograms\": [");
+        for (int i = 0; i < histogramList.size(); i++) {
+            Histogram histogram = histogramList.get(i);
+            out.write((i == 0 ? "\n" : ",\n") + "    {\"name\": " + quote(histogram.name) + ", \"labels\": " + jsonLabels(histogram.labels)
+                    + ", \"count\": " + histogram.count() + ", \"sum_seconds\": " + seconds(histogram.sum())
+                    + ", \"max_seconds\": " + seconds(histogram.max()));
+            for (int q = 0; q < QUANTILES.length; q++) {
+                out.write(", \"" + QUANTILE_NAMES[q] + "_seconds\": " + seconds(histogram.quantile(QUANTILES[q])));
+            }
+            out.write("}");
+        }
+        out.write("\n  ]\n}\n");
+    }
+
+    private static String key(String name, String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs: " + String.join(",", labels));
+        }
+        return labels.length == 0 ? name : name + prometheusLabels(labels, null);
+    }
+
+    private static String prometheusLabels(String[] labels, String extra) {
+        if (labels.length == 0 && extra == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            text.append(i == 0 ? "" : ",").append(labels[i]).append("=\"").append(labels[i + 1].replace("\"", "\\\"")).append('"');
+        }
+        if (extra != null) {
+            text.append(labels.length == 0 ? "" : ",").append(extra);
+        }
+        return text.append('}').toString();
+    }
+
+    private static String jsonLabels(String[] labels) {
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            text.append(i == 0 ? "" : ", ").append(quote(labels[i])).append(": ").append(quote(labels[i + 1]));
+        }
+        return text.append('}').toString();
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    // Monotonic count
+    public static final class Counter {
+        final String name;
+        final String help;
+        final String[] labels;
+        final String key;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help, String[] labels) {
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+            this.key = key(name, labels);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long value() {
+            return value.sum();
+        }
+    }
+
+    // Lock-free log-linear histogram of non-negative nanosecond values
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Buckets per power of two
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        final String name;
+        final String help;
+        final String[] labels;
+        final String key;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram(String name, String help, String[] labels) {
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+            this.key = key(name, labels);
+        }
+
+        public void record(long nanos) {
+            record(nanos, 1);
+        }
+
+        // Records the same value several times, e.g. the per-row share of a batch
+        public void record(long nanos, int times) {
+            long value = Math.max(0, nanos);
+            buckets.addAndGet(bucket(value), times);
+            count.add(times);
+            sum.add(value * times);
+            max.accumulate(value);
+        }
+
+        // Records the time since a Metrics.start()
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos, 1);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long sum() {
+            return sum.sum();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        // Smallest bucket bound with at least the given fraction of the values at or below it
+        public long quantile(double quantile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(highestInBucket(i), max());
+                }
+            }
+            return max();
+        }
+
+        // Values below 2 * SUB_BUCKETS map to themselves, larger ones keep their top SUB_BUCKET_BITS + 1 bits
+        static int bucket(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        static long highestInBucket(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    // Running phase of an algorithm, recorded in a histogram and as a JFR event when closed
+    public static final class Phase implements AutoCloseable {
+        static final Phase DISABLED = new Phase();
+
+        private final Histogram histogram;
+        private final Object event;
+        private final long start;
+
+        private Phase() {
+            this.histogram = null;
+            this.event = null;
+            this.start = 0;
+        }
+
+        private Phase(String algorithm, String phase) {
+            this.histogram = histogram("ml_phase_duration_seconds", "Duration of the load, fit and predict phases",
+                    "algorithm", algorithm, "phase", phase);
+            this.event = MetricsEvents.Available ? MetricsEvents.beginPhase(algorithm, phase) : null;
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (histogram == null) {
+                return;
+            }
+            histogram.recordSince(start);
+            if (event != null) {
+                MetricsEvents.commitPhase(event);
+            }
+        }
+    }
+}
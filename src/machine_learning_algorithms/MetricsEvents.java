@@ -0,0 +1,110 @@
+package machine_learning_algorithms;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+final class MetricsEvents {
+
+    /**
+     * JFR events of the metrics layer: one duration event per phase, and the final value of every
+     * counter and histogram when the snapshot is written. They show up in a flight recording
+     * (java -XX:StartFlightRecording ...) under "Machine Learning". Only Metrics touches this
+     * class, and only when Available, so a JVM without JFR never loads the jdk.jfr types.
+     */
+
+    static final boolean Available = jfrAvailable();
+
+    private MetricsEvents() {
+    }
+
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, MetricsEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError missing) {
+            return false;
+        }
+    }
+
+    static Object beginPhase(String algorithm, String phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.algorithm = algorithm;
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    static void commitPhase(Object event) {
+        ((PhaseEvent) event).commit();
+    }
+
+    static void commitSnapshot(List<Metrics.Counter> counters, List<Metrics.Histogram> histograms) {
+        for (Metrics.Counter counter : counters) {
+            CounterEvent event = new CounterEvent();
+            event.metric = counter.key;
+            event.value = counter.value();
+            event.commit();
+        }
+        for (Metrics.Histogram histogram : histograms) {
+            HistogramEvent event = new HistogramEvent();
+            event.metric = histogram.key;
+            event.count = histogram.count();
+            event.p50 = histogram.quantile(0.5);
+            event.p99 = histogram.quantile(0.99);
+            event.max = histogram.max();
+            event.commit();
+        }
+    }
+
+    @Name("machine_learning_algorithms.Phase")
+    @Label("Algorithm Phase")
+    @Category("Machine Learning")
+    @Description("Loading, fitting or predicting of one algorithm")
+    static final class PhaseEvent extends Event {
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("machine_learning_algorithms.Counter")
+    @Label("Metric Counter")
+    @Category("Machine Learning")
+    static final class CounterEvent extends Event {
+        @Label("Metric")
+        String metric;
+
+        @Label("Value")
+        long value;
+    }
+
+    @Name("machine_learning_algorithms.Histogram")
+    @Label("Metric Histogram")
+    @Category("Machine Learning")
+    static final class HistogramEvent extends Event {
+        @Label("Metric")
+        String metric;
+
+        @Label("Count")
+        long count;
+
+        @Label("Median")
+        @Timespan
+        long p50;
+
+        @Label("99th Percentile")
+        @Timespan
+        long p99;
+
+        @Label("Maximum")
+        @Timespan
+        long max;
+    }
+}
@@ -0,0 +1,278 @@
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class ModelFile {
+
+    /**
+     * This Class reads and writes the binary model format shared by every Classifier.
+     *
+     * Layout (little-endian):
+     *   magic "MLMD", version, algorithm kind (length-prefixed UTF-8), then the algorithm's fields
+     *   in the order it writes them. Arrays are length-prefixed and start on a 64-byte boundary,
+     *   so a model is read by mapping the file and bulk-copying each block, with no parsing.
+     *
+     * Every length is checked against the bytes left in the file before anything is allocated, so
+     * a truncated or corrupt model fails with an IOException.
+     */
+
+    public static final String Extension = ".model";
+
+    private static final int MAGIC = 0x444D4C4D; // "MLMD" read as a little-endian int
+    private static final int VERSION = 2; // 2: C4.5 models store the training width
+    private static final int BLOCK_ALIGNMENT = 64;
+
+    // Starts a model of the given algorithm kind
+    public static Writer create(String kind) {
+        Writer writer = new Writer();
+        writer.putInt(MAGIC).putInt(VERSION).putString(kind);
+        return writer;
+    }
+
+    // Maps a model file and checks its header; expectedKind null accepts any algorithm
+    public static Reader open(Path path, String expectedKind) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+            throw new IOException(path + " is not a model file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(path + " has model format version " + version + ", expected " + VERSION);
+        }
+        Reader reader = new Reader(buffer, path);
+        reader.kind = reader.getString();
+        if (expectedKind != null && !expectedKind.equals(reader.kind)) {
+            throw new IOException(path + " holds a '" + reader.kind + "' model, expected '" + expectedKind + "'");
+        }
+        return reader;
+    }
+
+    private static int align(int position) {
+        return (int) align((long) position);
+    }
+
+    private static long align(long position) {
+        return (position + BLOCK_ALIGNMENT - 1) / BLOCK_ALIGNMENT * BLOCK_ALIGNMENT;
+    }
+
+    // Appends fields to a growing buffer and saves them in one write
+    public static class Writer {
+        private ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+
+        private Writer() {
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes + BLOCK_ALIGNMENT);
+                ByteBuffer larger = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        public Writer putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+            return this;
+        }
+
+        public Writer putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+            return this;
+        }
+
+        public Writer putDouble(double value) {
+            ensure(8);
+            buffer.putDouble(value);
+            return this;
+        }
+
+        public Writer putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+            return this;
+        }
+
+        public Writer putStrings(String[] values) {
+            putInt(values.length);
+            for (String value : values) {
+                putString(value);
+            }
+            return this;
+        }
+
+        // Length, padding to the block boundary, then the values
+        public Writer putInts(int[] values, int count) {
+            putInt(count);
+            pad();
+            ensure(count * 4);
+            buffer.asIntBuffer().put(values, 0, count);
+            buffer.position(buffer.position() + count * 4);
+            return this;
+        }
+
+        public Writer putInts(int[] values) {
+            return putInts(values, values.length);
+        }
+
+        public Writer putFloats(float[] values, int count) {
+            putInt(count);
+            pad();
+            ensure(count * 4);
+            buffer.asFloatBuffer().put(values, 0, count);
+            buffer.position(buffer.position() + count * 4);
+            return this;
+        }
+
+        public Writer putFloats(float[] values) {
+            return putFloats(values, values.length);
+        }
+
+        // Dimensions, label dictionary, label ids and the feature block, read back by Reader.getDataset
+        public Writer putDataset(Dataset dataset) {
+            putInt(dataset.rows()).putInt(dataset.dim()).putStrings(dataset.labelNames());
+            return putInts(dataset.labels(), dataset.rows()).putFloats(dataset.features(), dataset.rows() * dataset.dim());
+        }
+
+        private void pad() {
+            int padding = align(buffer.position()) - buffer.position();
+            ensure(padding);
+            buffer.position(buffer.position() + padding);
+        }
+
+        // Writes the model through a temporary file, so readers never see a partial model; the file is
+        // created like any other new file, so it gets the default permissions rather than a temp file's 0600
+        public void save(Path path) throws IOException {
+            Path temporary = path.resolveSibling(path.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer contents = buffer.duplicate();
+                contents.flip();
+                while (contents.hasRemaining()) {
+                    channel.write(contents);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // Reads fields back from a mapped model in the order they were written
+    public static class Reader {
+        private final ByteBuffer buffer;
+        private final Path path;
+        private String kind;
+
+        private Reader(ByteBuffer buffer, Path path) {
+            this.buffer = buffer;
+            this.path = path;
+        }
+
+        public String kind() {
+            return kind;
+        }
+
+        // Error for a model whose contents do not add up
+        public IOException corrupt(String problem) {
+            return new IOException(path + " holds a corrupt " + (kind != null ? "'" + kind + "' " : "") + "model: " + problem);
+        }
+
+        private void need(long bytes) throws IOException {
+            if (bytes > buffer.remaining()) {
+                throw corrupt("truncated, " + bytes + " bytes needed at offset " + buffer.position()
+                        + " but " + buffer.remaining() + " left");
+            }
+        }
+
+        // A length prefix of elements of the given size, checked against the rest of the file
+        private int getLength(int elementBytes, boolean aligned) throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                throw corrupt("negative length " + length + " at offset " + (buffer.position() - 4));
+            }
+            long start = aligned ? align((long) buffer.position()) : buffer.position();
+            if (start + (long) length * elementBytes > buffer.limit()) {
+                throw corrupt("truncated, a block of " + length + " values does not fit in the file");
+            }
+            buffer.position((int) start);
+            return length;
+        }
+
+        public int getInt() throws IOException {
+            need(4);
+            return buffer.getInt();
+        }
+
+        public long getLong() throws IOException {
+            need(8);
+            return buffer.getLong();
+        }
+
+        public double getDouble() throws IOException {
+            need(8);
+            return buffer.getDouble();
+        }
+
+        public String getString() throws IOException {
+            byte[] bytes = new byte[getLength(1, false)];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public String[] getStrings() throws IOException {
+            String[] values = new String[getLength(4, false)]; // Each string has at least its length prefix
+            for (int i = 0; i < values.length; i++) {
+                values[i] = getString();
+            }
+            return values;
+        }
+
+        public int[] getInts() throws IOException {
+            int[] values = new int[getLength(4, true)];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + values.length * 4);
+            return values;
+        }
+
+        public float[] getFloats() throws IOException {
+            float[] values = new float[getLength(4, true)];
+            buffer.asFloatBuffer().get(values);
+            buffer.position(buffer.position() + values.length * 4);
+            return values;
+        }
+
+        public Dataset getDataset() throws IOException {
+            int rows = getInt();
+            int dim = getInt();
+            String[] labelNames = getStrings();
+            int[] labels = getInts();
+            float[] features = getFloats();
+            if (rows < 0 || dim < 0 || labels.length != rows || features.length != (long) rows * dim) {
+                throw corrupt("data set of " + rows + " x " + dim + " holds " + labels.length + " labels and "
+                        + features.length + " features");
+            }
+            for (int label : labels) {
+                if (label < 0 || label >= labelNames.length) {
+                    throw corrupt("label id " + label + " outside the dictionary of " + labelNames.length);
+                }
+            }
+            return new Dataset(rows, dim, features, labels, labelNames);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package machine_learning_algorithms;
+
+public class NeighbourHeap {
+
+    /**
+     * This Class keeps the K nearest neighbours seen so far in a fixed-size max-heap on primitive arrays.
+     * The worst kept neighbour sits at the root, so a candidate only costs a comparison unless it is better.
+     * Neighbours are ordered by distance and then by row id, so ties are resolved the same way by every search.
+     */
+
+    private final double[] distances;
+    private final int[] rows;
+    private int size;
+    private long evaluations; // Distances computed by searches into this heap, for the metrics; kept by clear()
+
+    public NeighbourHeap(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1 but was " + capacity);
+        }
+        this.distances = new double[capacity];
+        this.rows = new int[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Counts distances a search computed for this heap's query; free when metrics are off
+    public void countEvaluations(long count) {
+        if (Metrics.Enabled) {
+            evaluations += count;
+        }
+    }
+
+    // Distances counted since the last call
+    public long takeEvaluations() {
+        long count = evaluations;
+        evaluations = 0;
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return rows.length;
+    }
+
+    public boolean isFull() {
+        return size == rows.length;
+    }
+
+    // Distance of the K-th best neighbour, or infinity while fewer than K neighbours were offered
+    public double worstDistance() {
+        return size == rows.length ? distances[0] : Double.POSITIVE_INFINITY;
+    }
+
+    public double distance(int index) {
+        return distances[index];
+    }
+
+    public int row(int index) {
+        return rows[index];
+    }
+
+    // Offers a candidate, returns true if it was kept
+    public boolean offer(double distance, int row) {
+        if (size < rows.length) {
+            int child = size++;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (!worse(distance, row, distances[parent], rows[parent])) {
+                    break;
+                }
+                distances[child] = distances[parent];
+                rows[child] = rows[parent];
+                child = parent;
+            }
+            distances[child] = distance;
+            rows[child] = row;
+            return true;
+        }
+        if (!worse(distances[0], rows[0], distance, row)) {
+            return false;
+        }
+        siftDown(distance, row, size);
+        return true;
+    }
+
+    // Sorts the kept neighbours from nearest to furthest (the heap is no longer usable until cleared)
+    public void sortAscending() {
+        for (int end = size - 1; end > 0; end--) {
+            double distance = distances[end];
+            int row = rows[end];
+            distances[end] = distances[0];
+            rows[end] = rows[0];
+            siftDown(distance, row, end);
+        }
+    }
+
+    // Places a candidate at the root and moves it down until the max-heap order holds within [0, end)
+    private void siftDown(double distance, int row, int end) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= end) {
+                break;
+            }
+            if (child + 1 < end && worse(distances[child + 1], rows[child + 1], distances[child], rows[child])) {
+                child++;
+            }
+            if (!worse(distances[child], rows[child], distance, row)) {
+                break;
+            }
+            distances[parent] = distances[child];
+            rows[parent] = rows[child];
+            parent = child;
+        }
+        distances[parent] = distance;
+        rows[parent] = row;
+    }
+
+    private static boolean worse(double distanceA, int rowA, double distanceB, int rowB) {
+        return distanceA > distanceB || (distanceA == distanceB && rowA > rowB);
+    }
+}
@@ -0,0 +1,64 @@
+package machine_learning_algorithms;
+
+import java.util.concurrent.ForkJoinPool;
+
+public interface NeighbourIndex {
+
+    /**
+     * A search structure over a fixed reference set, built once and queried many times.
+     * Exact indexes return the same neighbours as a linear scan: heap keys are squared
+     * Euclidean distances and ties are broken by row id inside NeighbourHeap.
+     */
+
+    // Offers the reference rows nearest to the query to the (cleared) heap, which keeps the K best
+    void search(float[] query, int queryOffset, NeighbourHeap nearest);
+
+    // Searches the query rows [start, start + count), one (cleared) heap per query; indexes that
+    // score whole batches at once override this
+    default void searchBatch(Dataset queries, int start, int count, NeighbourHeap[] nearest) {
+        for (int i = 0; i < count; i++) {
+            search(queries.features(), queries.offset(start + i), nearest[i]);
+        }
+    }
+
+    // The reference set whose row ids the heap receives
+    Dataset reference();
+
+    // False for approximate indexes, whose neighbours may differ from a linear scan
+    default boolean exact() {
+        return true;
+    }
+
+    // Search statistics collected so far (such as pruning counters), or null if the index keeps none
+    default String statistics() {
+        return null;
+    }
+
+    // Builds an index of the given kind: linear, blocked, quantized, kdtree, vptree, balltree or hnsw (approximate)
+    static NeighbourIndex build(String kind, Dataset reference, int leafSize) {
+        return build(kind, reference, leafSize, WorkerPool.shared());
+    }
+
+    // Like build, inserting the rows of an hnsw index in parallel on the given pool
+    static NeighbourIndex build(String kind, Dataset reference, int leafSize, ForkJoinPool pool) {
+        switch (kind) {
+            case "linear":
+                return new LinearScanIndex(reference, AlgorithmRunner.KNN_Prune);
+            case "blocked":
+                return new BlockedScanIndex(reference);
+            case "quantized":
+                return new QuantizedScanIndex(reference, AlgorithmRunner.KNN_Rerank_Factor);
+            case "kdtree":
+                return new KdTreeIndex(reference, leafSize);
+            case "vptree":
+                return new VpTreeIndex(reference, leafSize);
+            case "balltree":
+                return new BallTreeIndex(reference, leafSize);
+            case "hnsw":
+                return new HnswIndex(reference, AlgorithmRunner.KNN_Hnsw_M, AlgorithmRunner.KNN_Hnsw_Ef_Construction,
+                        AlgorithmRunner.KNN_Hnsw_Ef_Search, pool);
+            default:
+                throw new IllegalArgumentException("Unknown neighbour index '" + kind + "'");
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package machine_learning_algorithms;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public final class PredictionLog implements AutoCloseable {
+
+    /**
+     * This Class records every prediction of an algorithm (fold, row, actual and predicted label,
+     * score, latency) without slowing the scoring down. Scoring threads put records into a bounded
+     * lock-free ring buffer on primitive arrays and return at once; a background thread drains it
+     * in batches into a CSV file, a compact binary file or the console.
+     *
+     * The ring is a multi-producer, single-consumer queue: a producer claims a slot with one CAS
+     * on the tail, fills it and publishes it through the slot's sequence number, which the writer
+     * waits for before reading. When the writer falls behind and the ring is full, records are
+     * either dropped (and counted) or the producer waits for space, per Prediction_Log_Policy.
+     *
+     * Binary layout (little-endian):
+     *   magic "MLPL", version, label dictionary (count, then length-prefixed UTF-8 names), then one
+     *   28-byte record per prediction: int fold, int row, int actual, int predicted, float score,
+     *   long latency in nanoseconds.
+     */
+
+    public static final String Csv_Extension = ".csv";
+    public static final String Binary_Extension = ".mlpl";
+
+    private static final int MAGIC = 0x4C504C4D; // "MLPL" read as a little-endian int
+    private static final int VERSION = 1;
+    private static final int RECORD_BYTES = 28;
+    private static final int DRAIN_BATCH = 4096; // Records written between two checks for new work
+    private static final long IDLE_PARK_NANOS = 1_000_000; // Writer sleep when the ring is empty
+    private static final long FULL_PARK_NANOS = 50_000; // Producer sleep while waiting for space
+
+    private static final Metrics.Counter Dropped = Metrics.counter("ml_prediction_log_dropped_total",
+            "Predictions not logged because the prediction log buffer was full");
+
+    private final String name;
+    private final String[] labelNames;
+    private final boolean block;
+
+    // Ring buffer: slot i holds a record while sequence[i] == position + 1, and is free while sequence[i] == position
+    private final int mask;
+    private final AtomicLongArray sequence;
+    private final int[] folds;
+    private final int[] rows;
+    private final int[] actual;
+    private final int[] predicted;
+    private final float[] scores;
+    private final long[] latencies;
+    private final AtomicLong tail = new AtomicLong(); // Next position a producer claims
+    private long head; // Next position the writer reads, only touched by the writer thread
+
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private long written; // Records drained into the sink, read after the writer has finished
+
+    // Log of one algorithm with the format, size and policy set in AlgorithmRunner, in the Prediction_Log directory
+    public static PredictionLog open(String algorithm, String[] labelNames) throws IOException {
+        String format = AlgorithmRunner.Prediction_Log_Format;
+        boolean block;
+        switch (AlgorithmRunner.Prediction_Log_Policy) {
+            case "block":
+                block = true;
+                break;
+            case "drop":
+                block = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown prediction log policy '" + AlgorithmRunner.Prediction_Log_Policy + "'");
+        }
+        Path path = null;
+        if (format.equals("csv") || format.equals("binary")) {
+            path = Paths.get(AlgorithmRunner.Prediction_Log, algorithm + (format.equals("csv") ? Csv_Extension : Binary_Extension));
+        }
+        return new PredictionLog(path, format, labelNames, AlgorithmRunner.Prediction_Log_Capacity, block);
+    }
+
+    // Format csv, binary or console (path is ignored); capacity is rounded up to a power of two, at least 2
+    public PredictionLog(Path path, String format, String[] labelNames, int capacity, boolean block) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1 but was " + capacity);
+        }
+        // One slot would be free (sequence position + size) and full (position + 1) at the same sequence number
+        int size = Math.max(2, Integer.highestOneBit(Math.min(capacity, 1 << 24) * 2 - 1));
+        this.labelNames = labelNames;
+        this.block = block;
+        this.mask = size - 1;
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+        this.folds = new int[size];
+        this.rows = new int[size];
+        this.actual = new int[size];
+        this.predicted = new int[size];
+        this.scores = new float[size];
+        this.latencies = new long[size];
+
+        Sink sink;
+        switch (format) {
+            case "csv":
+                sink = new CsvSink(path);
+                break;
+            case "binary":
+                sink = new BinarySink(path);
+                break;
+            case "console":
+                sink = new ConsoleSink();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown prediction log format '" + format + "'");
+        }
+        this.name = path == null ? "console" : path.toString();
+        this.writer = new Thread(() -> drainLoop(sink), "prediction-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Log of one fold, numbering the rows of its test set by their ids in the full data (rowIds null keeps them)
+    public FoldLog fold(int fold, int[] rowIds) {
+        return new FoldLog(fold, rowIds);
+    }
+
+    // Queues one prediction; false if it was dropped because the buffer was full
+    public boolean record(int fold, int row, int actualLabel, int predictedLabel, float score, long latencyNanos) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long ready = sequence.get(slot);
+            if (ready == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    folds[slot] = fold;
+                    rows[slot] = row;
+                    actual[slot] = actualLabel;
+                    predicted[slot] = predictedLabel;
+                    scores[slot] = score;
+                    latencies[slot] = latencyNanos;
+                    sequence.lazySet(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (ready < position) {
+                // Full: the writer has not freed this slot from the previous lap yet
+                if (!block) {
+                    dropped.increment();
+                    if (Metrics.Enabled) {
+                        Dropped.increment();
+                    }
+                    return false;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+                position = tail.get();
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    // Writes the remaining records and closes the file; every producer must have finished
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    // One line about where the log went, for after close()
+    public String summary() {
+        return String.format("Prediction log %s: %d predictions written, %d dropped", name, written, dropped());
+    }
+
+    private void drainLoop(Sink sink) {
+        Sink target = sink;
+        while (true) {
+            // Read before draining, so a record queued before close() is always written
+            boolean closing = closed;
+            int drained = 0;
+            while (drained < DRAIN_BATCH) {
+                int slot = (int) head & mask;
+                if (sequence.get(slot) != head + 1) {
+                    break;
+                }
+                if (target != null) {
+                    try {
+                        target.write(folds[slot], rows[slot], actual[slot], predicted[slot], scores[slot], latencies[slot]);
+                        written++;
+                    } catch (IOException e) {
+                        // Keep draining so producers never wait on a dead writer; close() reports the error
+                        failure = e;
+                        target = null;
+                    }
+                }
+                sequence.lazySet(slot, head + mask + 1);
+                head++;
+                drained++;
+            }
+            if (drained > 0) {
+                continue;
+            }
+            if (closing) {
+                break;
+            }
+            target = flush(target);
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        target = flush(target);
+        try {
+            sink.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    private Sink flush(Sink target) {
+        if (target == null) {
+            return null;
+        }
+        try {
+            target.flush();
+            return target;
+        } catch (IOException e) {
+            failure = e;
+            return null;
+        }
+    }
+
+    // Records of one fold, see fold()
+    public final class FoldLog {
+        private final int fold;
+        private final int[] rowIds;
+
+        private FoldLog(int fold, int[] rowIds) {
+            this.fold = fold;
+            this.rowIds = rowIds;
+        }
+
+        // Queues the prediction for row (of the fold's test set); score NaN when the algorithm has none
+        public void record(int row, int actualLabel, int predictedLabel, float score, long latencyNanos) {
+            PredictionLog.this.record(fold, rowIds == null ? row : rowIds[row], actualLabel, predictedLabel, score, latencyNanos);
+        }
+    }
+
+    // Destination of the drained records, only used by the writer thread
+    private interface Sink {
+        void write(int fold, int row, int actualLabel, int predictedLabel, float score, long latencyNanos) throws IOException;
+
+        void flush() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    // One line per prediction with the label names; an empty score means the algorithm has none
+    private final class CsvSink implements Sink {
+        private final BufferedWriter out;
+        private final StringBuilder line = new StringBuilder();
+
+        CsvSink(Path path) throws IOException {
+            createParent(path);
+            out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            out.write("fold,row,actual,predicted,score,latency_ns\n");
+        }
+
+        @Override
+        public void write(int fold, int row, int actualLabel, int predictedLabel, float score, long latencyNanos) throws IOException {
+            line.setLength(0);
+            line.append(fold).append(',').append(row).append(',').append(labelNames[actualLabel]).append(',')
+                    .append(labelNames[predictedLabel]).append(',');
+            if (!Float.isNaN(score)) {
+                line.append(score);
+            }
+            line.append(',').append(latencyNanos).append('\n');
+            out.write(line.toString());
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // Fixed-size little-endian records after a header with the label names
+    private final class BinarySink implements Sink {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * DRAIN_BATCH).order(ByteOrder.LITTLE_ENDIAN);
+
+        BinarySink(Path path) throws IOException {
+            createParent(path);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            int headerBytes = 12;
+            byte[][] names = new byte[labelNames.length][];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = labelNames[i].getBytes(StandardCharsets.UTF_8);
+                headerBytes += 4 + names[i].length;
+            }
+            ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(names.length);
+            for (byte[] labelName : names) {
+                header.putInt(labelName.length).put(labelName);
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+
+        @Override
+        public void write(int fold, int row, int actualLabel, int predictedLabel, float score, long latencyNanos) throws IOException {
+            if (buffer.remaining() < RECORD_BYTES) {
+                flush();
+            }
+            buffer.putInt(fold).putInt(row).putInt(actualLabel).putInt(predictedLabel).putFloat(score).putLong(latencyNanos);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // The old Print_Details lines on standard output, written by the writer thread instead of the scorers
+    private final class ConsoleSink implements Sink {
+        private final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+        @Override
+        public void write(int fold, int row, int actualLabel, int predictedLabel, float score, long latencyNanos) throws IOException {
+            out.write((actualLabel == predictedLabel ? "\u2714 Correct! Actual: " : "\u274C Incorrect! Actual: ")
+                    + labelNames[actualLabel] + ", Predicted: " + labelNames[predictedLabel] + "\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static void createParent(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+class PresortedTreeBuilder extends DecisionTreeBuilder {
+
+    /**
+     * Exact split search on presorted columns. sorted[a] lists the training rows by increasing value
+     * of attribute a. Every node owns the same range [start, end) in each list; splitting partitions
+     * the ranges stably, so the order inside each child is still sorted and no column is ever sorted
+     * again. Every boundary between two distinct values is a candidate threshold. Attributes dropped
+     * from a node's set are no longer partitioned; the node's rows are read from the list of its
+     * parent's split attribute, which is always partitioned.
+     */
+
+    private final int[][] sorted;
+    private final boolean[] goesLeft; // Indexed by row, so concurrent subtrees never share an entry
+
+    PresortedTreeBuilder(Dataset dataset, String criterion, int maxDepth, int minSamplesLeaf, double minGain, ForkJoinPool pool) {
+        super(dataset, criterion, maxDepth, minSamplesLeaf, minGain, pool);
+        int rows = dataset.rows();
+        this.sorted = new int[attributeCount][];
+        for (int attribute = 0; attribute < attributeCount; attribute++) {
+            sorted[attribute] = sortByAttribute(attribute);
+        }
+        this.goesLeft = new boolean[rows];
+    }
+
+    @Override
+    C45_Algorithm.Node buildRoot(SplitScratch scratch) {
+        return buildNode(0, dataset.rows(), allAttributes(), 0, 0, scratch);
+    }
+
+    // Row ids ordered by one attribute, sorted as packed (value, row) longs
+    private int[] sortByAttribute(int attribute) {
+        int rows = dataset.rows();
+        long[] keys = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            int bits = Float.floatToIntBits(dataset.get(row, attribute));
+            int ordered = bits ^ ((bits >> 31) & 0x7FFFFFFF); // Orders floats like signed ints
+            keys[row] = ((long) ordered << 32) | row;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    // Grows the node owning [start, end); sorted[anchor] is known to hold exactly its rows there
+    private C45_Algorithm.Node buildNode(int start, int end, long[] attributes, int anchor, int depth, SplitScratch scratch) {
+        int[] classCounts = scratch.classCounts;
+        Arrays.fill(classCounts, 0);
+        int[] rows = sorted[anchor];
+        for (int i = start; i < end; i++) {
+            classCounts[dataset.label(rows[i])]++;
+        }
+        int majorityClass = majority(classCounts);
+        int majorityCount = classCounts[majorityClass];
+
+        // Stop when all instances have the same label, a limit is reached or no split gains enough
+        C45_Algorithm.Split split = mayGrow(end - start, majorityCount, depth) ? findBestSplit(start, end, attributes, scratch) : null;
+        if (split == null) {
+            return leaf(majorityClass, end - start, majorityCount);
+        }
+
+        long[] childAttributes = withoutConstant(attributes, scratch);
+        C45_Algorithm.Node node = inner(majorityClass, end - start, majorityCount, split);
+        int middle = partition(start, end, split, childAttributes, scratch);
+        buildChildren(node, middle - start, end - middle, scratch,
+                s -> buildNode(start, middle, childAttributes, split.attribute, depth + 1, s),
+                s -> buildNode(middle, end, childAttributes, split.attribute, depth + 1, s));
+        return node;
+    }
+
+    // One sweep per attribute over the presorted range
+    private C45_Algorithm.Split findBestSplit(int start, int end, long[] attributes, SplitScratch scratch) {
+        int total = end - start;
+        int[] classCounts = scratch.classCounts;
+        double entropyBefore = entropy(classCounts, total);
+        scratch.clearCandidates();
+
+        forEachAttribute(total, attributes, scratch, (attribute, counts) -> {
+            int[] rows = sorted[attribute];
+            if (dataset.get(rows[start], attribute) == dataset.get(rows[end - 1], attribute)) {
+                scratch.constant[attribute] = true; // Every row of the node has the same value
+                return;
+            }
+            int[] leftCounts = counts.leftCounts;
+            int[] rightCounts = counts.rightCounts;
+            Arrays.fill(leftCounts, 0);
+            System.arraycopy(classCounts, 0, rightCounts, 0, classCount);
+            double bestEntropy = Double.POSITIVE_INFINITY;
+            int bestLeft = 0;
+            float bestThreshold = 0;
+            for (int i = start; i < end - 1; i++) {
+                int label = dataset.label(rows[i]);
+                leftCounts[label]++;
+                rightCounts[label]--;
+                float value = dataset.get(rows[i], attribute);
+                if (value == dataset.get(rows[i + 1], attribute)) {
+                    continue;
+                }
+                int leftTotal = i + 1 - start;
+                if (leftTotal < minSamplesLeaf || total - leftTotal < minSamplesLeaf) {
+                    continue;
+                }
+                double entropyAfter = splitEntropy(leftCounts, leftTotal, rightCounts, total - leftTotal);
+                if (entropyAfter < bestEntropy) {
+                    bestEntropy = entropyAfter;
+                    bestLeft = leftTotal;
+                    // C4.5 uses the largest training value on the left as the threshold
+                    bestThreshold = value;
+                }
+            }
+            if (bestLeft > 0) {
+                recordCandidate(scratch, attribute, bestThreshold, entropyBefore - bestEntropy / total, bestLeft, total);
+            }
+        });
+        return chooseSplit(scratch);
+    }
+
+    // Stably partitions every attribute's range into the left rows followed by the right rows
+    private int partition(int start, int end, C45_Algorithm.Split split, long[] attributes, SplitScratch scratch) {
+        int[] byAttribute = sorted[split.attribute];
+        int leftCount = 0;
+        for (int i = start; i < end; i++) {
+            int row = byAttribute[i];
+            goesLeft[row] = dataset.get(row, split.attribute) <= split.threshold;
+            if (goesLeft[row]) {
+                leftCount++;
+            }
+        }
+        // The split attribute is never constant, so its list (where the children read their rows) is always partitioned
+        forEachAttribute(end - start, attributes, scratch, (attribute, buffers) -> {
+            int[] rows = sorted[attribute];
+            int[] buffer = buffers.buffer(end - start);
+            int left = start;
+            int right = 0;
+            for (int i = start; i < end; i++) {
+                int row = rows[i];
+                if (goesLeft[row]) {
+                    rows[left++] = row;
+                } else {
+                    buffer[right++] = row;
+                }
+            }
+            System.arraycopy(buffer, 0, rows, left, right);
+        });
+        return start + leftCount;
+    }
+}
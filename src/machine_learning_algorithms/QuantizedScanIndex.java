@@ -0,0 +1,146 @@
+package machine_learning_algorithms;
+
+import java.util.concurrent.atomic.LongAdder;
+
+class QuantizedScanIndex implements NeighbourIndex {
+
+    /**
+     * Linear scan over reference rows quantized to one unsigned byte per feature (64 bytes per digit row,
+     * a quarter of the float block). Features that are already integers in 0..255, like the 0..16 digit
+     * pixels, are stored as they are and the scan is exact. Other data is mapped with one scale and offset
+     * (value = offset + scale * code); the scan is then approximate unless the best candidates are
+     * re-ranked on the full-precision rows.
+     *
+     * On exact (lossless) references, a query that is not itself on the byte grid (a fraction, or a
+     * value outside 0..255) would be clamped and rounded, so it is scanned in full precision instead;
+     * exact() therefore holds for every query. statistics() counts those queries.
+     */
+
+    private final Dataset reference;
+    private final int dim;
+    private final byte[] codes;
+    private final float offset;
+    private final float scale;
+    private final boolean lossless;
+    private final int rerankFactor;
+
+    private final ThreadLocal<QueryScratch> scratch;
+    private final LongAdder offGridQueries = new LongAdder();
+
+    // rerankFactor > 0 keeps K * rerankFactor candidates from the byte scan and re-ranks them in full precision
+    QuantizedScanIndex(Dataset reference, int rerankFactor) {
+        if (reference.dim() > DistanceKernels.Max_Uint8_Dim) {
+            throw new IllegalArgumentException("Quantized scan supports at most " + DistanceKernels.Max_Uint8_Dim + " dimensions");
+        }
+        this.reference = reference;
+        this.dim = reference.dim();
+        this.rerankFactor = rerankFactor;
+
+        float[] features = reference.features();
+        int cells = reference.rows() * dim;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        boolean integral = true;
+        for (int i = 0; i < cells; i++) {
+            float value = features[i];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            integral &= value == (int) value;
+        }
+        this.lossless = cells == 0 || (integral && min >= 0 && max <= 255);
+        this.offset = lossless ? 0 : min;
+        this.scale = lossless || max == min ? 1 : (max - min) / 255f;
+
+        this.codes = new byte[cells];
+        for (int i = 0; i < cells; i++) {
+            codes[i] = quantize(features[i]);
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new QueryScratch(dim));
+    }
+
+    @Override
+    public Dataset reference() {
+        return reference;
+    }
+
+    @Override
+    public boolean exact() {
+        return lossless;
+    }
+
+    @Override
+    public String statistics() {
+        long queries = offGridQueries.sum();
+        return queries == 0 ? null : queries + " queries off the uint8 grid scanned in full precision";
+    }
+
+    private byte quantize(float value) {
+        int code = Math.round((value - offset) / scale);
+        return (byte) Math.max(0, Math.min(255, code));
+    }
+
+    @Override
+    public void search(float[] query, int queryOffset, NeighbourHeap nearest) {
+        QueryScratch buffers = scratch.get();
+        byte[] code = buffers.code;
+        boolean onGrid = true;
+        for (int i = 0; i < dim; i++) {
+            float value = query[queryOffset + i];
+            code[i] = quantize(value);
+            onGrid &= value == (code[i] & 0xFF);
+        }
+        if (lossless && !onGrid) {
+            offGridQueries.increment();
+            searchFullPrecision(query, queryOffset, nearest);
+            return;
+        }
+
+        boolean rerank = !lossless && rerankFactor > 0;
+        NeighbourHeap candidates = rerank ? buffers.candidates(nearest.capacity() * rerankFactor) : nearest;
+        double unit = (double) scale * scale;
+        for (int row = 0; row < reference.rows(); row++) {
+            double distance = DistanceKernels.squaredEuclideanUint8(code, 0, codes, row * dim, dim) * unit;
+            if (distance <= candidates.worstDistance()) {
+                candidates.offer(distance, row);
+            }
+        }
+
+        if (rerank) {
+            float[] features = reference.features();
+            for (int i = 0; i < candidates.size(); i++) {
+                int row = candidates.row(i);
+                nearest.offer(DistanceKernels.squaredEuclidean(query, queryOffset, features, row * dim, dim), row);
+            }
+        }
+        nearest.countEvaluations(reference.rows() + (rerank ? candidates.size() : 0));
+    }
+
+    private void searchFullPrecision(float[] query, int queryOffset, NeighbourHeap nearest) {
+        float[] features = reference.features();
+        for (int row = 0; row < reference.rows(); row++) {
+            double distance = DistanceKernels.squaredEuclidean(query, queryOffset, features, row * dim, dim);
+            if (distance <= nearest.worstDistance()) {
+                nearest.offer(distance, row);
+            }
+        }
+        nearest.countEvaluations(reference.rows());
+    }
+
+    // Per-thread query code and candidate heap
+    private static final class QueryScratch {
+        final byte[] code;
+        private NeighbourHeap candidates;
+
+        QueryScratch(int dim) {
+            this.code = new byte[dim];
+        }
+
+        NeighbourHeap candidates(int capacity) {
+            if (candidates == null || candidates.capacity() != capacity) {
+                candidates = new NeighbourHeap(capacity);
+            }
+            candidates.clear();
+            return candidates;
+        }
+    }
+}
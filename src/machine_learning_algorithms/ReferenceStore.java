@@ -0,0 +1,436 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ReferenceStore {
+
+    /**
+     * This Class is a KNN reference set that takes new rows and deletions while it is queried.
+     *
+     * Rows live in segments. Sealed segments are immutable and have their own neighbour index; new
+     * rows go to the active segment, which is scanned linearly and sealed (indexed) once it holds
+     * KNN_Segment_Rows rows. The add that fills it starts a new active segment and builds the index
+     * after releasing the writer lock, so other writers are not held up; until the sealed segment
+     * is published in its place, the full one is still scanned linearly. A delete only sets the row's tombstone bit, and searches skip such rows
+     * (each sealed segment is searched for K plus its deleted count, so results stay exact). When
+     * tombstones pass KNN_Compaction_Threshold of the sealed rows, or there are more than
+     * KNN_Max_Segments sealed segments, a background task on the pool merges the live rows of all
+     * sealed segments into one and indexes it, then swaps it in.
+     *
+     * Queries take no locks: they read the segment array once (it is replaced, never changed) and
+     * the active segment's published row count. Writers (add, delete, the compaction swap) take a
+     * writer lock among themselves, so appends and deletes are applied one at a time. A row keeps its
+     * id, and its label id, for the life of the store.
+     */
+
+    private final int dim;
+    private final String indexKind;
+    private final int leafSize;
+    private final ForkJoinPool pool;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    // Per-thread heaps for the searches of the sealed segments, so queries allocate nothing
+    private final ThreadLocal<SearchScratch> scratch = ThreadLocal.withInitial(SearchScratch::new);
+
+    // Sealed segments in id order, then the active segment; replaced as a whole on every change
+    private volatile Segment[] segments;
+    private volatile int[] labelsById; // Label id of every row id handed out, grown by copying
+    private volatile String[] labelNames;
+    private volatile int liveRows;
+    private volatile int compactions;
+    private int nextId; // Guarded by writeLock
+
+    // Store whose first sealed segment is an already indexed training set, with row ids 0..rows-1
+    public ReferenceStore(Dataset reference, NeighbourIndex index, String indexKind, int leafSize, ForkJoinPool pool) {
+        this.dim = reference.dim();
+        this.indexKind = indexKind;
+        this.leafSize = leafSize;
+        this.pool = pool;
+        int rows = reference.rows();
+        int[] ids = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = i;
+        }
+        this.labelsById = Arrays.copyOf(reference.labels(), Math.max(16, rows * 2));
+        this.labelNames = reference.labelNames();
+        this.nextId = rows;
+        this.liveRows = rows;
+        Segment active = Segment.active(AlgorithmRunner.KNN_Segment_Rows, dim);
+        this.segments = rows == 0 ? new Segment[] {active} : new Segment[] {Segment.sealed(reference, ids, index), active};
+    }
+
+    public int dim() {
+        return dim;
+    }
+
+    // Rows added and not deleted
+    public int size() {
+        return liveRows;
+    }
+
+    // Label id of every row id, indexed by the ids the heap receives
+    public int[] labels() {
+        return labelsById;
+    }
+
+    public String[] labelNames() {
+        return labelNames;
+    }
+
+    public int labelCount() {
+        return labelNames.length;
+    }
+
+    // Offers the K nearest live rows to the (cleared) heap, keyed by their row ids
+    public void search(float[] query, int queryOffset, NeighbourHeap nearest) {
+        Segment[] snapshot = segments;
+        SearchScratch buffers = scratch.get();
+        for (int s = 0; s < snapshot.length; s++) {
+            Segment segment = snapshot[s];
+            if (segment.index == null) {
+                scan(segment, query, queryOffset, nearest); // The active segment, or a full one being sealed
+                continue;
+            }
+            int deleted = segment.deletedCount.get();
+            NeighbourHeap local = buffers.heap(s, Math.max(1, Math.min(segment.count, nearest.capacity() + deleted)));
+            segment.index.search(query, queryOffset, local);
+            nearest.countEvaluations(local.takeEvaluations());
+            for (int i = 0; i < local.size(); i++) {
+                int row = local.row(i);
+                if (!segment.isDeleted(row)) {
+                    nearest.offer(local.distance(i), segment.ids[row]);
+                }
+            }
+        }
+    }
+
+    private void scan(Segment segment, float[] query, int queryOffset, NeighbourHeap nearest) {
+        int count = segment.count;
+        for (int row = 0; row < count; row++) {
+            if (!segment.isDeleted(row)) {
+                double distance = DistanceKernels.squaredEuclidean(query, queryOffset, segment.features, row * dim, dim);
+                nearest.offer(distance, segment.ids[row]);
+            }
+        }
+        nearest.countEvaluations(count);
+    }
+
+    // Appends a row and returns its id; a label name not seen before gets the next label id
+    public int add(float[] features, int offset, String label) {
+        Segment full = null;
+        int id;
+        writeLock.lock();
+        try {
+            int labelId = labelId(label);
+            id = nextId++;
+            int[] labels = labelsById;
+            if (id == labels.length) {
+                labels = Arrays.copyOf(labels, labels.length * 2);
+            }
+            labels[id] = labelId;
+            labelsById = labels;
+
+            Segment active = segments[segments.length - 1];
+            if (active.count == active.ids.length) {
+                full = active;
+                active = startSegment();
+            }
+            int row = active.count;
+            System.arraycopy(features, offset, active.features, row * dim, dim);
+            active.ids[row] = id;
+            active.count = row + 1; // Publishes the row to queries
+            liveRows++;
+        } finally {
+            writeLock.unlock();
+        }
+        if (full != null) {
+            seal(full);
+        }
+        return id;
+    }
+
+    public int add(Sample sample) {
+        if (sample.features().length != dim) {
+            throw new IllegalArgumentException("Sample has " + sample.features().length + " features, the store needs " + dim);
+        }
+        return add(sample.features(), 0, sample.label());
+    }
+
+    // Marks a row as deleted; false if there is no live row with that id
+    public boolean delete(int id) {
+        writeLock.lock();
+        try {
+            Segment[] snapshot = segments;
+            for (Segment segment : snapshot) {
+                int row = Arrays.binarySearch(segment.ids, 0, segment.count, id);
+                if (row >= 0) {
+                    if (!segment.markDeleted(row)) {
+                        return false;
+                    }
+                    liveRows--;
+                    requestCompaction(snapshot);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Live rows in id order as a data set (row ids are not kept), for saving
+    public Dataset liveRows() {
+        Segment[] snapshot = segments;
+        int[] labels = labelsById;
+        int[] counts = new int[snapshot.length]; // Read once, the active segment may grow meanwhile
+        int total = 0;
+        for (int s = 0; s < snapshot.length; s++) {
+            counts[s] = snapshot[s].count;
+            total += counts[s];
+        }
+        float[] features = new float[total * dim];
+        int[] rowLabels = new int[total];
+        int rows = 0;
+        for (int s = 0; s < snapshot.length; s++) {
+            Segment segment = snapshot[s];
+            for (int row = 0; row < counts[s]; row++) {
+                if (!segment.isDeleted(row)) {
+                    System.arraycopy(segment.features, row * dim, features, rows * dim, dim);
+                    rowLabels[rows++] = labels[segment.ids[row]];
+                }
+            }
+        }
+        return new Dataset(rows, dim, Arrays.copyOf(features, rows * dim), Arrays.copyOf(rowLabels, rows), labelNames);
+    }
+
+    // Merges the sealed segments into one now, on the calling thread
+    public void compact() {
+        while (!compacting.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+        runCompaction();
+    }
+
+    public String statistics() {
+        Segment[] snapshot = segments;
+        int deleted = 0;
+        for (Segment segment : snapshot) {
+            deleted += segment.deletedCount.get();
+        }
+        return String.format("Reference store: %d live rows, %d sealed segment(s) + %d active rows, %d tombstones, %d compaction(s)",
+                liveRows, snapshot.length - 1, snapshot[snapshot.length - 1].count, deleted, compactions);
+    }
+
+    private int labelId(String label) {
+        String[] names = labelNames;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(label)) {
+                return i;
+            }
+        }
+        String[] grown = Arrays.copyOf(names, names.length + 1);
+        grown[names.length] = label;
+        labelNames = grown;
+        return names.length;
+    }
+
+    // Appends a new active segment after the full one, which queries keep scanning until it is sealed;
+    // called with the writer lock held
+    private Segment startSegment() {
+        Segment[] snapshot = segments;
+        Segment active = Segment.active(snapshot[snapshot.length - 1].ids.length, dim);
+        Segment[] next = Arrays.copyOf(snapshot, snapshot.length + 1);
+        next[snapshot.length] = active;
+        segments = next;
+        return active;
+    }
+
+    // Indexes a full segment without the writer lock, then swaps the sealed segment in for it
+    private void seal(Segment full) {
+        int[] labels = labelsById;
+        int[] rowLabels = new int[full.count];
+        for (int row = 0; row < full.count; row++) {
+            rowLabels[row] = labels[full.ids[row]];
+        }
+        Dataset rows = new Dataset(full.count, dim, full.features, rowLabels, labelNames);
+        Segment sealed = Segment.sealed(rows, full.ids, NeighbourIndex.build(indexKind, rows, leafSize, pool));
+
+        writeLock.lock();
+        try {
+            Segment[] current = segments;
+            int position = Arrays.asList(current).indexOf(full);
+            if (position < 0) {
+                return; // A compaction has already merged its rows
+            }
+            // Rows deleted while the index was built are deleted in the sealed segment too
+            sealed.copyTombstones(full);
+            Segment[] next = current.clone();
+            next[position] = sealed;
+            segments = next;
+            requestCompaction(next);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Starts a background compaction when the sealed segments are too many or too sparse
+    private void requestCompaction(Segment[] snapshot) {
+        int sealed = snapshot.length - 1;
+        long rows = 0;
+        long deleted = 0;
+        for (int s = 0; s < sealed; s++) {
+            rows += snapshot[s].count;
+            deleted += snapshot[s].deletedCount.get();
+        }
+        boolean needed = sealed > AlgorithmRunner.KNN_Max_Segments
+                || (deleted > 0 && deleted > AlgorithmRunner.KNN_Compaction_Threshold * rows);
+        if (needed && compacting.compareAndSet(false, true)) {
+            pool.execute(this::runCompaction);
+        }
+    }
+
+    // Copies the live rows of the sealed segments into one, indexes it off the writer lock, then swaps it in
+    private void runCompaction() {
+        try {
+            Segment[] snapshot = segments;
+            int merged = snapshot.length - 1;
+            if (merged == 0) {
+                return;
+            }
+            int total = 0;
+            for (int s = 0; s < merged; s++) {
+                total += snapshot[s].count;
+            }
+            int[] labels = labelsById;
+            float[] features = new float[total * dim];
+            int[] ids = new int[total];
+            int[] rowLabels = new int[total];
+            int rows = 0;
+            for (int s = 0; s < merged; s++) {
+                Segment segment = snapshot[s];
+                for (int row = 0; row < segment.count; row++) {
+                    if (!segment.isDeleted(row)) {
+                        System.arraycopy(segment.features, row * dim, features, rows * dim, dim);
+                        ids[rows] = segment.ids[row];
+                        rowLabels[rows] = labels[segment.ids[row]];
+                        rows++;
+                    }
+                }
+            }
+            Segment compacted = null;
+            if (rows > 0) {
+                Dataset reference = new Dataset(rows, dim, Arrays.copyOf(features, rows * dim), Arrays.copyOf(rowLabels, rows), labelNames);
+                compacted = Segment.sealed(reference, Arrays.copyOf(ids, rows), NeighbourIndex.build(indexKind, reference, leafSize, pool));
+            }
+
+            writeLock.lock();
+            try {
+                // Rows deleted while the index was built are deleted in the compacted segment too
+                Segment[] current = segments;
+                if (compacted != null) {
+                    for (int s = 0; s < merged; s++) {
+                        compacted.copyTombstones(current[s]);
+                    }
+                }
+                // Only this task removes segments, so the merged ones are still the first ones
+                Segment[] next = new Segment[current.length - merged + (compacted == null ? 0 : 1)];
+                int position = 0;
+                if (compacted != null) {
+                    next[position++] = compacted;
+                }
+                System.arraycopy(current, merged, next, position, current.length - merged);
+                segments = next;
+                compactions++;
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    // Heap for the sealed segment at each position of the segment array, reallocated when its capacity changes
+    private static final class SearchScratch {
+        private NeighbourHeap[] heaps = new NeighbourHeap[0];
+
+        // Cleared heap for the segment at the position, holding capacity neighbours
+        NeighbourHeap heap(int position, int capacity) {
+            if (position >= heaps.length) {
+                heaps = Arrays.copyOf(heaps, position + 1);
+            }
+            NeighbourHeap heap = heaps[position];
+            if (heap == null || heap.capacity() != capacity) {
+                heap = new NeighbourHeap(capacity);
+                heaps[position] = heap;
+            }
+            heap.clear();
+            return heap;
+        }
+    }
+
+    // Rows with their ids in ascending order; sealed segments are searched through their index
+    private static final class Segment {
+        final float[] features;
+        final int[] ids;
+        final NeighbourIndex index; // Null for the active segment
+        final AtomicLongArray deleted; // Tombstone bits by row
+        final AtomicInteger deletedCount = new AtomicInteger();
+        volatile int count;
+
+        private Segment(float[] features, int[] ids, NeighbourIndex index, int count) {
+            this.features = features;
+            this.ids = ids;
+            this.index = index;
+            this.deleted = new AtomicLongArray((ids.length + 63) / 64);
+            this.count = count;
+        }
+
+        static Segment active(int capacity, int dim) {
+            return new Segment(new float[capacity * dim], new int[capacity], null, 0);
+        }
+
+        static Segment sealed(Dataset rows, int[] ids, NeighbourIndex index) {
+            return new Segment(rows.features(), ids, index, rows.rows());
+        }
+
+        boolean isDeleted(int row) {
+            return (deleted.get(row >>> 6) & (1L << row)) != 0;
+        }
+
+        // Sets the tombstone; false if it was already set
+        boolean markDeleted(int row) {
+            long bit = 1L << row;
+            while (true) {
+                long word = deleted.get(row >>> 6);
+                if ((word & bit) != 0) {
+                    return false;
+                }
+                if (deleted.compareAndSet(row >>> 6, word, word | bit)) {
+                    deletedCount.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        // Deletes the rows of this segment whose ids are deleted in the other one
+        void copyTombstones(Segment other) {
+            if (other.deletedCount.get() == 0) {
+                return;
+            }
+            for (int row = 0; row < other.count; row++) {
+                if (other.isDeleted(row)) {
+                    int mine = Arrays.binarySearch(ids, 0, count, other.ids[row]);
+                    if (mine >= 0) {
+                        markDeleted(mine);
+                    }
+                }
+            }
+        }
+    }
+}
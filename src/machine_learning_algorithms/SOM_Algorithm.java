@@ -1,261 +1,828 @@
-package machine_learning_algorithms;
-
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
-
-public class SOM_Algorithm {
-	
-    /**
-     * This Class runs the Self-Organizing Map Algorithm with training and test data sets.
-     */
-	
-	public void run() throws FileNotFoundException {
-        // Load Dataset 1 and Dataset 2
-        double[][] trainData1 = loadData(AlgorithmRunner.Dataset_1);
-        int[] trainLabels1 = loadLabels(AlgorithmRunner.Dataset_1);
-
-        double[][] trainData2 = loadData(AlgorithmRunner.Dataset_2);
-        int[] trainLabels2 = loadLabels(AlgorithmRunner.Dataset_2);
-
-        // Initialize the SOM algorithm with appropriate grid size and input dimension (e.g., 64 for 64 features)
-        SOM_Algorithm som1 = new SOM_Algorithm(10, 10, 64);  // Example grid size and input dimension
-        SOM_Algorithm som2 = new SOM_Algorithm(10, 10, 64);  // Another SOM instance for the second fold
-
-        // Test on Dataset 1 (Train on Dataset 1, Test on Dataset 2)
-        System.out.println("Testing on Dataset 1 (Train on Dataset 1, Test on Dataset 2):");
-        som1.train(trainData1, 10000);  // Train on Dataset 1 (10000 iterations for example)
-        int[][] nodeLabels1 = som1.assignLabelsToNodes(trainData1, trainLabels1);  // Assign labels based on training data
-        double fold1Accuracy = som1.test(trainData2, trainLabels2, nodeLabels1);  // Test on Dataset 2
-        System.out.printf("Fold 1 Accuracy: %.2f%%", fold1Accuracy);
-
-        // Test on Dataset 2 (Train on Dataset 2, Test on Dataset 1)
-        System.out.println("\n\nTesting on Dataset 2 (Train on Dataset 2, Test on Dataset 1):");
-        som2.train(trainData2, 10000);  // Train on Dataset 2 (10000 iterations for example)
-        int[][] nodeLabels2 = som2.assignLabelsToNodes(trainData2, trainLabels2);  // Assign labels based on training data
-        double fold2Accuracy = som2.test(trainData1, trainLabels1, nodeLabels2);  // Test on Dataset 1
-        System.out.printf("Fold 2 Accuracy: %.2f%%\n", fold2Accuracy);
-
-        // List out the results for both folds
-        System.out.println("\nAlgorithm: Self-Organizing Map");
-        System.out.println("Summary of Results:");
-        System.out.printf("Fold 1 Accuracy: %.2f%%", fold1Accuracy);
-        System.out.printf("\nFold 2 Accuracy: %.2f%%", fold2Accuracy);
-    }
-	
-    private int gridWidth;
-    private int gridHeight;
-    private int inputDim;
-    private double[][][] weights;
-    private double learningRate;
-    private double neighborhoodRadius;
-
-    public SOM_Algorithm(int gridWidth, int gridHeight, int inputDim) {
-        this.gridWidth = gridWidth;
-        this.gridHeight = gridHeight;
-        this.inputDim = inputDim;
-        this.weights = new double[gridWidth][gridHeight][inputDim];
-        this.learningRate = 0.3;
-        this.neighborhoodRadius = Math.max(gridWidth, gridHeight) / 2.0;
-    }
-
-    private void initializeWeights() {
-        Random rand = new Random();
-        for (int i = 0; i < gridWidth; i++) {
-            for (int j = 0; j < gridHeight; j++) {
-                for (int k = 0; k < inputDim; k++) {
-                    weights[i][j][k] = rand.nextDouble();  // Initialize weights randomly
-                }
-            }
-        }
-    }
-
-    private double euclideanDistance(double[] input, double[] weights) {
-        double sum = 0;
-        for (int i = 0; i < input.length; i++) {
-            sum += Math.pow(input[i] - weights[i], 2);
-        }
-        return Math.sqrt(sum);
-    }
-
-    private int[] findBMU(double[] input) {
-        int[] bmu = new int[2];
-        double minDistance = Double.MAX_VALUE;
-        for (int i = 0; i < gridWidth; i++) {
-            for (int j = 0; j < gridHeight; j++) {
-                double distance = euclideanDistance(input, weights[i][j]);
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    bmu[0] = i;
-                    bmu[1] = j;
-                }
-            }
-        }
-        return bmu;
-    }
-
-    private void updateWeights(double[] input, int bmuX, int bmuY, double learningRate, double radius) {
-        for (int i = 0; i < gridWidth; i++) {
-            for (int j = 0; j < gridHeight; j++) {
-                double distance = Math.sqrt(Math.pow(bmuX - i, 2) + Math.pow(bmuY - j, 2));
-                if (distance < radius) {
-                    double influence = Math.exp(-distance / (2 * Math.pow(radius, 2)));
-                    for (int k = 0; k < inputDim; k++) {
-                        weights[i][j][k] += influence * learningRate * (input[k] - weights[i][j][k]);
-                    }
-                }
-            }
-        }
-    }
-
-    private void train(double[][] data, int numIterations) {
-        initializeWeights();  // Initialize weights using the data
-
-        // Train the SOM
-        for (int iter = 0; iter < numIterations; iter++) {
-            Random rand = new Random();
-            double[] input = data[rand.nextInt(data.length)];  // Randomly pick a training sample
-
-            // Ensure that input size matches weight size
-            if (input.length != inputDim) {
-                throw new IllegalArgumentException("Input dimension mismatch: expected " + inputDim + " but got " + input.length);
-            }
-
-            int[] bmu = findBMU(input);  // Find the Best Matching Unit
-            updateWeights(input, bmu[0], bmu[1], learningRate, neighborhoodRadius);  // Update the SOM weights
-
-            // Slowly decay learning rate and neighborhood radius
-            learningRate = learningRate * (1 - (double) iter / numIterations);
-            neighborhoodRadius = Math.max(1, neighborhoodRadius * (1 - (double) iter / numIterations));
-        }
-    }
-
-    public double test(double[][] testData, int[] testLabels, int[][] nodeLabels) {
-        int correct = 0;
-        int[][] confusionMatrix = new int[10][10]; // 10 classes (digits 0-9)
-
-        for (int i = 0; i < testData.length; i++) {
-            int[] bmu = findBMU(testData[i]); // Find the BMU for the test data
-            int predictedLabel = nodeLabels[bmu[0]][bmu[1]]; // Get the predicted label for the BMU
-            int actualLabel = testLabels[i]; // Actual label
-
-            // Update confusion matrix
-            confusionMatrix[actualLabel][predictedLabel]++;
-
-            if (predictedLabel == actualLabel) { // Compare with the actual label
-                correct++;
-            }
-        }
-
-        // Print Confusion Matrix with labels 0-9
-        System.out.println("Confusion Matrix:");
-        System.out.print("       ");
-        for (int i = 0; i < 10; i++) {
-            System.out.printf("%7d", i); // Print column labels
-        }
-        System.out.println();
-        for (int i = 0; i < 10; i++) {
-            System.out.printf("%7d", i); // Print row labels
-            for (int j = 0; j < 10; j++) {
-                System.out.printf("%7d", confusionMatrix[i][j]);
-            }
-            System.out.println();
-        }
-
-        return (double) correct / testData.length * 100; // Return accuracy as percentage
-    }
-
-    private int[][] assignLabelsToNodes(double[][] data, int[] labels) {
-        // Create a 2D array to store the label of each node in the SOM grid
-        int[][] nodeLabels = new int[gridWidth][gridHeight];
-
-        // Initialize the count of labels per node (for majority vote)
-        int[][][] labelCount = new int[gridWidth][gridHeight][10]; // Assuming 10 possible labels
-
-        // Map each training sample to the corresponding BMU and update label count
-        for (int i = 0; i < data.length; i++) {
-            double[] input = data[i];
-            int label = labels[i];
-            int[] bmu = findBMU(input);  // Find the BMU for this input
-            labelCount[bmu[0]][bmu[1]][label]++;  // Increment the count for the corresponding label
-        }
-
-        // Assign the most frequent label to each node in the grid
-        for (int i = 0; i < gridWidth; i++) {
-            for (int j = 0; j < gridHeight; j++) {
-                int maxCount = -1;
-                int assignedLabel = -1;
-                for (int l = 0; l < 10; l++) {
-                    if (labelCount[i][j][l] > maxCount) {
-                        maxCount = labelCount[i][j][l];
-                        assignedLabel = l;
-                    }
-                }
-                nodeLabels[i][j] = assignedLabel;  // Assign the label to the node
-            }
-        }
-
-        return nodeLabels;
-    }
-
-    public static double[][] loadData(String filePath) throws FileNotFoundException {
-        List<double[]> data = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            boolean isHeader = true;  // Flag to skip the header row
-            while ((line = br.readLine()) != null) {
-                if (isHeader) {
-                    isHeader = false;  // Skip the first row (header)
-                    continue;
-                }
-
-                // Split the line by commas
-                String[] values = line.split(",");
-
-                // Check if the row has 65 columns (64 features and 1 label)
-                if (values.length != 65) {
-                    System.out.println("Warning: Row with incorrect number of features, expected 65.");
-                    continue;  // Skip rows with incorrect number of columns
-                }
-
-                // Create an array for the 64 features (ignore the label column)
-                double[] features = new double[64];
-                for (int i = 0; i < 64; i++) {
-                    features[i] = Double.parseDouble(values[i]);  // Use the first 64 columns as features
-                }
-
-                // Add the features to the data list
-                data.add(features);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return data.toArray(new double[data.size()][]);
-    }
-
-    // Helper function to load labels
-    private int[] loadLabels(String filePath) throws FileNotFoundException {
-        List<Integer> labels = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            boolean isHeader = true;
-            while ((line = br.readLine()) != null) {
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
-                String[] values = line.split(",");
-                int label = Integer.parseInt(values[64]);  // Assuming label is in the last column
-                labels.add(label);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return labels.stream().mapToInt(i -> i).toArray();
-    }
-}
+package machine_learning_algorithms;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SOM_Algorithm implements Classifier {
+	
+    /**
+     * This Class runs the Self-Organizing Map Algorithm with training and test data sets.
+     * Training is either the classic online rule (one random sample per step) or batch SOM, where
+     * every epoch maps the whole training set and moves each node to the neighbourhood-weighted
+     * mean of the samples, in parallel over shards of the data.
+     *
+     * With the "local" BMU search, the second half of training only searches a window around each
+     * sample's previous BMU, and lookups after training go coarse-to-fine: a summary map holding the
+     * mean vector of each block of nodes picks the closest blocks, and only their nodes are searched.
+     * Both are approximate; every Audit_Interval-th search is repeated exhaustively and mismatches
+     * are counted.
+     *
+     * partialFit keeps training on a stream of new labelled samples with the online rule. Its
+     * learning rate and radius halve every SOM_Stream_Half_Life samples on one schedule that runs on
+     * across calls (a fitted or loaded map starts where the radius reaches one node), and the label
+     * counts of the nodes are updated per sample instead of remapping all the data.
+     */
+
+    public static final String Model_Kind = "som";
+
+    private static final Metrics.Counter Training_Searches =
+            Metrics.counter("ml_som_bmu_searches_total", "SOM best matching unit searches", "stage", "training");
+    private static final Metrics.Counter Lookup_Searches =
+            Metrics.counter("ml_som_bmu_searches_total", "SOM best matching unit searches", "stage", "lookup");
+    private static final Metrics.Counter Neighbourhood_Updates =
+            Metrics.counter("ml_som_neighbourhood_updates_total", "SOM node weight vectors moved towards a sample or batch mean");
+    private static final Metrics.Histogram Latency = Metrics.histogram("ml_prediction_latency_seconds",
+            "Latency of one prediction (for batches, the per-row share of each batch)", "algorithm", Model_Kind);
+	
+	public void run() throws IOException {
+        // Load Dataset 1 and Dataset 2 (features and labels come from a single pass over each file)
+        Dataset[] datasets = Dataset.loadAll(AlgorithmRunner.Dataset_1, AlgorithmRunner.Dataset_2);
+        Dataset trainData1 = datasets[0];
+        Dataset trainData2 = datasets[1];
+
+        // Initialize the SOM algorithm with appropriate grid size and input dimension (e.g., 64 for 64 features)
+        SOM_Algorithm som1 = new SOM_Algorithm(10, 10, trainData1.dim());  // Example grid size and input dimension
+        SOM_Algorithm som2 = new SOM_Algorithm(10, 10, trainData2.dim());  // Another SOM instance for the second fold
+
+        // Test on Dataset 1 (Train on Dataset 1, Test on Dataset 2)
+        System.out.println("Testing on Dataset 1 (Train on Dataset 1, Test on Dataset 2):");
+        som1.train(trainData1);  // Train on Dataset 1
+        int[][] nodeLabels1 = som1.assignLabelsToNodes(trainData1);  // Assign labels based on training data
+        double fold1Accuracy = som1.test(trainData2, nodeLabels1);  // Test on Dataset 2
+        som1.printSearchStatistics();
+        System.out.printf("Fold 1 Accuracy: %.2f%%", fold1Accuracy);
+
+        // Test on Dataset 2 (Train on Dataset 2, Test on Dataset 1)
+        System.out.println("\n\nTesting on Dataset 2 (Train on Dataset 2, Test on Dataset 1):");
+        som2.train(trainData2);  // Train on Dataset 2
+        int[][] nodeLabels2 = som2.assignLabelsToNodes(trainData2);  // Assign labels based on training data
+        double fold2Accuracy = som2.test(trainData1, nodeLabels2);  // Test on Dataset 1
+        som2.printSearchStatistics();
+        System.out.printf("Fold 2 Accuracy: %.2f%%\n", fold2Accuracy);
+
+        // List out the results for both folds
+        System.out.println("\nAlgorithm: Self-Organizing Map");
+        System.out.println("Summary of Results:");
+        System.out.printf("Fold 1 Accuracy: %.2f%%", fold1Accuracy);
+        System.out.printf("\nFold 2 Accuracy: %.2f%%", fold2Accuracy);
+    }
+	
+    private int gridWidth;
+    private int gridHeight;
+    private int inputDim;
+    private int nodes;
+    private float[] codebook; // Node i * gridHeight + j owns codebook[node * inputDim, (node + 1) * inputDim)
+    private double learningRate;
+    private double neighborhoodRadius;
+    private final ForkJoinPool pool;
+    private final SplittableRandom random = new SplittableRandom(SEED);
+
+    // Neighbourhood influence by grid offset, influence[|dx| * gridHeight + |dy|], valid for influenceRadius
+    // and the rule of influenceOnline (the batch and online rules differ at the same radius)
+    private double[] influence;
+    private double influenceRadius = Double.NaN;
+    private boolean influenceOnline;
+
+    // Localised and coarse-to-fine BMU search
+    private final boolean localSearch;
+    private int[] previousBmu; // Last BMU of every training row
+    private final int blockSize;
+    private int blocksX;
+    private int blocksY;
+    private float[] summary; // Mean codebook vector of every block of blockSize x blockSize nodes
+    private ThreadLocal<NeighbourHeap> closestBlocks;
+    private final LongAdder windowChecks = new LongAdder();
+    private final LongAdder windowMismatches = new LongAdder();
+    private final AtomicLong lookups = new AtomicLong();
+    private final LongAdder coarseChecks = new LongAdder();
+    private final LongAdder coarseMismatches = new LongAdder();
+
+    // Label of every node and the label names, set by fit or load
+    private int[][] nodeLabels;
+    private String[] labelNames;
+
+    // Streaming state: samples of each label mapped to each node, samples used and nodes seeded so far
+    private int[][] labelCounts;
+    private long streamSteps;
+    private int seededNodes;
+
+    // Every n-th approximate search is checked against the exhaustive one
+    private static final int Audit_Interval = 16;
+
+    // Rows per batch training shard; fixed so the reduction order, and the result, never depends on the thread count
+    private static final int SHARD_ROWS = 256;
+    private static final long SEED = 42;
+    private static final double START_RATE = 0.3; // Learning rate at the start of online and streaming training
+
+    // Streaming: a node's label counts are halved once they reach this total, so old samples fade out
+    private static final int LABEL_MEMORY = 1024;
+    // Streaming with local search: samples between two refreshes of the coarse summary
+    private static final int SUMMARY_REFRESH = 1024;
+
+    public SOM_Algorithm(int gridWidth, int gridHeight, int inputDim) {
+        this(gridWidth, gridHeight, inputDim, WorkerPool.shared());
+    }
+
+    // Batch training runs on the given pool
+    public SOM_Algorithm(int gridWidth, int gridHeight, int inputDim, ForkJoinPool pool) {
+        this(gridWidth, gridHeight, inputDim, pool, AlgorithmRunner.SOM_Bmu_Search);
+    }
+
+    // With the BMU search given instead of taken from SOM_Bmu_Search: exhaustive or local
+    SOM_Algorithm(int gridWidth, int gridHeight, int inputDim, ForkJoinPool pool, String bmuSearch) {
+        this.pool = pool;
+        this.localSearch = bmuSearch.equals("local");
+        if (!localSearch && !bmuSearch.equals("exhaustive")) {
+            throw new IllegalArgumentException("Unknown BMU search '" + bmuSearch + "'");
+        }
+        this.blockSize = Math.max(1, AlgorithmRunner.SOM_Coarse_Block);
+        allocate(gridWidth, gridHeight, inputDim);
+    }
+
+    // Sizes the codebook and every table that depends on the grid, so a loaded model can change it
+    private void allocate(int gridWidth, int gridHeight, int inputDim) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.inputDim = inputDim;
+        this.nodes = gridWidth * gridHeight;
+        this.codebook = new float[nodes * inputDim];
+        this.influence = new double[nodes];
+        this.influenceRadius = Double.NaN;
+        this.previousBmu = null;
+        this.blocksX = (gridWidth + blockSize - 1) / blockSize;
+        this.blocksY = (gridHeight + blockSize - 1) / blockSize;
+        this.summary = new float[blocksX * blocksY * inputDim];
+        int candidates = Math.max(1, Math.min(AlgorithmRunner.SOM_Coarse_Candidates, blocksX * blocksY));
+        this.closestBlocks = ThreadLocal.withInitial(() -> new NeighbourHeap(candidates));
+        this.learningRate = START_RATE;
+        this.neighborhoodRadius = Math.max(gridWidth, gridHeight) / 2.0;
+        this.labelCounts = null;
+        this.streamSteps = 0;
+        this.seededNodes = 0;
+    }
+
+    private void initializeWeights() {
+        for (int i = 0; i < codebook.length; i++) {
+            codebook[i] = (float) random.nextDouble();  // Initialize weights randomly
+        }
+    }
+
+    // Best matching unit as a flat node index i * gridHeight + j; squared distances rank nodes like distances.
+    // The shared scalar kernel is used (no Vector API, see DistanceKernels): a four-accumulator float
+    // variant was only about 10% faster on 64 features
+    int findBMU(float[] input, int offset) {
+        int bmu = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int node = 0; node < nodes; node++) {
+            double distance = DistanceKernels.squaredEuclidean(input, offset, codebook, node * inputDim, inputDim);
+            if (distance < minDistance) {
+                minDistance = distance;
+                bmu = node;
+            }
+        }
+        return bmu;
+    }
+
+    // Best matching unit among the nodes within window of the center node (both axes)
+    private int findBMUInWindow(float[] input, int offset, int center, int window) {
+        int centerX = center / gridHeight;
+        int centerY = center % gridHeight;
+        int bmu = center;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = Math.max(0, centerX - window); i <= Math.min(gridWidth - 1, centerX + window); i++) {
+            for (int j = Math.max(0, centerY - window); j <= Math.min(gridHeight - 1, centerY + window); j++) {
+                int node = i * gridHeight + j;
+                double distance = DistanceKernels.squaredEuclidean(input, offset, codebook, node * inputDim, inputDim);
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    bmu = node;
+                }
+            }
+        }
+        return bmu;
+    }
+
+    // BMU of a training row, from its previous BMU's window once windowed search is on
+    private int trainingBMU(float[] features, int row, int offset, boolean windowed) {
+        if (Metrics.Enabled) {
+            Training_Searches.increment();
+        }
+        if (!windowed) {
+            return previousBmu[row] = findBMU(features, offset);
+        }
+        int bmu = findBMUInWindow(features, offset, previousBmu[row], AlgorithmRunner.SOM_Bmu_Window);
+        if (row % Audit_Interval == 0) {
+            windowChecks.increment();
+            if (bmu != findBMU(features, offset)) {
+                windowMismatches.increment();
+            }
+        }
+        return previousBmu[row] = bmu;
+    }
+
+    // BMU lookup after training: coarse-to-fine with local search, exhaustive otherwise
+    public int lookup(float[] input, int offset) {
+        if (Metrics.Enabled) {
+            Lookup_Searches.increment();
+        }
+        if (!localSearch) {
+            return findBMU(input, offset);
+        }
+        NeighbourHeap blocks = closestBlocks.get();
+        blocks.clear();
+        for (int block = 0; block < blocksX * blocksY; block++) {
+            blocks.offer(DistanceKernels.squaredEuclidean(input, offset, summary, block * inputDim, inputDim), block);
+        }
+        int bmu = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int b = 0; b < blocks.size(); b++) {
+            int block = blocks.row(b);
+            int startX = block / blocksY * blockSize;
+            int startY = block % blocksY * blockSize;
+            for (int i = startX; i < Math.min(gridWidth, startX + blockSize); i++) {
+                for (int j = startY; j < Math.min(gridHeight, startY + blockSize); j++) {
+                    int node = i * gridHeight + j;
+                    double distance = DistanceKernels.squaredEuclidean(input, offset, codebook, node * inputDim, inputDim);
+                    if (distance < minDistance || (distance == minDistance && node < bmu)) {
+                        minDistance = distance;
+                        bmu = node;
+                    }
+                }
+            }
+        }
+        if (lookups.incrementAndGet() % Audit_Interval == 0) {
+            coarseChecks.increment();
+            if (bmu != findBMU(input, offset)) {
+                coarseMismatches.increment();
+            }
+        }
+        return bmu;
+    }
+
+    // Mean codebook vector of every block, the coarse level of lookup
+    private void buildSummary() {
+        Arrays.fill(summary, 0);
+        for (int node = 0; node < nodes; node++) {
+            int block = (node / gridHeight / blockSize) * blocksY + (node % gridHeight) / blockSize;
+            for (int k = 0; k < inputDim; k++) {
+                summary[block * inputDim + k] += codebook[node * inputDim + k];
+            }
+        }
+        for (int block = 0; block < blocksX * blocksY; block++) {
+            int width = Math.min(blockSize, gridWidth - block / blocksY * blockSize);
+            int height = Math.min(blockSize, gridHeight - block % blocksY * blockSize);
+            for (int k = 0; k < inputDim; k++) {
+                summary[block * inputDim + k] /= width * height;
+            }
+        }
+    }
+
+    // Prints how often the approximate searches disagreed with the exhaustive one
+    public void printSearchStatistics() {
+        String statistics = statistics(null);
+        if (statistics != null) {
+            System.out.println(statistics);
+        }
+    }
+
+    // How often the approximate searches disagreed with the exhaustive one so far, null for exhaustive search
+    @Override
+    public String statistics(Dataset test) {
+        if (!localSearch) {
+            return null;
+        }
+        return String.format("BMU search: windowed training search differed on %d of %d audited rows (%.2f%%), "
+                        + "coarse-to-fine lookup on %d of %d (%.2f%%)",
+                windowMismatches.sum(), windowChecks.sum(), 100.0 * windowMismatches.sum() / Math.max(1, windowChecks.sum()),
+                coarseMismatches.sum(), coarseChecks.sum(), 100.0 * coarseMismatches.sum() / Math.max(1, coarseChecks.sum()));
+    }
+
+    // Fills the influence table for a radius and rule; a no-op while both stay the same
+    private void updateInfluence(double radius, boolean online) {
+        if (radius == influenceRadius && online == influenceOnline) {
+            return;
+        }
+        influenceRadius = radius;
+        influenceOnline = online;
+        for (int dx = 0; dx < gridWidth; dx++) {
+            for (int dy = 0; dy < gridHeight; dy++) {
+                int squared = dx * dx + dy * dy;
+                if (online) {
+                    // Online rule: exp(-d / 2r^2) inside the radius, nothing outside
+                    double distance = Math.sqrt(squared);
+                    influence[dx * gridHeight + dy] = distance < radius ? Math.exp(-distance / (2 * radius * radius)) : 0;
+                } else {
+                    influence[dx * gridHeight + dy] = Math.exp(-squared / (2 * radius * radius));
+                }
+            }
+        }
+    }
+
+    private void updateWeights(float[] input, int offset, int bmu, double learningRate, double radius) {
+        updateInfluence(radius, true);
+        int bmuX = bmu / gridHeight;
+        int bmuY = bmu % gridHeight;
+
+        // Only nodes within the radius move, so only the window around the BMU is visited
+        int reach = (int) Math.ceil(radius);
+        int updated = 0;
+        for (int i = Math.max(0, bmuX - reach); i <= Math.min(gridWidth - 1, bmuX + reach); i++) {
+            for (int j = Math.max(0, bmuY - reach); j <= Math.min(gridHeight - 1, bmuY + reach); j++) {
+                double rate = influence[Math.abs(bmuX - i) * gridHeight + Math.abs(bmuY - j)] * learningRate;
+                if (rate == 0) {
+                    continue;
+                }
+                int base = (i * gridHeight + j) * inputDim;
+                for (int k = 0; k < inputDim; k++) {
+                    codebook[base + k] += (float) (rate * (input[offset + k] - codebook[base + k]));
+                }
+                updated++;
+            }
+        }
+        if (Metrics.Enabled) {
+            Neighbourhood_Updates.add(updated);
+        }
+    }
+
+    // Trains the map, then labels every node with the majority label of the rows mapped to it
+    @Override
+    public void fit(Dataset training) {
+        train(training);
+        labelCounts = countLabels(training);
+        nodeLabels = majorityLabels(labelCounts);
+        labelNames = training.labelNames();
+        streamSteps = settledSteps();
+        seededNodes = nodes;
+    }
+
+    // Streaming training: one online update per sample for as long as the iterator has samples, which may
+    // be forever. Labels not seen before are added. Returns the number of samples used
+    public long partialFit(Iterator<Sample> samples) {
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "partialFit");
+        long used = 0;
+        try {
+            startStream();
+            while (samples.hasNext()) {
+                Sample sample = samples.next();
+                float[] features = sample.features();
+                if (features.length != inputDim) {
+                    throw new IllegalArgumentException("Input dimension mismatch: expected " + inputDim + " but got " + features.length);
+                }
+                int label = labelId(sample.label());
+                int bmu;
+                if (seededNodes < nodes) {
+                    // A new map starts from its first samples, one node each; the first one fills every node
+                    if (seededNodes == 0) {
+                        for (int node = 0; node < nodes; node++) {
+                            System.arraycopy(features, 0, codebook, node * inputDim, inputDim);
+                            nodeLabels[node / gridHeight][node % gridHeight] = label;
+                        }
+                    }
+                    bmu = seededNodes++;
+                    System.arraycopy(features, 0, codebook, bmu * inputDim, inputDim);
+                } else {
+                    double decay = Math.pow(0.5, (double) streamSteps / AlgorithmRunner.SOM_Stream_Half_Life);
+                    double rate = Math.max(AlgorithmRunner.SOM_Stream_Min_Rate, START_RATE * decay);
+                    // Radius in steps of 1/16 node, so the influence table is not refilled for every sample
+                    double radius = Math.max(1, Math.round(startRadius() * decay * 16) / 16.0);
+                    if (Metrics.Enabled) {
+                        Training_Searches.increment();
+                    }
+                    bmu = findBMU(features, 0);
+                    updateWeights(features, 0, bmu, rate, radius);
+                    streamSteps++;
+                }
+                countLabel(bmu, label);
+                used++;
+                if (localSearch && used % SUMMARY_REFRESH == 0) {
+                    buildSummary();
+                }
+            }
+        } finally {
+            buildSummary();
+            phase.close();
+        }
+        return used;
+    }
+
+    // Streaming state of an untrained, fitted or loaded map; a loaded map has no label counts, so each
+    // node's stored label counts as one sample
+    private void startStream() {
+        if (labelNames == null) {
+            labelNames = new String[0];
+        }
+        if (nodeLabels == null) {
+            nodeLabels = new int[gridWidth][gridHeight];
+        }
+        if (labelCounts == null) {
+            labelCounts = new int[nodes][labelNames.length];
+            if (seededNodes == nodes) {
+                for (int node = 0; node < nodes; node++) {
+                    labelCounts[node][nodeLabels[node / gridHeight][node % gridHeight]] = 1;
+                }
+            }
+        }
+    }
+
+    private int labelId(String label) {
+        for (int i = 0; i < labelNames.length; i++) {
+            if (labelNames[i].equals(label)) {
+                return i;
+            }
+        }
+        labelNames = Arrays.copyOf(labelNames, labelNames.length + 1);
+        labelNames[labelNames.length - 1] = label;
+        return labelNames.length - 1;
+    }
+
+    // Counts a sample for the node and relabels the node when another label has overtaken its own
+    private void countLabel(int node, int label) {
+        int[] counts = labelCounts[node];
+        if (label >= counts.length) {
+            counts = labelCounts[node] = Arrays.copyOf(counts, labelNames.length);
+        }
+        counts[label]++;
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        if (total >= LABEL_MEMORY) {
+            for (int l = 0; l < counts.length; l++) {
+                counts[l] /= 2;
+            }
+        }
+        int x = node / gridHeight;
+        int y = node % gridHeight;
+        if (counts[label] > counts[nodeLabels[x][y]]) {
+            nodeLabels[x][y] = label;
+        }
+    }
+
+    // Radius the training schedules start from: half the grid, at least one node
+    private double startRadius() {
+        return Math.max(1, Math.max(gridWidth, gridHeight) / 2.0);
+    }
+
+    // Stream position at which the radius has shrunk to one node, where a fitted map continues
+    private long settledSteps() {
+        return (long) Math.ceil(AlgorithmRunner.SOM_Stream_Half_Life * Math.log(startRadius()) / Math.log(2));
+    }
+
+    // The label of the BMU
+    @Override
+    public int predict(float[] features, int offset) {
+        if (nodeLabels == null) {
+            throw new IllegalStateException("fit or load must be called first");
+        }
+        long start = Metrics.start();
+        int bmu = lookup(features, offset);
+        if (Metrics.Enabled) {
+            Latency.recordSince(start);
+        }
+        return nodeLabels[bmu / gridHeight][bmu % gridHeight];
+    }
+
+    @Override
+    public int[] predictBatch(Dataset queries) {
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "predict");
+        try {
+            return Classifier.super.predictBatch(queries);
+        } finally {
+            phase.close();
+        }
+    }
+
+    // Logs the squared distance between each row and its BMU (its quantization error) as the score
+    @Override
+    public int[] predictBatch(Dataset queries, PredictionLog.FoldLog log) {
+        if (nodeLabels == null) {
+            throw new IllegalStateException("fit or load must be called first");
+        }
+        int[] predictions = new int[queries.rows()];
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "predict");
+        try {
+            for (int row = 0; row < queries.rows(); row++) {
+                long start = System.nanoTime();
+                int bmu = lookup(queries.features(), queries.offset(row));
+                predictions[row] = nodeLabels[bmu / gridHeight][bmu % gridHeight];
+                long latency = System.nanoTime() - start;
+                if (Metrics.Enabled) {
+                    Latency.record(latency);
+                }
+                double error = DistanceKernels.squaredEuclidean(queries.features(), queries.offset(row), codebook, bmu * inputDim, inputDim);
+                log.record(row, queries.label(row), predictions[row], (float) error, latency);
+            }
+        } finally {
+            phase.close();
+        }
+        return predictions;
+    }
+
+    @Override
+    public String[] labelNames() {
+        return labelNames;
+    }
+
+    @Override
+    public int dim() {
+        return inputDim;
+    }
+
+    // Weights of node i * gridHeight + j at [node * dim(), (node + 1) * dim()), live and not a copy
+    float[] codebook() {
+        return codebook;
+    }
+
+    // Grid size, label names, the codebook and the node labels; the block summary is rebuilt on load
+    @Override
+    public void save(Path path) throws IOException {
+        if (nodeLabels == null) {
+            throw new IllegalStateException("fit must be called before save");
+        }
+        int[] labels = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            labels[node] = nodeLabels[node / gridHeight][node % gridHeight];
+        }
+        ModelFile.create(Model_Kind).putInt(gridWidth).putInt(gridHeight).putInt(inputDim).putStrings(labelNames)
+                .putFloats(codebook).putInts(labels).save(path);
+    }
+
+    @Override
+    public void load(Path path) throws IOException {
+        ModelFile.Reader model = ModelFile.open(path, Model_Kind);
+        int width = model.getInt();
+        int height = model.getInt();
+        int dim = model.getInt();
+        String[] names = model.getStrings();
+        float[] weights = model.getFloats();
+        int[] labels = model.getInts();
+        if (width <= 0 || height <= 0 || dim <= 0 || weights.length != (long) width * height * dim
+                || labels.length != (long) width * height) {
+            throw model.corrupt("grid and array sizes disagree");
+        }
+        for (int label : labels) {
+            if (label < 0 || label >= names.length) {
+                throw model.corrupt("node label " + label + " outside the dictionary of " + names.length);
+            }
+        }
+        allocate(width, height, dim);
+        System.arraycopy(weights, 0, codebook, 0, weights.length);
+        nodeLabels = new int[width][height];
+        for (int node = 0; node < nodes; node++) {
+            nodeLabels[node / height][node % height] = labels[node];
+        }
+        labelNames = names;
+        streamSteps = settledSteps();
+        seededNodes = nodes;
+        buildSummary();
+    }
+
+    // Trains with the mode chosen in AlgorithmRunner
+    public void train(Dataset data) {
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "fit");
+        try {
+            switch (AlgorithmRunner.SOM_Training) {
+                case "batch":
+                    trainBatch(data, AlgorithmRunner.SOM_Epochs);
+                    break;
+                case "online":
+                    train(data, AlgorithmRunner.SOM_Iterations);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown SOM training mode '" + AlgorithmRunner.SOM_Training + "'");
+            }
+        } finally {
+            phase.close();
+        }
+    }
+
+    // Batch SOM: each epoch every node moves to the neighbourhood-weighted mean of all samples
+    public void trainBatch(Dataset data, int epochs) {
+        if (data.dim() != inputDim) {
+            throw new IllegalArgumentException("Input dimension mismatch: expected " + inputDim + " but got " + data.dim());
+        }
+
+        previousBmu = new int[data.rows()];
+
+        // Start from randomly chosen training samples (seeded, so training is reproducible)
+        for (int node = 0; node < nodes; node++) {
+            System.arraycopy(data.features(), data.offset(random.nextInt(data.rows())), codebook, node * inputDim, inputDim);
+        }
+
+        // The radius shrinks geometrically from half the grid to one node
+        double startRadius = startRadius();
+        double[] numerator = new double[inputDim];
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            double radius = epochs == 1 ? 1 : startRadius * Math.pow(1 / startRadius, (double) epoch / (epochs - 1));
+            updateInfluence(radius, false);
+
+            // Per shard: the sum and count of the samples mapped to each node
+            // In the second half of training the map has settled and BMUs move little, so a window is searched
+            boolean windowed = localSearch && epoch > 0 && epoch >= epochs / 2;
+            BatchSums sums = pool.invoke(new BatchTask(data, 0, data.rows(), windowed));
+
+            // Each node takes the mean of all samples, weighted by the neighbourhood of their BMU
+            for (int node = 0; node < nodes; node++) {
+                int x = node / gridHeight;
+                int y = node % gridHeight;
+                Arrays.fill(numerator, 0);
+                double denominator = 0;
+                for (int bmu = 0; bmu < nodes; bmu++) {
+                    if (sums.counts[bmu] == 0) {
+                        continue;
+                    }
+                    double weight = influence[Math.abs(bmu / gridHeight - x) * gridHeight + Math.abs(bmu % gridHeight - y)];
+                    denominator += weight * sums.counts[bmu];
+                    int base = bmu * inputDim;
+                    for (int k = 0; k < inputDim; k++) {
+                        numerator[k] += weight * sums.sums[base + k];
+                    }
+                }
+                if (denominator > 0) {
+                    for (int k = 0; k < inputDim; k++) {
+                        codebook[node * inputDim + k] = (float) (numerator[k] / denominator);
+                    }
+                    if (Metrics.Enabled) {
+                        Neighbourhood_Updates.increment();
+                    }
+                }
+            }
+        }
+        buildSummary();
+    }
+
+    // Online SOM: one random sample per step, the learning rate and radius decaying as training goes on
+    void train(Dataset data, int numIterations) {
+        initializeWeights();  // Initialize weights using the data
+
+        // Ensure that input size matches weight size
+        if (data.dim() != inputDim) {
+            throw new IllegalArgumentException("Input dimension mismatch: expected " + inputDim + " but got " + data.dim());
+        }
+        previousBmu = new int[data.rows()];
+        Arrays.fill(previousBmu, -1);
+
+        // Train the SOM
+        for (int iter = 0; iter < numIterations; iter++) {
+            int row = random.nextInt(data.rows());
+            int offset = data.offset(row);  // Randomly pick a training sample
+
+            // Find the Best Matching Unit, near the sample's previous one in the second half of training
+            boolean windowed = localSearch && iter >= numIterations / 2 && previousBmu[row] >= 0;
+            int bmu = trainingBMU(data.features(), row, offset, windowed);
+            updateWeights(data.features(), offset, bmu, learningRate, neighborhoodRadius);  // Update the SOM weights
+
+            // Slowly decay learning rate and neighborhood radius
+            learningRate = learningRate * (1 - (double) iter / numIterations);
+            neighborhoodRadius = Math.max(1, neighborhoodRadius * (1 - (double) iter / numIterations));
+        }
+        buildSummary();
+    }
+
+    public double test(Dataset testData, int[][] nodeLabels) {
+        int correct = 0;
+        int labelCount = testData.labelCount();
+        int[][] confusionMatrix = new int[labelCount][labelCount]; // One row and column per class (digits 0-9)
+
+        Metrics.Phase phase = Metrics.phase(Model_Kind, "predict");
+        for (int i = 0; i < testData.rows(); i++) {
+            long start = Metrics.start();
+            int bmu = lookup(testData.features(), testData.offset(i)); // Find the BMU for the test data
+            int predictedLabel = nodeLabels[bmu / gridHeight][bmu % gridHeight]; // Get the predicted label for the BMU
+            if (Metrics.Enabled) {
+                Latency.recordSince(start);
+            }
+            int actualLabel = testData.label(i); // Actual label
+
+            // Update confusion matrix
+            confusionMatrix[actualLabel][predictedLabel]++;
+
+            if (predictedLabel == actualLabel) { // Compare with the actual label
+                correct++;
+            }
+        }
+        phase.close();
+
+        // Print Confusion Matrix with the label names
+        System.out.println("Confusion Matrix:");
+        System.out.print("       ");
+        for (int i = 0; i < labelCount; i++) {
+            System.out.printf("%7s", testData.labelName(i)); // Print column labels
+        }
+        System.out.println();
+        for (int i = 0; i < labelCount; i++) {
+            System.out.printf("%7s", testData.labelName(i)); // Print row labels
+            for (int j = 0; j < labelCount; j++) {
+                System.out.printf("%7d", confusionMatrix[i][j]);
+            }
+            System.out.println();
+        }
+
+        return (double) correct / testData.rows() * 100; // Return accuracy as percentage
+    }
+
+    private int[][] assignLabelsToNodes(Dataset data) {
+        return majorityLabels(countLabels(data));
+    }
+
+    // Count of each label among the samples mapped to each node, by flat node index
+    private int[][] countLabels(Dataset data) {
+        int[][] labelCount = new int[nodes][data.labelCount()];
+
+        // Map each training sample to the corresponding BMU and update label count
+        for (int i = 0; i < data.rows(); i++) {
+            int label = data.label(i);
+            int bmu = lookup(data.features(), data.offset(i));  // Find the BMU for this input
+            labelCount[bmu][label]++;  // Increment the count for the corresponding label
+        }
+        return labelCount;
+    }
+
+    // The most frequent label of every node in the grid (the first label for nodes without samples)
+    private int[][] majorityLabels(int[][] labelCount) {
+        int[][] nodeLabels = new int[gridWidth][gridHeight];
+        for (int i = 0; i < gridWidth; i++) {
+            for (int j = 0; j < gridHeight; j++) {
+                int[] counts = labelCount[i * gridHeight + j];
+                int maxCount = -1;
+                int assignedLabel = -1;
+                for (int l = 0; l < counts.length; l++) {
+                    if (counts[l] > maxCount) {
+                        maxCount = counts[l];
+                        assignedLabel = l;
+                    }
+                }
+                nodeLabels[i][j] = assignedLabel;  // Assign the label to the node
+            }
+        }
+        return nodeLabels;
+    }
+
+    // Per-node sample sums and counts of one shard of the training data
+    private static class BatchSums {
+        final double[] sums;
+        final int[] counts;
+
+        BatchSums(int nodes, int inputDim) {
+            this.sums = new double[nodes * inputDim];
+            this.counts = new int[nodes];
+        }
+
+        BatchSums merge(BatchSums other) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += other.sums[i];
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            return this;
+        }
+    }
+
+    // Fork-join task mapping the rows [start, end) to their BMUs, split into fixed shards
+    private class BatchTask extends RecursiveTask<BatchSums> {
+        private static final long serialVersionUID = 1L;
+
+        private final Dataset data;
+        private final int start;
+        private final int end;
+        private final boolean windowed;
+
+        BatchTask(Dataset data, int start, int end, boolean windowed) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.windowed = windowed;
+        }
+
+        @Override
+        protected BatchSums compute() {
+            if (end - start > SHARD_ROWS) {
+                // Split on shard boundaries, so the merge tree only depends on the row count
+                int middle = start + ((end - start + SHARD_ROWS - 1) / SHARD_ROWS + 1) / 2 * SHARD_ROWS;
+                BatchTask left = new BatchTask(data, start, middle, windowed);
+                left.fork();
+                BatchSums right = new BatchTask(data, middle, end, windowed).compute();
+                return left.join().merge(right);
+            }
+            BatchSums shard = new BatchSums(nodes, inputDim);
+            float[] features = data.features();
+            for (int row = start; row < end; row++) {
+                int offset = data.offset(row);
+                int bmu = trainingBMU(features, row, offset, windowed);
+                shard.counts[bmu]++;
+                for (int k = 0; k < inputDim; k++) {
+                    shard.sums[bmu * inputDim + k] += features[offset + k];
+                }
+            }
+            return shard;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package machine_learning_algorithms;
+
+public final class Sample {
+
+    /**
+     * This Class is one labelled row arriving after training, for the incremental paths
+     * (KNN_Algorithm.add, SOM_Algorithm.partialFit). The label is a name rather than an id,
+     * so a stream can bring labels the model has not seen yet.
+     */
+
+    private final float[] features;
+    private final String label;
+
+    public Sample(float[] features, String label) {
+        if (features == null || label == null) {
+            throw new IllegalArgumentException("A sample needs features and a label");
+        }
+        this.features = features;
+        this.label = label;
+    }
+
+    public float[] features() {
+        return features;
+    }
+
+    public String label() {
+        return label;
+    }
+}
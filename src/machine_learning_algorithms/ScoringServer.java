@@ -0,0 +1,402 @@
+package machine_learning_algorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ScoringServer {
+
+    /**
+     * This Class serves a trained model over HTTP on localhost, so digit vectors can be scored
+     * online instead of in offline folds.
+     *
+     *   POST /predict  one row per line, comma-separated features (extra trailing values, such as
+     *                  the label column of the data files, are ignored); answers one label per line
+     *   GET  /stats    requests, rows, batches, throughput and p50/p90/p99/p99.9 request latency as JSON
+     *   GET  /health   "ok"
+     *
+     * Every request runs on its own virtual thread on Java 21 and later, and on a fixed pool of
+     * platform threads otherwise; the virtual thread factory is looked up by reflection because the
+     * build targets release 11, where that API does not exist. Request
+     * threads only parse and wait: their rows are queued for one batcher thread, which coalesces
+     * concurrent requests into micro-batches of up to Server_Max_Batch rows, waiting at most
+     * Server_Max_Wait_Micros after the first one, and scores each batch with a single predictBatch
+     * call, so KNN's tiled search and C4.5's parallel batch prediction serve the online traffic too.
+     * A full queue answers 503 at once instead of letting the tail latency grow without bound.
+     *
+     * Usage: ScoringServer --model <file.model> [--train knn|c45|som|random] [--port n] [--max-batch n]
+     *        [--max-wait-micros n] [--threads n] [data files...]
+     * With --train, a new model is trained on the data files and saved to --model before serving.
+     */
+
+    private static final String USAGE = "Usage: ScoringServer --model <file.model> [--train knn|c45|som|random] [--port n]"
+            + " [--max-batch n] [--max-wait-micros n] [--threads n] [data files...]";
+    private static final int BACKLOG = 1024; // Connections the listening socket queues
+    private static final long IDLE_POLL_MILLIS = 100; // How often an idle batcher checks for shutdown
+
+    private final Classifier classifier; // Its label names are read per answer, a KNN model can add labels while serving
+    private final int dim;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Request> queue;
+    private final HttpServer server;
+    private final ExecutorService requestThreads;
+    private final Thread batcher;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    private Request carried; // Request that did not fit into the last batch, only touched by the batcher
+
+    private final Metrics.Histogram latency = Metrics.histogram("ml_server_request_latency_seconds",
+            "Time from reading a scoring request to sending its answer");
+    private final Metrics.Counter requests = Metrics.counter("ml_server_requests_total", "Scoring requests answered");
+    private final Metrics.Counter rows = Metrics.counter("ml_server_rows_total", "Rows scored by the scoring server");
+    private final Metrics.Counter batches = Metrics.counter("ml_server_batches_total", "predictBatch calls of the scoring server");
+    private final Metrics.Counter rejected = Metrics.counter("ml_server_rejected_total", "Scoring requests refused because the queue was full");
+
+    public ScoringServer(Classifier classifier, int port, int maxBatch, long maxWaitMicros, int threads) throws IOException {
+        this(classifier, port, maxBatch, maxWaitMicros, threads, AlgorithmRunner.Server_Queue_Capacity);
+    }
+
+    // Refuses requests with 503 while queueCapacity of them wait for a batch
+    ScoringServer(Classifier classifier, int port, int maxBatch, long maxWaitMicros, int threads, int queueCapacity) throws IOException {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Max batch must be at least 1 but was " + maxBatch);
+        }
+        this.classifier = classifier;
+        this.dim = classifier.dim();
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = Math.max(0, maxWaitMicros) * 1000;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.requestThreads = requestExecutor(threads);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "ok\n"));
+        server.setExecutor(requestThreads);
+        this.batcher = new Thread(this::batchLoop, "scoring-batcher");
+        batcher.setDaemon(true);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String model = null;
+        String train = null;
+        int port = AlgorithmRunner.Server_Port;
+        int maxBatch = AlgorithmRunner.Server_Max_Batch;
+        long maxWaitMicros = AlgorithmRunner.Server_Max_Wait_Micros;
+        int threads = AlgorithmRunner.Server_Threads;
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--")) {
+                    files.add(args[i]);
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i] + "\n" + USAGE);
+                }
+                String option = args[i];
+                String value = args[++i];
+                try {
+                    switch (option) {
+                        case "--model":
+                            model = value;
+                            break;
+                        case "--train":
+                            train = value;
+                            break;
+                        case "--port":
+                            port = Integer.parseInt(value);
+                            break;
+                        case "--max-batch":
+                            maxBatch = Integer.parseInt(value);
+                            break;
+                        case "--max-wait-micros":
+                            maxWaitMicros = Long.parseLong(value);
+                            break;
+                        case "--threads":
+                            threads = Integer.parseInt(value);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown option " + option + "\n" + USAGE);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value '" + value + "' for " + option + "\n" + USAGE);
+                }
+            }
+            if (model == null) {
+                throw new IllegalArgumentException("Missing --model\n" + USAGE);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        Path modelPath = Paths.get(model);
+        Classifier classifier;
+        if (train != null) {
+            if (files.isEmpty()) {
+                files.add(AlgorithmRunner.Dataset_1);
+                files.add(AlgorithmRunner.Dataset_2);
+            }
+            Dataset[] parts = Dataset.loadAll(files.toArray(new String[0]));
+            Dataset training = parts.length == 1 ? parts[0] : Dataset.concat(parts);
+            classifier = Classifier.create(train, training.dim(), WorkerPool.shared());
+            classifier.fit(training);
+            classifier.save(modelPath);
+            System.out.printf("Trained %s on %d rows, saved to %s%n", train, training.rows(), modelPath);
+        } else if (Files.isRegularFile(modelPath)) {
+            classifier = Classifier.open(modelPath);
+        } else {
+            System.out.println("No model file " + modelPath + " (use --train to create one)");
+            return;
+        }
+
+        ScoringServer scoringServer = new ScoringServer(classifier, port, maxBatch, maxWaitMicros, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(scoringServer::stop));
+        scoringServer.start();
+        System.out.printf("Serving %s on http://localhost:%d (POST /predict, GET /stats), batches of up to %d rows, %d us wait%n",
+                modelPath.getFileName(), scoringServer.port(), maxBatch, maxWaitMicros);
+    }
+
+    public void start() {
+        batcher.start();
+        server.start();
+    }
+
+    // Stops accepting connections, lets requests in progress finish for up to a second, then fails the rest
+    public void stop() {
+        server.stop(1);
+        running = false;
+        batcher.interrupt();
+        try {
+            batcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        requestThreads.shutdown();
+    }
+
+    // Bound port, useful when the server was created on port 0
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Virtual thread per request when the JVM has them (Java 21+), a fixed pool of platform threads otherwise
+    static ExecutorService requestExecutor(int threads) {
+        try {
+            Method virtualThreads = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreads.invoke(null);
+        } catch (ReflectiveOperationException unavailable) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+                Thread thread = new Thread(runnable, "scoring-request-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "text/plain", "Use POST with one comma-separated row per line\n");
+                return;
+            }
+            Request request = parse(readBody(exchange.getRequestBody()));
+            if (request.rows == 0) {
+                respond(exchange, 400, "text/plain", "No rows in the request\n");
+                return;
+            }
+            if (!queue.offer(request)) {
+                rejected.increment();
+                respond(exchange, 503, "text/plain", "Scoring queue is full, retry later\n");
+                return;
+            }
+            int[] predictions = request.result.get();
+            String[] labelNames = classifier.labelNames(); // Read after predicting, so it has every predicted label
+            StringBuilder answer = new StringBuilder(predictions.length * 3);
+            for (int prediction : predictions) {
+                answer.append(labelNames[prediction]).append('\n');
+            }
+            respond(exchange, 200, "text/plain", answer.toString());
+            requests.increment();
+            rows.add(request.rows);
+            latency.recordSince(start);
+        } catch (IllegalArgumentException badRequest) {
+            respond(exchange, 400, "text/plain", badRequest.getMessage() + "\n");
+        } catch (ExecutionException failed) {
+            respond(exchange, 500, "text/plain", "Prediction failed: " + failed.getCause() + "\n");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "text/plain", "Server is shutting down\n");
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long batchCount = batches.value();
+        StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.ROOT, "{\"uptime_seconds\": %.3f, \"requests\": %d, \"rows\": %d, \"rejected\": %d, \"batches\": %d,",
+                seconds, requests.value(), rows.value(), rejected.value(), batchCount));
+        json.append(String.format(Locale.ROOT, " \"mean_batch_rows\": %.2f, \"requests_per_second\": %.1f, \"rows_per_second\": %.1f,",
+                (double) rows.value() / Math.max(1, batchCount), requests.value() / seconds, rows.value() / seconds));
+        json.append(String.format(Locale.ROOT, " \"latency_ms\": {\"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"p999\": %.3f, \"max\": %.3f}}%n",
+                latency.quantile(0.5) / 1e6, latency.quantile(0.9) / 1e6, latency.quantile(0.99) / 1e6,
+                latency.quantile(0.999) / 1e6, latency.max() / 1e6));
+        respond(exchange, 200, "application/json", json.toString());
+    }
+
+    // Rows of the body packed at the model's width; values past it are dropped
+    private Request parse(String body) {
+        int stride = dim;
+        List<float[]> parsed = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] values = line.split(",");
+            if (values.length < stride) {
+                throw new IllegalArgumentException("Row " + (parsed.size() + 1) + " has " + values.length
+                        + " values, the model needs " + stride);
+            }
+            float[] row = new float[stride];
+            for (int d = 0; d < stride; d++) {
+                try {
+                    row[d] = Float.parseFloat(values[d].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Row " + (parsed.size() + 1) + " has a non-numeric value '" + values[d] + "'");
+                }
+            }
+            parsed.add(row);
+        }
+        float[] features = new float[parsed.size() * stride];
+        for (int i = 0; i < parsed.size(); i++) {
+            System.arraycopy(parsed.get(i), 0, features, i * stride, stride);
+        }
+        return new Request(features, parsed.size());
+    }
+
+    // Takes the next request, then keeps adding queued ones until the batch is full or the wait is over
+    private void batchLoop() {
+        List<Request> batch = new ArrayList<>();
+        while (running) {
+            try {
+                Request first = carried != null ? carried : queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                carried = null;
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int batchRows = first.rows;
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batchRows < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (batchRows + next.rows > maxBatch) {
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                    batchRows += next.rows;
+                }
+                score(batch, batchRows);
+                batch.clear();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        // Requests still queued at shutdown get an answer instead of waiting forever
+        IllegalStateException stopped = new IllegalStateException("Server stopped");
+        for (Request request : batch) {
+            request.result.completeExceptionally(stopped);
+        }
+        if (carried != null) {
+            carried.result.completeExceptionally(stopped);
+        }
+        for (Request request = queue.poll(); request != null; request = queue.poll()) {
+            request.result.completeExceptionally(stopped);
+        }
+    }
+
+    // One predictBatch call for all rows of the batch, split back into the answers of each request
+    private void score(List<Request> batch, int batchRows) {
+        try {
+            float[] features = new float[batchRows * dim];
+            int position = 0;
+            for (Request request : batch) {
+                System.arraycopy(request.features, 0, features, position, request.features.length);
+                position += request.features.length;
+            }
+            int[] predictions = classifier.predictBatch(new Dataset(batchRows, dim, features, new int[batchRows], classifier.labelNames()));
+            batches.increment();
+            int row = 0;
+            for (Request request : batch) {
+                int[] answer = new int[request.rows];
+                System.arraycopy(predictions, row, answer, 0, request.rows);
+                row += request.rows;
+                request.result.complete(answer);
+            }
+        } catch (RuntimeException failed) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(failed);
+            }
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Rows of one HTTP request, and the predictions the batcher completes them with
+    private static class Request {
+        final float[] features;
+        final int rows;
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        Request(float[] features, int rows) {
+            this.features = features;
+            this.rows = rows;
+        }
+    }
+}
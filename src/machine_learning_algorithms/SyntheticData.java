@@ -0,0 +1,71 @@
+package machine_learning_algorithms;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+class SyntheticData {
+
+    /**
+     * Scales a real data set (the digits) up to any number of rows and features for benchmarks.
+     * Every synthetic row copies a random source row, with feature d taken from source feature
+     * d % dim, and moves each value by -1, 0 or +1 inside the range of its source column. Integer
+     * data stays integer, so the uint8 paths (cache, quantized index) keep working, and the labels
+     * stay about as separable as in the source.
+     */
+
+    private SyntheticData() {
+    }
+
+    static Dataset scale(Dataset source, int rows, int dim, long seed) {
+        int sourceDim = source.dim();
+        float[] min = new float[sourceDim];
+        float[] max = new float[sourceDim];
+        for (int d = 0; d < sourceDim; d++) {
+            min[d] = Float.POSITIVE_INFINITY;
+            max[d] = Float.NEGATIVE_INFINITY;
+            for (int row = 0; row < source.rows(); row++) {
+                min[d] = Math.min(min[d], source.get(row, d));
+                max[d] = Math.max(max[d], source.get(row, d));
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        float[] features = new float[rows * dim];
+        int[] labels = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            int sourceRow = random.nextInt(source.rows());
+            labels[row] = source.label(sourceRow);
+            for (int d = 0; d < dim; d++) {
+                int column = d % sourceDim;
+                float value = source.get(sourceRow, column) + random.nextInt(3) - 1;
+                features[row * dim + d] = Math.max(min[column], Math.min(max[column], value));
+            }
+        }
+        return new Dataset(rows, dim, features, labels, source.labelNames());
+    }
+
+    // Writes the data set in the CSV layout the loaders read: features first, label last
+    static void writeCsv(Dataset dataset, Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            for (int row = 0; row < dataset.rows(); row++) {
+                line.setLength(0);
+                for (int d = 0; d < dataset.dim(); d++) {
+                    float value = dataset.get(row, d);
+                    if (value == (int) value) {
+                        line.append((int) value);
+                    } else {
+                        line.append(value);
+                    }
+                    line.append(',');
+                }
+                line.append(dataset.labelName(dataset.label(row))).append('\n');
+                out.write(line.toString());
+            }
+        }
+    }
+}
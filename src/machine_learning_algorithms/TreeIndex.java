@@ -0,0 +1,175 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+
+abstract class TreeIndex implements NeighbourIndex {
+
+    /**
+     * Shared storage of the tree indexes. Building permutes the reference rows so that every node
+     * owns a contiguous range [start, end) of the tree order; the features are then copied in that
+     * order so leaves are scanned sequentially. Node fields live in parallel primitive arrays.
+     */
+
+    // Relative slack on pruning tests, so rounding never prunes a subtree holding an equally distant row
+    private static final double PRUNE_SLACK = 1e-9;
+
+    protected final Dataset reference;
+    protected final int dim;
+    protected final int leafSize;
+    protected final int[] order;
+    protected float[] points;
+
+    protected int nodeCount;
+    protected int[] nodeStart = new int[16];
+    protected int[] nodeEnd = new int[16];
+    protected int[] nodeLeft = new int[16];
+    protected int[] nodeRight = new int[16];
+
+    // Sort keys by tree position, used while partitioning during the build
+    protected double[] keys;
+
+    TreeIndex(Dataset reference, int leafSize) {
+        if (leafSize < 1) {
+            throw new IllegalArgumentException("Leaf size must be at least 1 but was " + leafSize);
+        }
+        this.reference = reference;
+        this.dim = reference.dim();
+        this.leafSize = leafSize;
+        this.order = new int[reference.rows()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        this.keys = new double[order.length];
+    }
+
+    @Override
+    public Dataset reference() {
+        return reference;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    // Appends a node owning [start, end) and returns its id; children are linked by the caller
+    protected int addNode(int start, int end) {
+        if (nodeCount == nodeStart.length) {
+            int capacity = nodeCount * 2;
+            nodeStart = Arrays.copyOf(nodeStart, capacity);
+            nodeEnd = Arrays.copyOf(nodeEnd, capacity);
+            nodeLeft = Arrays.copyOf(nodeLeft, capacity);
+            nodeRight = Arrays.copyOf(nodeRight, capacity);
+            growNodes(capacity);
+        }
+        nodeStart[nodeCount] = start;
+        nodeEnd[nodeCount] = end;
+        nodeLeft[nodeCount] = -1;
+        nodeRight[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+    // Lets subclasses grow their own per-node arrays together with the shared ones
+    protected abstract void growNodes(int capacity);
+
+    // Copies the features into tree order and drops the build buffers
+    protected void finishBuild() {
+        float[] source = reference.features();
+        points = new float[order.length * dim];
+        for (int position = 0; position < order.length; position++) {
+            System.arraycopy(source, order[position] * dim, points, position * dim, dim);
+        }
+        keys = null;
+    }
+
+    // Compares the query with every row of a leaf
+    protected void scanLeaf(float[] query, int queryOffset, int start, int end, NeighbourHeap nearest) {
+        for (int position = start; position < end; position++) {
+            double distance = DistanceKernels.squaredEuclidean(query, queryOffset, points, position * dim, dim);
+            if (distance <= nearest.worstDistance()) {
+                nearest.offer(distance, order[position]);
+            }
+        }
+        nearest.countEvaluations(end - start);
+    }
+
+    // A subtree can be skipped when even its closest possible row is further than the K-th best (both not squared)
+    protected static boolean prunable(double lowerBound, double radius) {
+        return lowerBound > radius * (1 + PRUNE_SLACK) + PRUNE_SLACK;
+    }
+
+    // Same test on squared distances
+    protected static boolean prunableSquared(double lowerBound, double worst) {
+        return lowerBound > worst * (1 + 2 * PRUNE_SLACK) + PRUNE_SLACK;
+    }
+
+    // Reorders [start, end) of the tree order so that position k holds the k-th smallest key,
+    // smaller or equal keys before it and larger or equal keys after it (quickselect)
+    protected void select(int start, int end, int k) {
+        int low = start;
+        int high = end - 1;
+        while (high > low) {
+            double pivot = keys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    protected void swap(int a, int b) {
+        int row = order[a];
+        order[a] = order[b];
+        order[b] = row;
+        double key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+    }
+
+    // Dimension with the largest value range inside [start, end), or -1 if all rows are identical
+    protected int widestDimension(int start, int end) {
+        float[] features = reference.features();
+        int widest = -1;
+        float widestSpread = 0;
+        for (int d = 0; d < dim; d++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int position = start; position < end; position++) {
+                float value = features[order[position] * dim + d];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widestSpread) {
+                widestSpread = max - min;
+                widest = d;
+            }
+        }
+        return widest;
+    }
+
+    // Splits [start, end) at its median along one dimension and returns the middle position
+    protected int splitAtMedian(int start, int end, int splitDim) {
+        float[] features = reference.features();
+        for (int position = start; position < end; position++) {
+            keys[position] = features[order[position] * dim + splitDim];
+        }
+        int middle = (start + end) >>> 1;
+        select(start, end, middle);
+        return middle;
+    }
+}
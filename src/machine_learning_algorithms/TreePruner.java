@@ -0,0 +1,77 @@
+package machine_learning_algorithms;
+
+class TreePruner {
+
+    /**
+     * C4.5 pessimistic error pruning by subtree replacement. The training error rate of a node is
+     * treated as a binomial sample: its estimated error count is the upper limit of the confidence
+     * interval for the given confidence factor (25% by default, smaller prunes harder). Working bottom
+     * up, a subtree is replaced by a leaf whenever the leaf's estimate is no worse than the sum of the
+     * estimates of the subtree's leaves. The estimate follows Quinlan's implementation, including its
+     * interpolated table of normal deviates and its special cases for very small error counts.
+     */
+
+    private static final double[] CONFIDENCE = {0, 0.001, 0.005, 0.01, 0.05, 0.10, 0.20, 0.40, 1.00};
+    private static final double[] DEVIATION = {4.0, 3.09, 2.58, 2.33, 1.65, 1.28, 0.84, 0.25, 0.00};
+
+    private final double confidence;
+    private final double coefficient; // Squared normal deviate for the confidence factor
+
+    TreePruner(double confidence) {
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("Confidence factor must be in (0, 1) but was " + confidence);
+        }
+        this.confidence = confidence;
+        int i = 0;
+        while (confidence > CONFIDENCE[i]) {
+            i++;
+        }
+        double deviation = DEVIATION[i - 1]
+                + (DEVIATION[i] - DEVIATION[i - 1]) * (confidence - CONFIDENCE[i - 1]) / (CONFIDENCE[i] - CONFIDENCE[i - 1]);
+        this.coefficient = deviation * deviation;
+    }
+
+    // Prunes the tree in place and returns its root
+    C45_Algorithm.Node prune(C45_Algorithm.Node root) {
+        estimateErrors(root);
+        return root;
+    }
+
+    // Prunes below the node and returns the estimated errors of what is left
+    private double estimateErrors(C45_Algorithm.Node node) {
+        double asLeaf = node.errors + extraErrors(node.rows, node.errors);
+        if (node.attribute < 0) {
+            return asLeaf;
+        }
+        double asSubtree = estimateErrors(node.left) + estimateErrors(node.right);
+        if (asLeaf <= asSubtree + 0.1) {
+            // Replace the subtree with a leaf (C4.5 accepts the leaf when within 0.1 errors)
+            node.attribute = -1;
+            node.left = null;
+            node.right = null;
+            node.label = node.majorityClass;
+            return asLeaf;
+        }
+        return asSubtree;
+    }
+
+    // Errors to add to the observed count e out of n to reach the upper confidence limit
+    private double extraErrors(double n, double e) {
+        if (n <= 0) {
+            return 0;
+        }
+        if (e < 1e-6) {
+            return n * (1 - Math.exp(Math.log(confidence) / n));
+        }
+        if (e < 0.9999) {
+            double base = n * (1 - Math.exp(Math.log(confidence) / n));
+            return base + e * (extraErrors(n, 1.0) - base);
+        }
+        if (e + 0.5 >= n) {
+            return 0.67 * (n - e);
+        }
+        double upper = (e + 0.5 + coefficient / 2
+                + Math.sqrt(coefficient * ((e + 0.5) * (1 - (e + 0.5) / n) + coefficient / 4))) / (n + coefficient);
+        return n * upper - e;
+    }
+}
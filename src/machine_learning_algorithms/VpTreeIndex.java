@@ -0,0 +1,94 @@
+package machine_learning_algorithms;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+class VpTreeIndex extends TreeIndex {
+
+    /**
+     * Vantage-point tree: every inner node picks one of its rows as vantage point and splits the rest
+     * at the median distance mu from it. By the triangle inequality a row inside the ball is at least
+     * d - mu from the query and a row outside at least mu - d, where d is the query's distance to the
+     * vantage point; subtrees whose bound exceeds the current K-th best distance are skipped.
+     */
+
+    private static final long SEED = 42;
+
+    private double[] medianDistance = new double[16];
+
+    VpTreeIndex(Dataset reference, int leafSize) {
+        super(reference, leafSize);
+        if (order.length > 0) {
+            build(0, order.length, new SplittableRandom(SEED));
+        }
+        finishBuild();
+    }
+
+    @Override
+    protected void growNodes(int capacity) {
+        medianDistance = Arrays.copyOf(medianDistance, capacity);
+    }
+
+    // Inner nodes keep their vantage point at position start, the inside rows before the outside rows
+    private int build(int start, int end, SplittableRandom random) {
+        int node = addNode(start, end);
+        if (end - start <= leafSize) {
+            return node;
+        }
+        swap(start, start + random.nextInt(end - start));
+
+        float[] features = reference.features();
+        int vantageOffset = order[start] * dim;
+        for (int position = start + 1; position < end; position++) {
+            keys[position] = Math.sqrt(DistanceKernels.squaredEuclidean(features, vantageOffset, features, order[position] * dim, dim));
+        }
+        int middle = (start + 1 + end) >>> 1;
+        select(start + 1, end, middle);
+        medianDistance[node] = keys[middle];
+
+        int inside = build(start + 1, middle, random);
+        int outside = build(middle, end, random);
+        nodeLeft[node] = inside;
+        nodeRight[node] = outside;
+        return node;
+    }
+
+    @Override
+    public void search(float[] query, int queryOffset, NeighbourHeap nearest) {
+        if (nodeCount > 0) {
+            search(0, query, queryOffset, nearest);
+        }
+    }
+
+    private void search(int node, float[] query, int queryOffset, NeighbourHeap nearest) {
+        int start = nodeStart[node];
+        if (nodeLeft[node] < 0) {
+            scanLeaf(query, queryOffset, start, nodeEnd[node], nearest);
+            return;
+        }
+        double squared = DistanceKernels.squaredEuclidean(query, queryOffset, points, start * dim, dim);
+        nearest.countEvaluations(1);
+        if (squared <= nearest.worstDistance()) {
+            nearest.offer(squared, order[start]);
+        }
+        double distance = Math.sqrt(squared);
+        double mu = medianDistance[node];
+        double insideBound = Math.max(0, distance - mu);
+        double outsideBound = Math.max(0, mu - distance);
+
+        // Visit the side the query falls in first, it is the one likely to shrink the search radius
+        if (distance <= mu) {
+            searchChild(nodeLeft[node], insideBound, query, queryOffset, nearest);
+            searchChild(nodeRight[node], outsideBound, query, queryOffset, nearest);
+        } else {
+            searchChild(nodeRight[node], outsideBound, query, queryOffset, nearest);
+            searchChild(nodeLeft[node], insideBound, query, queryOffset, nearest);
+        }
+    }
+
+    private void searchChild(int child, double lowerBound, float[] query, int queryOffset, NeighbourHeap nearest) {
+        if (nodeEnd[child] > nodeStart[child] && !prunable(lowerBound, Math.sqrt(nearest.worstDistance()))) {
+            search(child, query, queryOffset, nearest);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package machine_learning_algorithms;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntToLongFunction;
+
+public class WorkerPool {
+
+    /**
+     * This Class holds the fork-join pool shared by the parallel training and scoring paths.
+     * Its size comes from AlgorithmRunner.Thread_Count (0 uses every available core).
+     */
+
+    private static ForkJoinPool shared;
+
+    public static synchronized ForkJoinPool shared() {
+        if (shared == null) {
+            shared = new ForkJoinPool(threadCount());
+        }
+        return shared;
+    }
+
+    public static int threadCount() {
+        return AlgorithmRunner.Thread_Count > 0 ? AlgorithmRunner.Thread_Count : Runtime.getRuntime().availableProcessors();
+    }
+
+    // Size of the leaf ranges a parallel loop over the given number of items is split into
+    public static int grainSize(int items, ForkJoinPool pool, int minimum) {
+        return Math.max(minimum, items / (pool.getParallelism() * 8));
+    }
+
+    // Evaluates the function for 0..count-1 on the pool and returns the sum of the results
+    public static long parallelSum(ForkJoinPool pool, int count, IntToLongFunction function) {
+        return pool.invoke(new SumTask(function, 0, count, grainSize(count, pool, 16)));
+    }
+
+    // Fork-join task summing the function over [start, end)
+    private static class SumTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final IntToLongFunction function;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        SumTask(IntToLongFunction function, int start, int end, int grain) {
+            this.function = function;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Long compute() {
+            if (end - start > grain) {
+                int middle = (start + end) >>> 1;
+                SumTask left = new SumTask(function, start, middle, grain);
+                left.fork();
+                long right = new SumTask(function, middle, end, grain).compute();
+                return left.join() + right;
+            }
+            long sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += function.applyAsLong(i);
+            }
+            return sum;
+        }
+    }
+}
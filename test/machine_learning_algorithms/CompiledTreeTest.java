@@ -0,0 +1,102 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class CompiledTreeTest {
+
+    private int nodeFallbacks; // Rows the node walk sent to a majority class
+
+    // The node walk the compiled tree replaces: a NaN tested value stops at the node's majority class
+    private int classify(C45_Algorithm.Node node, float[] features, int offset) {
+        while (node.attribute >= 0) {
+            float value = features[offset + node.attribute];
+            if (Float.isNaN(value)) {
+                nodeFallbacks++;
+                return node.majorityClass;
+            }
+            node = value <= node.threshold ? node.left : node.right;
+        }
+        return node.label;
+    }
+
+    // The digits, then a copy of them with a NaN in a few random attributes of every row, and
+    // in the root's attribute of every fourth row
+    private static Dataset withMissingValues(Dataset digits, int rootAttribute) {
+        int dim = digits.dim();
+        float[] features = Arrays.copyOf(digits.features(), 2 * digits.rows() * dim);
+        System.arraycopy(digits.features(), 0, features, digits.rows() * dim, digits.rows() * dim);
+        Random random = new Random(5);
+        for (int row = digits.rows(); row < 2 * digits.rows(); row++) {
+            for (int i = 0; i < 3; i++) {
+                features[row * dim + random.nextInt(dim)] = Float.NaN;
+            }
+            if (row % 4 == 0) {
+                features[row * dim + rootAttribute] = Float.NaN;
+            }
+        }
+        int[] labels = new int[2 * digits.rows()];
+        for (int row = 0; row < labels.length; row++) {
+            labels[row] = digits.label(row % digits.rows());
+        }
+        return new Dataset(2 * digits.rows(), dim, features, labels, digits.labelNames());
+    }
+
+    private void assertSameAsNodeWalk(C45_Algorithm.Node root, Dataset rows) {
+        CompiledTree tree = CompiledTree.compile(root);
+        int[] expected = new int[rows.rows()];
+        nodeFallbacks = 0;
+        for (int row = 0; row < rows.rows(); row++) {
+            expected[row] = classify(root, rows.features(), rows.offset(row));
+        }
+        assertTrue(nodeFallbacks > rows.rows() / 8, "Only " + nodeFallbacks + " rows reach a NaN");
+
+        for (int row = 0; row < rows.rows(); row++) {
+            assertEquals(expected[row], tree.predict(rows.features(), rows.offset(row)), "row " + row);
+        }
+        assertEquals(nodeFallbacks, tree.fallbackCount());
+        assertArrayEquals(expected, tree.predict(rows, null));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(expected, tree.predict(rows, pool));
+            assertArrayEquals(expected, tree.predictUncounted(rows, pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(3L * nodeFallbacks, tree.fallbackCount()); // The uncounted walk leaves the count alone
+    }
+
+    @Test
+    void flatWalkMatchesTheNodeWalk() throws IOException {
+        Dataset digits = TreeBuilderTest.digits();
+        C45_Algorithm.Node root = new PresortedTreeBuilder(digits, "gain", 0, 2, 0, null).build();
+        assertSameAsNodeWalk(root, withMissingValues(digits, root.attribute));
+    }
+
+    @Test
+    void flatWalkMatchesTheNodeWalkAfterPruning() throws IOException {
+        Dataset digits = TreeBuilderTest.digits();
+        C45_Algorithm.Node root = new TreePruner(0.25).prune(new HistogramTreeBuilder(digits, "gainratio", 0, 2, 0, null).build());
+        assertSameAsNodeWalk(root, withMissingValues(digits, root.attribute));
+    }
+
+    @Test
+    void singleLeafPredictsItsLabel() {
+        C45_Algorithm.Node leaf = new C45_Algorithm.Node();
+        leaf.label = 3;
+        leaf.majorityClass = 3;
+        CompiledTree tree = CompiledTree.compile(leaf);
+        assertEquals(1, tree.nodeCount());
+        assertEquals(0, tree.depth());
+        assertEquals(3, tree.predict(new float[] {Float.NaN}));
+        assertEquals(0, tree.fallbackCount());
+    }
+}
@@ -0,0 +1,124 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatasetCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private static Dataset sample(float... features) {
+        int rows = features.length / 2;
+        int[] labels = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            labels[row] = row % 2;
+        }
+        return new Dataset(rows, 2, features, labels, new String[] {"a", "b"});
+    }
+
+    @Test
+    void roundTripsUnsignedByteFeaturesWithoutCopying() throws IOException {
+        Dataset original = sample(0, 16, 255, 3, 7, 0);
+        Path file = directory.resolve("bytes" + DatasetCache.Extension);
+        DatasetCache.write(original, file, -1, -1);
+
+        Dataset read = DatasetCache.read(file);
+        assertTrue(read.isMapped());
+        assertEquals(255f, read.get(1, 0));
+        assertArrayEquals(new float[] {7, 0, 0, 16}, read.select(new int[] {2, 0}).features());
+        assertTrue(read.isMapped(), "select reads the mapping");
+        assertArrayEquals(original.labels(), read.labels());
+        assertArrayEquals(original.labelNames(), read.labelNames());
+        assertArrayEquals(original.features(), read.features());
+        assertFalse(read.isMapped());
+    }
+
+    @Test
+    void roundTripsFloatFeatures() throws IOException {
+        Dataset original = sample(0.5f, -1, 1e6f, 3, 256, 2);
+        Path file = directory.resolve("floats" + DatasetCache.Extension);
+        DatasetCache.write(original, file, -1, -1);
+
+        Dataset read = DatasetCache.read(file);
+        assertTrue(read.isMapped());
+        float[] row = new float[2];
+        read.copyRow(1, row, 0);
+        assertArrayEquals(new float[] {1e6f, 3}, row);
+        assertEquals("a", read.samples().next().label());
+        assertArrayEquals(original.features(), read.features());
+    }
+
+    @Test
+    void sidecarIsReusedUntilTheSourceChanges() throws IOException {
+        Path csv = directory.resolve("data.csv");
+        Files.write(csv, "1,2,a\n3,4,b\n".getBytes(StandardCharsets.UTF_8));
+        Path cache = directory.resolve("data.csv" + DatasetCache.Extension);
+
+        assertEquals(2, DatasetCache.load(csv.toString()).rows());
+        assertTrue(Files.isRegularFile(cache));
+        assertTrue(DatasetCache.load(csv.toString()).isMapped(), "second load comes from the sidecar");
+
+        Files.write(csv, "1,2,a\n3,4,b\n5,6,a\n".getBytes(StandardCharsets.UTF_8));
+        Dataset reloaded = DatasetCache.load(csv.toString());
+        assertEquals(3, reloaded.rows());
+        assertEquals(3, DatasetCache.read(cache).rows(), "stale sidecar is rewritten");
+    }
+
+    @Test
+    void sidecarHasTheDefaultPermissionsOfNewFiles() throws IOException {
+        assumeTrue(Files.getFileAttributeView(directory, PosixFileAttributeView.class) != null);
+        Path cache = directory.resolve("perm" + DatasetCache.Extension);
+        DatasetCache.write(sample(1, 2), cache, -1, -1);
+        Path plain = Files.createFile(directory.resolve("plain"));
+
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(cache));
+    }
+
+    @Test
+    void rejectsOverflowingHeader() throws IOException {
+        Path file = directory.resolve("huge" + DatasetCache.Extension);
+        DatasetCache.write(sample(1, 2, 3, 4), file, -1, -1);
+        // rows and dim start at byte 24
+        patch(file, 24, ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(1 << 20).putInt(1 << 20).array());
+
+        IOException error = assertThrows(IOException.class, () -> DatasetCache.read(file));
+        assertTrue(error.getMessage().contains("invalid size"), error.getMessage());
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        Path file = directory.resolve("cut" + DatasetCache.Extension);
+        DatasetCache.write(sample(new float[200]), file, -1, -1);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertThrows(IOException.class, () -> DatasetCache.read(file));
+        Files.write(file, Arrays.copyOf(bytes, 20));
+        assertThrows(IOException.class, () -> DatasetCache.read(file));
+    }
+
+    private static void patch(Path file, long position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+}
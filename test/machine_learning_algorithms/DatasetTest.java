@@ -0,0 +1,82 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatasetTest {
+
+    @TempDir
+    Path directory;
+
+    private Path csv(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    void parsesRowsSkippingHeaderAndBlankLines() throws IOException {
+        Path file = csv("a.csv", "f1,f2,label\r\n1,2.5,b\r\n\r\n-3,4e1, a \r\n0,0.125,b");
+        Dataset data = Dataset.parseCsv(file.toString());
+
+        assertEquals(3, data.rows());
+        assertEquals(2, data.dim());
+        assertArrayEquals(new float[] {1, 2.5f, -3, 40, 0, 0.125f}, data.features());
+        assertArrayEquals(new String[] {"b", "a"}, data.labelNames());
+        assertArrayEquals(new int[] {0, 1, 0}, data.labels());
+    }
+
+    @Test
+    void rejectsRowWithWrongColumnCount() throws IOException {
+        Path file = csv("bad.csv", "1,2,a\n3,b\n");
+        IOException error = assertThrows(IOException.class, () -> Dataset.parseCsv(file.toString()));
+        assertTrue(error.getMessage().contains("Row 2"), error.getMessage());
+    }
+
+    @Test
+    void rejectsInvalidNumber() throws IOException {
+        Path file = csv("nan.csv", "1,2,a\n3,x4,b\n");
+        IOException error = assertThrows(IOException.class, () -> Dataset.parseCsv(file.toString()));
+        assertTrue(error.getMessage().contains("line 2"), error.getMessage());
+    }
+
+    @Test
+    void loadAllSharesOneSortedLabelDictionary() throws IOException {
+        Path first = csv("first.csv", "1,10\n2,2\n");
+        Path second = csv("second.csv", "3,3\n4,10\n");
+        Dataset[] data = Dataset.loadAll(first.toString(), second.toString());
+
+        assertArrayEquals(new String[] {"2", "3", "10"}, data[0].labelNames());
+        assertArrayEquals(data[0].labelNames(), data[1].labelNames());
+        assertArrayEquals(new int[] {2, 0}, data[0].labels());
+        assertArrayEquals(new int[] {1, 2}, data[1].labels());
+    }
+
+    @Test
+    void selectAndSamplesCopyRows() throws IOException {
+        Dataset data = Dataset.parseCsv(csv("s.csv", "1,2,a\n3,4,b\n5,6,a\n").toString());
+        Dataset selected = data.select(new int[] {2, 0});
+        assertArrayEquals(new float[] {5, 6, 1, 2}, selected.features());
+        assertArrayEquals(new int[] {0, 0}, selected.labels());
+
+        Iterator<Sample> samples = data.samples();
+        Sample first = samples.next();
+        assertArrayEquals(new float[] {1, 2}, first.features());
+        assertEquals("a", first.label());
+        samples.next();
+        assertEquals("a", samples.next().label());
+        assertFalse(samples.hasNext());
+    }
+}
@@ -0,0 +1,153 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class EvaluationTest {
+
+    // Rows with skewed label counts (label l has about 3 + 4 * l rows), so uneven shares are exercised
+    private static Dataset skewedLabels(int labels, long seed) {
+        Random random = new Random(seed);
+        int rows = 0;
+        int[] counts = new int[labels];
+        for (int label = 0; label < labels; label++) {
+            counts[label] = 3 + 4 * label + random.nextInt(3);
+            rows += counts[label];
+        }
+        int[] rowLabels = new int[rows];
+        for (int row = 0, label = 0, left = counts[0]; row < rows; row++, left--) {
+            while (left == 0) {
+                left = counts[++label];
+            }
+            rowLabels[row] = label;
+        }
+        // Interleave the labels, so the row order says nothing about them
+        for (int i = rows - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = rowLabels[i];
+            rowLabels[i] = rowLabels[j];
+            rowLabels[j] = swap;
+        }
+        String[] names = new String[labels];
+        for (int label = 0; label < labels; label++) {
+            names[label] = "label" + label;
+        }
+        return new Dataset(rows, 1, new float[rows], rowLabels, names);
+    }
+
+    // Every row is tested in exactly one fold and trained on in all the others
+    private static void assertPartition(Evaluation.Fold[] split, int rows) {
+        int[] tested = new int[rows];
+        for (Evaluation.Fold fold : split) {
+            assertEquals(rows, fold.train.length + fold.test.length);
+            boolean[] inTest = new boolean[rows];
+            for (int row : fold.test) {
+                tested[row]++;
+                inTest[row] = true;
+            }
+            for (int row : fold.train) {
+                assertFalse(inTest[row], "Row " + row + " is in both halves of a fold");
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            assertEquals(1, tested[row], "Row " + row + " tested " + tested[row] + " times");
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 5, 10})
+    void stratifiedFoldsPartitionTheRowsIntoBalancedFolds(int k) {
+        Dataset data = skewedLabels(6, k);
+        Evaluation.Fold[] split = Evaluation.stratifiedFolds(data, k, 42);
+        assertEquals(k, split.length);
+        assertPartition(split, data.rows());
+
+        int smallest = Integer.MAX_VALUE;
+        int largest = 0;
+        for (Evaluation.Fold fold : split) {
+            smallest = Math.min(smallest, fold.test.length);
+            largest = Math.max(largest, fold.test.length);
+        }
+        assertTrue(largest - smallest <= 1, "Fold sizes from " + smallest + " to " + largest);
+
+        // Each label is spread over the folds as evenly as its count allows
+        for (int label = 0; label < data.labelCount(); label++) {
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (Evaluation.Fold fold : split) {
+                int count = 0;
+                for (int row : fold.test) {
+                    if (data.label(row) == label) {
+                        count++;
+                    }
+                }
+                min = Math.min(min, count);
+                max = Math.max(max, count);
+            }
+            assertTrue(max - min <= 1, "Label " + label + " has from " + min + " to " + max + " rows per fold");
+        }
+    }
+
+    @Test
+    void sameSeedGivesTheSameFolds() {
+        Dataset data = skewedLabels(4, 7);
+        Evaluation.Fold[] first = Evaluation.stratifiedFolds(data, 5, 99);
+        Evaluation.Fold[] second = Evaluation.stratifiedFolds(data, 5, 99);
+        Evaluation.Fold[] other = Evaluation.stratifiedFolds(data, 5, 100);
+        boolean differs = false;
+        for (int f = 0; f < first.length; f++) {
+            assertArrayEquals(first[f].test, second[f].test);
+            assertArrayEquals(first[f].train, second[f].train);
+            differs |= !Arrays.equals(first[f].test, other[f].test);
+        }
+        assertTrue(differs, "Another seed gave the same folds");
+    }
+
+    @Test
+    void stratifiedFoldsRejectMoreFoldsThanRows() {
+        Dataset data = skewedLabels(1, 3);
+        assertThrows(IllegalArgumentException.class, () -> Evaluation.stratifiedFolds(data, data.rows() + 1, 1));
+    }
+
+    // Fold i tests on the rows of file i, which follow the rows of the files before it
+    @Test
+    void fileFoldsTestOnEachFileInTurn() {
+        Dataset[] parts = {skewedLabels(2, 1), skewedLabels(2, 2), skewedLabels(2, 3)};
+        int total = parts[0].rows() + parts[1].rows() + parts[2].rows();
+        Evaluation.Fold[] split = Evaluation.fileFolds(parts);
+        assertEquals(3, split.length);
+        assertPartition(split, total);
+        int start = 0;
+        for (int i = 0; i < parts.length; i++) {
+            assertEquals(parts[i].rows(), split[i].test.length);
+            for (int t = 0; t < split[i].test.length; t++) {
+                assertEquals(start + t, split[i].test[t]);
+            }
+            start += parts[i].rows();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"--folds 1", "--folds 0", "--folds -2", "--folds x", "--folds", "--threads 0", "--threads -1",
+            "--threads x", "--seed 1.5", "--algorithms knn,tree", "--algorithms ", "--depth 3",
+            "--folds files a.csv"})
+    void rejectsInvalidArguments(String args) {
+        assertThrows(IllegalArgumentException.class, () -> Evaluation.fromArguments(args.split(" ")));
+    }
+
+    @Test
+    void acceptsValidArguments() {
+        Evaluation.fromArguments(new String[] {"--algorithms", "knn,random", "--folds", "files", "--seed", "3", "a.csv", "b.csv"});
+        Evaluation.fromArguments(new String[] {"--folds", "10", "a.csv"});
+    }
+}
@@ -0,0 +1,81 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class HnswIndexTest {
+
+    private static final int K = 10;
+
+    // Share of the exact K nearest rows that the index also returns, over all queries
+    private static double recall(NeighbourIndex index, Dataset reference, Dataset queries) {
+        LinearScanIndex exact = new LinearScanIndex(reference, false);
+        NeighbourHeap want = new NeighbourHeap(K);
+        NeighbourHeap got = new NeighbourHeap(K);
+        int found = 0;
+        for (int query = 0; query < queries.rows(); query++) {
+            want.clear();
+            got.clear();
+            exact.search(queries.features(), queries.offset(query), want);
+            index.search(queries.features(), queries.offset(query), got);
+            for (int i = 0; i < got.size(); i++) {
+                for (int j = 0; j < want.size(); j++) {
+                    if (got.row(i) == want.row(j)) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }
+        return (double) found / (queries.rows() * K);
+    }
+
+    @Test
+    void recallAtTenOnGaussianData() {
+        Dataset reference = NeighbourIndexTest.gaussianRows(3000, 16, 11);
+        Dataset queries = NeighbourIndexTest.gaussianRows(200, 16, 12);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            HnswIndex index = new HnswIndex(reference, 16, 200, 100, pool);
+            assertFalse(index.exact());
+            double recall = recall(index, reference, queries);
+            assertTrue(recall >= 0.9, "recall@10 " + recall);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void higherEfSearchDoesNotLowerRecall() {
+        Dataset reference = NeighbourIndexTest.gaussianRows(2000, 12, 13);
+        Dataset queries = NeighbourIndexTest.gaussianRows(100, 12, 14);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            double narrow = recall(new HnswIndex(reference, 8, 100, 10, pool), reference, queries);
+            double wide = recall(new HnswIndex(reference, 8, 100, 200, pool), reference, queries);
+            assertTrue(wide >= narrow, narrow + " > " + wide);
+            assertTrue(wide >= 0.95, "recall@10 with ef 200: " + wide);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void returnsEveryRowOfASmallSet() {
+        Dataset reference = NeighbourIndexTest.integerRows(6, 3, 15);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            HnswIndex index = new HnswIndex(reference, 4, 16, 16, pool);
+            NeighbourHeap nearest = new NeighbourHeap(K);
+            index.search(reference.features(), 0, nearest);
+            assertEquals(6, nearest.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
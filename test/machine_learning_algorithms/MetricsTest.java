@@ -0,0 +1,127 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+
+    // Values below 64 have a bucket each; from 64 on, each power of two is split into 32 buckets
+    @Test
+    void bucketBoundsAtSubBucketEdges() {
+        assertEquals(31, Metrics.Histogram.bucket(31));
+        assertEquals(32, Metrics.Histogram.bucket(32));
+        assertEquals(33, Metrics.Histogram.bucket(33));
+        assertEquals(63, Metrics.Histogram.bucket(63));
+        assertEquals(64, Metrics.Histogram.bucket(64));
+        assertEquals(64, Metrics.Histogram.bucket(65));
+        assertEquals(65, Metrics.Histogram.bucket(66));
+        assertEquals(95, Metrics.Histogram.bucket(127));
+        assertEquals(96, Metrics.Histogram.bucket(128));
+        assertEquals(96, Metrics.Histogram.bucket(131));
+        assertEquals(97, Metrics.Histogram.bucket(132));
+
+        assertEquals(33, Metrics.Histogram.highestInBucket(33));
+        assertEquals(65, Metrics.Histogram.highestInBucket(64));
+        assertEquals(127, Metrics.Histogram.highestInBucket(95));
+        assertEquals(131, Metrics.Histogram.highestInBucket(96));
+    }
+
+    // Around every power of two, and at the sub-bucket edges 31, 32 and 33 times a power of two,
+    // each value lies in (highest of the previous bucket, highest of its bucket], within 1/32 of the bound
+    @Test
+    void everyValueLiesInsideItsBucket() {
+        for (int power = 0; power < 62; power++) {
+            for (long base : new long[] {1L << power, 31L << power, 32L << power, 33L << power}) {
+                for (long value = Math.max(0, base - 1); value <= base + 1; value++) {
+                    int bucket = Metrics.Histogram.bucket(value);
+                    long highest = Metrics.Histogram.highestInBucket(bucket);
+                    assertTrue(highest >= value, value + " above its bucket's bound " + highest);
+                    assertTrue(bucket == 0 || Metrics.Histogram.highestInBucket(bucket - 1) < value, value + " fits the bucket below");
+                    assertTrue(highest - value <= value / 32, value + " rounded up to " + highest);
+                }
+            }
+        }
+    }
+
+    @Test
+    void quantilesOfAKnownDistribution() {
+        Metrics.Histogram histogram = Metrics.histogram("test_quantiles_seconds", "Values 1 to 100");
+        assertEquals(0, histogram.quantile(0.5));
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1, histogram.quantile(0.01));
+        assertEquals(50, histogram.quantile(0.5));
+        assertEquals(91, histogram.quantile(0.9)); // 90 shares its bucket with 91
+        assertEquals(99, histogram.quantile(0.99));
+        assertEquals(100, histogram.quantile(1.0)); // Its bucket reaches 101, but no value passed the maximum
+        assertEquals(100, histogram.count());
+        assertEquals(5050, histogram.sum());
+        assertEquals(100, histogram.max());
+    }
+
+    // The exact quantile of an exponential distribution, rounded up to the bucket bound by at most 1/32
+    @Test
+    void quantilesOfAWideDistributionStayWithinABucket() {
+        Metrics.Histogram histogram = Metrics.histogram("test_wide_quantiles_seconds", "Exponential values");
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (1e6 * -Math.log(1 - (i + 0.5) / values.length));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            long estimate = histogram.quantile(quantile);
+            assertTrue(estimate >= exact && estimate - exact <= exact / 32, quantile + ": " + estimate + " for " + exact);
+        }
+    }
+
+    // Registered once: the registry is global, so the values must not be added again by each test
+    private static final Metrics.Counter COUNTER = Metrics.counter("test_requests_total", "Requests served", "kind", "a\"b");
+    private static final Metrics.Histogram HISTOGRAM = Metrics.histogram("test_latency_seconds", "Request latency", "algorithm", "knn");
+
+    static {
+        COUNTER.add(3);
+        HISTOGRAM.record(10);
+        HISTOGRAM.record(20);
+        HISTOGRAM.record(30);
+    }
+
+    @Test
+    void writesPrometheusText() throws IOException {
+        StringWriter out = new StringWriter();
+        Metrics.writePrometheus(out, Collections.singletonList(COUNTER), Collections.singletonList(HISTOGRAM));
+        assertEquals("# HELP test_requests_total Requests served\n"
+                + "# TYPE test_requests_total counter\n"
+                + "test_requests_total{kind=\"a\\\"b\"} 3\n"
+                + "# HELP test_latency_seconds Request latency\n"
+                + "# TYPE test_latency_seconds summary\n"
+                + "test_latency_seconds{algorithm=\"knn\",quantile=\"0.5\"} 0.000000020\n"
+                + "test_latency_seconds{algorithm=\"knn\",quantile=\"0.9\"} 0.000000030\n"
+                + "test_latency_seconds{algorithm=\"knn\",quantile=\"0.99\"} 0.000000030\n"
+                + "test_latency_seconds{algorithm=\"knn\",quantile=\"0.999\"} 0.000000030\n"
+                + "test_latency_seconds_sum{algorithm=\"knn\"} 0.000000060\n"
+                + "test_latency_seconds_count{algorithm=\"knn\"} 3\n", out.toString());
+    }
+
+    @Test
+    void writesJson() throws IOException {
+        StringWriter out = new StringWriter();
+        Metrics.writeJson(out, Collections.singletonList(COUNTER), Collections.singletonList(HISTOGRAM));
+        assertEquals("{\n  \"counters\": [\n"
+                + "    {\"name\": \"test_requests_total\", \"labels\": {\"kind\": \"a\\\"b\"}, \"value\": 3}\n"
+                + "  ],\n  \"histograms\": [\n"
+                + "    {\"name\": \"test_latency_seconds\", \"labels\": {\"algorithm\": \"knn\"}, \"count\": 3, "
+                + "\"sum_seconds\": 0.000000060, \"max_seconds\": 0.000000030, \"p50_seconds\": 0.000000020, "
+                + "\"p90_seconds\": 0.000000030, \"p99_seconds\": 0.000000030, \"p999_seconds\": 0.000000030}\n"
+                + "  ]\n}\n", out.toString());
+    }
+}
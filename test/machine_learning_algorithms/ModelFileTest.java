@@ -0,0 +1,140 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ModelFileTest {
+
+    private static ForkJoinPool pool;
+    private static Dataset training;
+    private static Dataset queries;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void setUp() {
+        pool = new ForkJoinPool(2);
+        Dataset data = TreeBuilderTest.gridRows(600, 6, 41);
+        int[] train = new int[500];
+        int[] test = new int[100];
+        for (int row = 0; row < 600; row++) {
+            if (row < 500) {
+                train[row] = row;
+            } else {
+                test[row - 500] = row;
+            }
+        }
+        training = data.select(train);
+        queries = data.select(test);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    private Path trainAndSave(String kind) throws IOException {
+        Classifier classifier = Classifier.create(kind, training.dim(), pool);
+        classifier.fit(training);
+        Path file = directory.resolve(kind + ModelFile.Extension);
+        classifier.save(file);
+        return file;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"knn", "c45", "som"})
+    void savedModelsPredictLikeTheTrainedOnes(String kind) throws IOException {
+        Classifier trained = Classifier.create(kind, training.dim(), pool);
+        trained.fit(training);
+        Path file = directory.resolve(kind + ModelFile.Extension);
+        trained.save(file);
+
+        Classifier loaded = Classifier.open(file);
+        assertEquals(trained.getClass(), loaded.getClass());
+        assertArrayEquals(trained.labelNames(), loaded.labelNames());
+        assertEquals(trained.dim(), loaded.dim());
+        assertArrayEquals(trained.predictBatch(queries), loaded.predictBatch(queries));
+    }
+
+    @Test
+    void randomModelKeepsItsLabels() throws IOException {
+        Classifier loaded = Classifier.open(trainAndSave("random"));
+        assertArrayEquals(training.labelNames(), loaded.labelNames());
+    }
+
+    // Every prefix of a model file must fail with an IOException, never another exception
+    @ParameterizedTest
+    @ValueSource(strings = {"knn", "c45", "som", "random"})
+    void truncatedModelsFailWithIOException(String kind) throws IOException {
+        byte[] bytes = Files.readAllBytes(trainAndSave(kind));
+        Path cut = directory.resolve("cut" + ModelFile.Extension);
+        int step = Math.max(1, bytes.length / 300);
+        for (int length = 0; length < bytes.length; length += length < 256 ? 1 : step) {
+            Files.write(cut, Arrays.copyOf(bytes, length));
+            try {
+                Classifier.open(cut);
+                // Only the zero padding after the last block may be missing
+                assertTrue(length > bytes.length - 64, kind + " model cut at " + length + " of " + bytes.length + " loaded");
+            } catch (IOException expected) {
+                // The only acceptable failure
+            } catch (RuntimeException | OutOfMemoryError wrong) {
+                fail(kind + " model cut at " + length + " threw " + wrong, wrong);
+            }
+        }
+    }
+
+    @Test
+    void negativeLengthIsAnIOException() throws IOException {
+        byte[] bytes = Files.readAllBytes(trainAndSave("random"));
+        // Header: magic, version, kind "random" (4 + 6 bytes), then the label count
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(18, -7);
+        Path file = directory.resolve("negative" + ModelFile.Extension);
+        Files.write(file, bytes);
+        IOException error = assertThrows(IOException.class, () -> Classifier.open(file));
+        assertTrue(error.getMessage().contains("negative length"), error.getMessage());
+    }
+
+    @Test
+    void treeTestingAttributesOutsideTheRowsIsRejected() throws IOException {
+        C45_Algorithm c45 = new C45_Algorithm(null);
+        c45.fit(training);
+        Path file = directory.resolve("narrow" + ModelFile.Extension);
+        ModelFile.Writer writer = ModelFile.create(C45_Algorithm.Model_Kind).putStrings(training.labelNames()).putInt(1);
+        CompiledTree.compile(c45.buildTree(training)).write(writer);
+        writer.save(file);
+        IOException error = assertThrows(IOException.class, () -> Classifier.open(file));
+        assertTrue(error.getMessage().contains("attribute"), error.getMessage());
+    }
+
+    @Test
+    void treePredictingClassesOutsideTheDictionaryIsRejected() throws IOException {
+        C45_Algorithm c45 = new C45_Algorithm(null);
+        c45.fit(training);
+        Path file = directory.resolve("few-labels" + ModelFile.Extension);
+        ModelFile.Writer writer = ModelFile.create(C45_Algorithm.Model_Kind).putStrings(new String[] {"low"})
+                .putInt(training.dim());
+        CompiledTree.compile(c45.buildTree(training)).write(writer);
+        writer.save(file);
+        IOException error = assertThrows(IOException.class, () -> Classifier.open(file));
+        assertTrue(error.getMessage().contains("class"), error.getMessage());
+    }
+}
@@ -0,0 +1,237 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class NeighbourIndexTest {
+
+    static final int[] K_VALUES = {1, 5, 16};
+
+    // Rows of small integers, so many distances tie and the row id order is exercised
+    static Dataset integerRows(int rows, int dim, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[] features = new float[rows * dim];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = random.nextInt(5);
+        }
+        return new Dataset(rows, dim, features, new int[rows], new String[] {"x"});
+    }
+
+    static Dataset gaussianRows(int rows, int dim, long seed) {
+        Random random = new Random(seed);
+        float[] features = new float[rows * dim];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = (float) random.nextGaussian();
+        }
+        return new Dataset(rows, dim, features, new int[rows], new String[] {"x"});
+    }
+
+    // The neighbours of every query, nearest first, as row ids and distances
+    static void assertSameNeighbours(NeighbourIndex expected, NeighbourIndex actual, Dataset queries, int k) {
+        NeighbourHeap want = new NeighbourHeap(k);
+        NeighbourHeap got = new NeighbourHeap(k);
+        for (int query = 0; query < queries.rows(); query++) {
+            want.clear();
+            got.clear();
+            expected.search(queries.features(), queries.offset(query), want);
+            actual.search(queries.features(), queries.offset(query), got);
+            want.sortAscending();
+            got.sortAscending();
+            assertArrayEquals(neighbours(want), neighbours(got), "query " + query + ", k " + k);
+        }
+    }
+
+    // Like assertSameNeighbours, querying both indexes through searchBatch in tiles of Query_Tile rows
+    static void assertSameNeighboursInBatches(NeighbourIndex expected, NeighbourIndex actual, Dataset queries, int k) {
+        NeighbourHeap[] want = new NeighbourHeap[BlockedScanIndex.Query_Tile];
+        NeighbourHeap[] got = new NeighbourHeap[BlockedScanIndex.Query_Tile];
+        for (int i = 0; i < want.length; i++) {
+            want[i] = new NeighbourHeap(k);
+            got[i] = new NeighbourHeap(k);
+        }
+        for (int start = 0; start < queries.rows(); start += want.length) {
+            int count = Math.min(want.length, queries.rows() - start);
+            for (int i = 0; i < count; i++) {
+                want[i].clear();
+                got[i].clear();
+            }
+            expected.searchBatch(queries, start, count, want);
+            actual.searchBatch(queries, start, count, got);
+            for (int i = 0; i < count; i++) {
+                want[i].sortAscending();
+                got[i].sortAscending();
+                assertArrayEquals(neighbours(want[i]), neighbours(got[i]), "query " + (start + i) + ", k " + k);
+            }
+        }
+    }
+
+    // Like assertSameNeighbours, for indexes that sum the squared differences in their own order:
+    // row ids must match exactly, distances may differ in the last bit
+    static void assertSameRowsAndDistances(NeighbourIndex expected, NeighbourIndex actual, Dataset queries, int k) {
+        NeighbourHeap want = new NeighbourHeap(k);
+        NeighbourHeap got = new NeighbourHeap(k);
+        for (int query = 0; query < queries.rows(); query++) {
+            want.clear();
+            got.clear();
+            expected.search(queries.features(), queries.offset(query), want);
+            actual.search(queries.features(), queries.offset(query), got);
+            want.sortAscending();
+            got.sortAscending();
+            assertEquals(want.size(), got.size(), "query " + query + ", k " + k);
+            for (int i = 0; i < want.size(); i++) {
+                assertEquals(want.row(i), got.row(i), "query " + query + ", k " + k + ", neighbour " + i);
+                assertEquals(want.distance(i), got.distance(i), 1e-9, "query " + query + ", k " + k + ", neighbour " + i);
+            }
+        }
+    }
+
+    // The rows of data followed by a copy of every third row, so tied rows are far apart in id order
+    static Dataset withDuplicates(Dataset data) {
+        int dim = data.dim();
+        int copies = (data.rows() + 2) / 3;
+        float[] features = Arrays.copyOf(data.features(), (data.rows() + copies) * dim);
+        for (int i = 0; i < copies; i++) {
+            System.arraycopy(data.features(), data.offset(3 * i), features, (data.rows() + i) * dim, dim);
+        }
+        int rows = data.rows() + copies;
+        return new Dataset(rows, dim, features, new int[rows], new String[] {"x"});
+    }
+
+    static double[] neighbours(NeighbourHeap heap) {
+        double[] result = new double[2 * heap.size()];
+        for (int i = 0; i < heap.size(); i++) {
+            result[2 * i] = heap.row(i);
+            result[2 * i + 1] = heap.distance(i);
+        }
+        return result;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"kdtree", "vptree", "balltree"})
+    void treeIndexesMatchTheLinearScanWithTies(String kind) {
+        Dataset reference = integerRows(600, 6, 1);
+        Dataset queries = integerRows(60, 6, 2);
+        NeighbourIndex linear = new LinearScanIndex(reference, false);
+        for (int leafSize : new int[] {1, 16}) {
+            NeighbourIndex index = NeighbourIndex.build(kind, reference, leafSize);
+            assertTrue(index.exact());
+            for (int k : K_VALUES) {
+                assertSameNeighbours(linear, index, queries, k);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"kdtree", "vptree", "balltree"})
+    void treeIndexesMatchTheLinearScanOnContinuousData(String kind) {
+        Dataset reference = gaussianRows(800, 12, 3);
+        Dataset queries = gaussianRows(50, 12, 4);
+        NeighbourIndex linear = new LinearScanIndex(reference, false);
+        NeighbourIndex index = NeighbourIndex.build(kind, reference, 8);
+        for (int k : K_VALUES) {
+            assertSameNeighbours(linear, index, queries, k);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"kdtree", "vptree", "balltree"})
+    void heapLargerThanTheReferenceSetGetsEveryRow(String kind) {
+        Dataset reference = integerRows(7, 3, 5);
+        Dataset queries = integerRows(5, 3, 6);
+        assertSameNeighbours(new LinearScanIndex(reference, false), NeighbourIndex.build(kind, reference, 2), queries, 10);
+    }
+
+    // The float kernel is exact on integer rows; queries it would round are scanned in full precision
+    @Test
+    void blockedScanMatchesTheLinearScanOnIntegerReferences() {
+        Dataset reference = integerRows(700, 6, 7);
+        NeighbourIndex linear = new LinearScanIndex(reference, false);
+        BlockedScanIndex blocked = new BlockedScanIndex(reference);
+        assertTrue(blocked.exact());
+
+        Dataset integral = integerRows(150, 6, 8);
+        for (int k : K_VALUES) {
+            assertSameNeighboursInBatches(linear, blocked, integral, k);
+        }
+        assertNull(blocked.statistics());
+
+        // Fractional values, and integers so large that the float dot products would round
+        Dataset fractional = gaussianRows(70, 6, 9);
+        Dataset large = integerRows(70, 6, 10);
+        for (int i = 0; i < large.features().length; i++) {
+            large.features()[i] = large.features()[i] * 2_000_000 + 1;
+        }
+        for (int k : K_VALUES) {
+            assertSameNeighboursInBatches(linear, blocked, fractional, k);
+            assertSameNeighboursInBatches(linear, blocked, large, k);
+        }
+        assertTrue(blocked.statistics().startsWith(K_VALUES.length * 140 + " queries"), blocked.statistics());
+    }
+
+    @Test
+    void blockedScanIsNotExactOnContinuousReferences() {
+        assertFalse(new BlockedScanIndex(gaussianRows(100, 6, 11)).exact());
+    }
+
+    // The norm bound, the pooled bound and early abandoning only skip rows that cannot enter the heap,
+    // so the pruned scan finds the same rows in the same tie order as the plain one. Few dimensions
+    // reject most rows by the bounds, many dimensions most by abandoning
+    @ParameterizedTest
+    @ValueSource(ints = {3, 8, 20, 64})
+    void prunedLinearScanMatchesThePlainScanWithTies(int dim) {
+        Dataset reference = withDuplicates(integerRows(500, dim, 12));
+        Dataset queries = withDuplicates(integerRows(60, dim, 13));
+        NeighbourIndex pruned = new LinearScanIndex(reference, true);
+        NeighbourIndex plain = new LinearScanIndex(reference, false);
+        for (int k : K_VALUES) {
+            assertSameNeighbours(plain, pruned, queries, k);
+            // Queries equal to reference rows that have a copy: the distance-0 tie goes to the lower id
+            assertSameNeighbours(plain, pruned, reference, k);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 8, 20, 64})
+    void prunedLinearScanMatchesThePlainScanOnContinuousData(int dim) {
+        Dataset reference = withDuplicates(gaussianRows(500, dim, 14));
+        Dataset queries = gaussianRows(60, dim, 15);
+        NeighbourIndex pruned = new LinearScanIndex(reference, true);
+        NeighbourIndex plain = new LinearScanIndex(reference, false);
+        for (int k : K_VALUES) {
+            assertSameRowsAndDistances(plain, pruned, queries, k);
+        }
+    }
+
+    // On the digits every exact index, queried in batches, returns the plain scan's neighbours
+    @ParameterizedTest
+    @ValueSource(strings = {"linear", "blocked", "quantized", "kdtree", "vptree", "balltree"})
+    void exactIndexesMatchThePlainScanOnTheDigits(String kind) throws IOException {
+        Dataset[] digits = Dataset.loadAll(AlgorithmRunner.Dataset_1, AlgorithmRunner.Dataset_2);
+        Dataset reference = digits[0];
+        int[] sample = new int[200];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = i * (digits[1].rows() / sample.length);
+        }
+        Dataset queries = digits[1].select(sample);
+        NeighbourIndex plain = new LinearScanIndex(reference, false);
+        for (int leafSize : new int[] {8, 64}) {
+            NeighbourIndex index = NeighbourIndex.build(kind, reference, leafSize);
+            assertTrue(index.exact());
+            for (int k : K_VALUES) {
+                assertSameNeighboursInBatches(plain, index, queries, k);
+            }
+        }
+    }
+}
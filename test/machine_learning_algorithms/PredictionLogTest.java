@@ -0,0 +1,119 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PredictionLogTest {
+
+    private static final String[] LABELS = {"cat", "dog"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesOneCsvLinePerPrediction() throws IOException {
+        Path path = directory.resolve("log.csv");
+        PredictionLog log = new PredictionLog(path, "csv", LABELS, 16, true);
+        PredictionLog.FoldLog fold = log.fold(2, new int[] {10, 20});
+        fold.record(0, 0, 0, 0.5f, 100);
+        fold.record(1, 1, 0, Float.NaN, 200);
+        log.close();
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(List.of("fold,row,actual,predicted,score,latency_ns", "2,10,cat,cat,0.5,100", "2,20,dog,cat,,200"), lines);
+        assertEquals(0, log.dropped());
+        assertTrue(log.summary().contains("2 predictions written"), log.summary());
+    }
+
+    @Test
+    void writesFixedSizeBinaryRecordsAfterTheLabelDictionary() throws IOException {
+        Path path = directory.resolve("log.mlpl");
+        PredictionLog log = new PredictionLog(path, "binary", LABELS, 16, true);
+        log.record(1, 7, 1, 1, 2.5f, 42);
+        log.close();
+
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0x4C504C4D, file.getInt());
+        assertEquals(1, file.getInt());
+        assertEquals(LABELS.length, file.getInt());
+        for (String label : LABELS) {
+            byte[] name = new byte[file.getInt()];
+            file.get(name);
+            assertEquals(label, new String(name, StandardCharsets.UTF_8));
+        }
+        assertEquals(28, file.remaining());
+        assertEquals(1, file.getInt());
+        assertEquals(7, file.getInt());
+        assertEquals(1, file.getInt());
+        assertEquals(1, file.getInt());
+        assertEquals(2.5f, file.getFloat());
+        assertEquals(42, file.getLong());
+    }
+
+    // A tiny ring and several producers: blocking producers wait for the writer, so nothing is lost
+    @Test
+    void blockPolicyWritesEveryPrediction() throws Exception {
+        Path path = directory.resolve("block.csv");
+        int threads = 4;
+        int perThread = 5000;
+        PredictionLog log = new PredictionLog(path, "csv", LABELS, 2, true);
+        AtomicLong rejected = new AtomicLong();
+        produce(log, threads, perThread, rejected);
+        log.close();
+
+        assertEquals(0, rejected.get());
+        assertEquals(0, log.dropped());
+        Set<String> records = new HashSet<>(Files.readAllLines(path, StandardCharsets.UTF_8));
+        assertEquals(threads * perThread + 1, records.size()); // Every (fold, row) once, plus the header
+    }
+
+    // Dropping producers never wait; every prediction is either written or counted as dropped
+    @Test
+    void dropPolicyCountsEveryPredictionItDoesNotWrite() throws Exception {
+        Path path = directory.resolve("drop.csv");
+        int threads = 4;
+        int perThread = 20000;
+        PredictionLog log = new PredictionLog(path, "csv", LABELS, 1, false);
+        AtomicLong rejected = new AtomicLong();
+        produce(log, threads, perThread, rejected);
+        log.close();
+
+        assertEquals(rejected.get(), log.dropped());
+        long lines = Files.readAllLines(path, StandardCharsets.UTF_8).size() - 1;
+        assertEquals(threads * perThread, lines + log.dropped());
+        assertTrue(log.summary().contains(lines + " predictions written, " + log.dropped() + " dropped"), log.summary());
+    }
+
+    // Each thread records its own fold, rows 0 to perThread - 1, counting the records refused
+    private static void produce(PredictionLog log, int threads, int perThread, AtomicLong rejected) throws InterruptedException {
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int fold = t + 1;
+            producers[t] = new Thread(() -> {
+                for (int row = 0; row < perThread; row++) {
+                    if (!log.record(fold, row, row % 2, 0, row, row)) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class QuantizedScanIndexTest {
+
+    @Test
+    void integerReferenceIsExactForGridQueries() {
+        Dataset reference = NeighbourIndexTest.integerRows(500, 8, 21);
+        Dataset queries = NeighbourIndexTest.integerRows(40, 8, 22);
+        QuantizedScanIndex index = new QuantizedScanIndex(reference, 0);
+        assertTrue(index.exact());
+        for (int k : NeighbourIndexTest.K_VALUES) {
+            NeighbourIndexTest.assertSameNeighbours(new LinearScanIndex(reference, false), index, queries, k);
+        }
+        assertNull(index.statistics());
+    }
+
+    @Test
+    void queriesOffTheGridStayExact() {
+        Dataset reference = NeighbourIndexTest.integerRows(500, 8, 23);
+        float[] features = NeighbourIndexTest.gaussianRows(30, 8, 24).features().clone();
+        for (int i = 0; i < features.length; i++) {
+            features[i] = features[i] * 3 + (i % 7 == 0 ? 300 : 0); // Fractions, negatives and values over 255
+        }
+        Dataset queries = new Dataset(30, 8, features, new int[30], new String[] {"x"});
+        QuantizedScanIndex index = new QuantizedScanIndex(reference, 4);
+        assertTrue(index.exact());
+        for (int k : NeighbourIndexTest.K_VALUES) {
+            NeighbourIndexTest.assertSameNeighbours(new LinearScanIndex(reference, false), index, queries, k);
+        }
+        assertNotNull(index.statistics());
+    }
+
+    @Test
+    void continuousReferenceIsApproximate() {
+        QuantizedScanIndex index = new QuantizedScanIndex(NeighbourIndexTest.gaussianRows(100, 4, 25), 4);
+        assertFalse(index.exact());
+    }
+}
@@ -0,0 +1,195 @@
+package machine_learning_algorithms;
+
+import static machine_learning_algorithms.NeighbourIndexTest.gaussianRows;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ReferenceStoreTest {
+
+    private static final int DIM = 8;
+
+    private static ReferenceStore store(Dataset reference, String kind) {
+        return new ReferenceStore(reference, NeighbourIndex.build(kind, reference, 8), kind, 8, WorkerPool.shared());
+    }
+
+    // Features of the live rows by id, kept next to the store to check its answers
+    private static final class Expected {
+        final List<float[]> rows = new ArrayList<>();
+        final List<Boolean> live = new ArrayList<>();
+
+        void add(float[] features) {
+            rows.add(features);
+            live.add(true);
+        }
+
+        // The K nearest live rows by brute force, with the same tie order as NeighbourHeap
+        NeighbourHeap search(float[] query, int k) {
+            NeighbourHeap nearest = new NeighbourHeap(k);
+            for (int id = 0; id < rows.size(); id++) {
+                if (live.get(id)) {
+                    nearest.offer(DistanceKernels.squaredEuclidean(query, 0, rows.get(id), 0, DIM), id);
+                }
+            }
+            return nearest;
+        }
+    }
+
+    private static void assertSameNeighbours(Expected expected, ReferenceStore store, Dataset queries, int k) {
+        for (int query = 0; query < queries.rows(); query++) {
+            float[] features = new float[DIM];
+            queries.copyRow(query, features, 0);
+            NeighbourHeap want = expected.search(features, k);
+            NeighbourHeap got = new NeighbourHeap(k);
+            store.search(features, 0, got);
+            want.sortAscending();
+            got.sortAscending();
+            // Indexes sum the squared differences in their own order, so distances may differ in the last bit
+            assertEquals(want.size(), got.size(), "query " + query);
+            for (int i = 0; i < want.size(); i++) {
+                assertEquals(want.row(i), got.row(i), "query " + query + ", neighbour " + i);
+                assertEquals(want.distance(i), got.distance(i), 1e-9, "query " + query + ", neighbour " + i);
+            }
+        }
+    }
+
+    // Rows added past a segment, deleted rows and compaction all leave the search exact
+    @ParameterizedTest
+    @ValueSource(strings = {"linear", "blocked", "kdtree", "balltree"})
+    void searchMatchesBruteForceThroughSealingAndCompaction(String kind) {
+        Dataset training = gaussianRows(500, DIM, 1);
+        ReferenceStore store = store(training, kind);
+        Expected expected = new Expected();
+        for (int row = 0; row < training.rows(); row++) {
+            float[] features = new float[DIM];
+            training.copyRow(row, features, 0);
+            expected.add(features);
+        }
+        Dataset added = gaussianRows(AlgorithmRunner.KNN_Segment_Rows + 300, DIM, 2);
+        for (int row = 0; row < added.rows(); row++) {
+            float[] features = new float[DIM];
+            added.copyRow(row, features, 0);
+            assertEquals(expected.rows.size(), store.add(features, 0, "x"));
+            expected.add(features);
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < 400; i++) {
+            int id = random.nextInt(expected.rows.size());
+            assertEquals(expected.live.get(id), store.delete(id));
+            expected.live.set(id, false);
+        }
+        int live = (int) expected.live.stream().filter(alive -> alive).count();
+        assertEquals(live, store.size());
+
+        Dataset queries = gaussianRows(50, DIM, 4);
+        assertSameNeighbours(expected, store, queries, 10);
+        store.compact();
+        assertEquals(live, store.size());
+        assertEquals(live, store.liveRows().rows());
+        assertSameNeighbours(expected, store, queries, 10);
+    }
+
+    // Segments sealed by concurrent writers while queries run lose no rows and find every row added
+    @Test
+    void concurrentWritersSealSegmentsWithoutLosingRows() throws InterruptedException {
+        Dataset training = gaussianRows(100, DIM, 8);
+        ReferenceStore store = store(training, "kdtree");
+        int writers = 4;
+        int perWriter = AlgorithmRunner.KNN_Segment_Rows;
+        Dataset added = gaussianRows(writers * perWriter, DIM, 9);
+        int[] ids = new int[added.rows()];
+        Thread[] threads = new Thread[writers + 1];
+        for (int w = 0; w < writers; w++) {
+            int first = w * perWriter;
+            threads[w] = new Thread(() -> {
+                float[] features = new float[DIM];
+                for (int row = first; row < first + perWriter; row++) {
+                    added.copyRow(row, features, 0);
+                    ids[row] = store.add(features, 0, "x");
+                }
+            });
+        }
+        float[] query = new float[DIM];
+        threads[writers] = new Thread(() -> {
+            NeighbourHeap nearest = new NeighbourHeap(5);
+            while (store.size() < training.rows() + added.rows()) {
+                nearest.clear();
+                store.search(query, 0, nearest);
+            }
+        });
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(training.rows() + added.rows(), store.size());
+        NeighbourHeap nearest = new NeighbourHeap(1);
+        for (int row = 0; row < added.rows(); row += 97) {
+            float[] features = new float[DIM];
+            added.copyRow(row, features, 0);
+            nearest.clear();
+            store.search(features, 0, nearest);
+            assertEquals(ids[row], nearest.row(0), "row " + row);
+        }
+    }
+
+    @Test
+    void deletedRowsAreNeverReturned() {
+        Dataset training = gaussianRows(50, DIM, 5);
+        ReferenceStore store = store(training, "kdtree");
+        float[] query = new float[DIM];
+        training.copyRow(7, query, 0);
+        NeighbourHeap nearest = new NeighbourHeap(1);
+        store.search(query, 0, nearest);
+        assertEquals(7, nearest.row(0));
+
+        assertTrue(store.delete(7));
+        assertFalse(store.delete(7));
+        assertFalse(store.delete(1000));
+        nearest.clear();
+        store.search(query, 0, nearest);
+        assertTrue(nearest.row(0) != 7);
+        assertEquals(49, store.size());
+    }
+
+    @Test
+    void unseenLabelsGetTheNextLabelId() {
+        Dataset training = gaussianRows(20, DIM, 6);
+        ReferenceStore store = store(training, "linear");
+        int first = store.add(new Sample(new float[DIM], "new"));
+        int second = store.add(new Sample(new float[DIM], "x"));
+        int third = store.add(new Sample(new float[DIM], "new"));
+
+        assertArrayEquals(new String[] {"x", "new"}, store.labelNames());
+        assertEquals(1, store.labels()[first]);
+        assertEquals(0, store.labels()[second]);
+        assertEquals(1, store.labels()[third]);
+    }
+
+    // Queries whose data set predates a new label still get predictions of it
+    @Test
+    void knnPredictsLabelsAddedAfterFit() {
+        Dataset training = gaussianRows(100, DIM, 7);
+        KNN_Algorithm knn = new KNN_Algorithm(WorkerPool.shared(), 1);
+        knn.fit(training);
+        float[] far = new float[DIM];
+        Arrays.fill(far, 50);
+        knn.add(new Sample(far, "far"));
+
+        Dataset queries = new Dataset(1, DIM, far.clone(), new int[1], training.labelNames());
+        assertArrayEquals(new int[] {1}, knn.predictBatch(queries));
+        assertEquals("far", knn.labelNames()[1]);
+    }
+}
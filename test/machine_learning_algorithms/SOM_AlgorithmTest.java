@@ -0,0 +1,208 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class SOM_AlgorithmTest {
+
+    private static final int DIM = 4;
+
+    // Two Gaussian clusters, labelled "a" around 0 and "b" around 5
+    private static Dataset clusters(int rows, long seed) {
+        Random random = new Random(seed);
+        float[] features = new float[rows * DIM];
+        int[] labels = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            labels[row] = row % 2;
+            for (int d = 0; d < DIM; d++) {
+                features[row * DIM + d] = (float) (labels[row] * 5 + random.nextGaussian());
+            }
+        }
+        return new Dataset(rows, DIM, features, labels, new String[] {"a", "b"});
+    }
+
+    // Once fitted, the stream continues at radius one: the online rule then moves the BMU and nothing else
+    @Test
+    void streamedSampleAfterFitMovesOnlyItsBestMatchingUnit() {
+        SOM_Algorithm som = new SOM_Algorithm(10, 10, DIM);
+        som.fit(clusters(400, 1));
+        float[] sample = {2.5f, 2.5f, 2.5f, 2.5f};
+        int bmu = som.lookup(sample, 0);
+        float[] before = som.codebook().clone();
+
+        assertEquals(1, som.partialFit(Collections.singletonList(new Sample(sample, "a")).iterator()));
+
+        float[] after = som.codebook();
+        for (int node = 0; node < 100; node++) {
+            float[] was = Arrays.copyOfRange(before, node * DIM, (node + 1) * DIM);
+            float[] is = Arrays.copyOfRange(after, node * DIM, (node + 1) * DIM);
+            if (node == bmu) {
+                assertFalse(Arrays.equals(was, is), "The BMU did not move");
+            } else {
+                assertArrayEquals(was, is, "Node " + node + " moved");
+            }
+        }
+    }
+
+    @Test
+    void streamLearnsLabelsNotSeenInTraining() {
+        SOM_Algorithm som = new SOM_Algorithm(6, 6, DIM);
+        som.fit(clusters(200, 2));
+        float[] far = {-8, -8, -8, -8};
+        List<Sample> stream = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            stream.add(new Sample(far.clone(), "c"));
+        }
+        som.partialFit(stream.iterator());
+
+        assertArrayEquals(new String[] {"a", "b", "c"}, som.labelNames());
+        assertEquals(2, som.predict(far, 0));
+        assertEquals(1, som.predict(new float[] {5, 5, 5, 5}, 0));
+    }
+
+    // An untrained map takes its first samples as nodes, so it answers from the first sample on
+    @Test
+    void untrainedMapStartsFromItsFirstSamples() {
+        SOM_Algorithm som = new SOM_Algorithm(2, 2, DIM);
+        som.partialFit(Arrays.asList(new Sample(new float[] {0, 0, 0, 0}, "low"),
+                new Sample(new float[] {9, 9, 9, 9}, "high")).iterator());
+
+        assertArrayEquals(new String[] {"low", "high"}, som.labelNames());
+        assertEquals(0, som.predict(new float[] {1, 0, 1, 0}, 0));
+        assertEquals(1, som.predict(new float[] {8, 9, 8, 9}, 0));
+    }
+
+    // Rows are mapped in fixed shards and the shard sums merged in a fixed tree, so the pool size
+    // cannot change the codebook, not even in the last bit
+    @Test
+    void batchTrainingGivesTheSameCodebookOnAnyNumberOfThreads() {
+        Dataset data = clusters(3000, 3);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(4);
+        try {
+            SOM_Algorithm sequential = new SOM_Algorithm(8, 6, DIM, single);
+            SOM_Algorithm parallel = new SOM_Algorithm(8, 6, DIM, many);
+            sequential.trainBatch(data, 5);
+            parallel.trainBatch(data, 5);
+            assertArrayEquals(sequential.codebook(), parallel.codebook());
+        } finally {
+            single.shutdown();
+            many.shutdown();
+        }
+    }
+
+    // With one epoch the radius is 1, so on a 2 x 2 map a sample pulls its BMU with weight 1, the two
+    // grid neighbours of its BMU with exp(-1/2) and the diagonal node with exp(-1)
+    @Test
+    void oneBatchEpochMovesEveryNodeToTheNeighbourhoodWeightedMean() {
+        int dim = 2;
+        float[] features = {0, 0, 1, 0, 9, 1, 10, 10, 0, 8, 4, 4};
+        int rows = features.length / dim;
+        Dataset data = new Dataset(rows, dim, features, new int[rows], new String[] {"x"});
+
+        // Both maps draw the same starting rows from the same seed; zero epochs keep them as they are
+        SOM_Algorithm start = new SOM_Algorithm(2, 2, dim);
+        start.trainBatch(data, 0);
+        float[] initial = start.codebook().clone();
+        SOM_Algorithm som = new SOM_Algorithm(2, 2, dim);
+        som.trainBatch(data, 1);
+
+        // Node i * 2 + j sits at (i, j): the other node in the same row or column is a grid neighbour
+        double[][] weight = new double[4][4];
+        for (int a = 0; a < 4; a++) {
+            for (int b = 0; b < 4; b++) {
+                int steps = Math.abs(a / 2 - b / 2) + Math.abs(a % 2 - b % 2);
+                weight[a][b] = steps == 0 ? 1 : steps == 1 ? Math.exp(-0.5) : Math.exp(-1);
+            }
+        }
+        double[] numerator = new double[4 * dim];
+        double[] denominator = new double[4];
+        for (int row = 0; row < rows; row++) {
+            int bmu = 0;
+            double best = Double.MAX_VALUE;
+            for (int node = 0; node < 4; node++) {
+                double dx = features[row * dim] - initial[node * dim];
+                double dy = features[row * dim + 1] - initial[node * dim + 1];
+                if (dx * dx + dy * dy < best) {
+                    best = dx * dx + dy * dy;
+                    bmu = node;
+                }
+            }
+            for (int node = 0; node < 4; node++) {
+                denominator[node] += weight[bmu][node];
+                for (int k = 0; k < dim; k++) {
+                    numerator[node * dim + k] += weight[bmu][node] * features[row * dim + k];
+                }
+            }
+        }
+        float[] expected = new float[4 * dim];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (float) (numerator[i] / denominator[i / dim]);
+        }
+        assertArrayEquals(expected, som.codebook(), 1e-6f);
+    }
+
+    // Audited searches as "mismatches of checks" pairs from statistics(): windowed training, then lookup
+    private static long[] audits(SOM_Algorithm som) {
+        Matcher numbers = Pattern.compile("(\\d+) of (\\d+)").matcher(som.statistics(null));
+        long[] audits = new long[4];
+        for (int i = 0; i < 4; i += 2) {
+            assertTrue(numbers.find(), som.statistics(null));
+            audits[i] = Long.parseLong(numbers.group(1));
+            audits[i + 1] = Long.parseLong(numbers.group(2));
+        }
+        return audits;
+    }
+
+    // The coarse-to-fine lookup on a map trained with local search mostly finds the exhaustive BMU,
+    // and every 16th lookup is audited: the counters hold exactly the audited disagreements
+    @Test
+    void coarseLookupAgreesWithTheExhaustiveSearchAndCountsItsMisses() throws IOException {
+        Dataset digits = TreeBuilderTest.digits();
+        SOM_Algorithm som = new SOM_Algorithm(12, 12, digits.dim(), WorkerPool.shared(), "local");
+        som.trainBatch(digits, 10);
+        long[] afterTraining = audits(som);
+        assertTrue(afterTraining[1] > 0, "Windowed training was never audited");
+        assertEquals(0, afterTraining[3]);
+
+        int agreeing = 0;
+        int auditedMisses = 0;
+        int lookups = digits.rows() / 16 * 16;
+        for (int i = 1; i <= lookups; i++) {
+            int offset = digits.offset(i - 1);
+            int bmu = som.lookup(digits.features(), offset);
+            boolean agrees = bmu == som.findBMU(digits.features(), offset);
+            if (agrees) {
+                agreeing++;
+            } else if (i % 16 == 0) {
+                auditedMisses++;
+            }
+        }
+        assertTrue(agreeing >= 0.9 * lookups, agreeing + " of " + lookups + " lookups found the exhaustive BMU");
+        assertTrue(auditedMisses > 0, "No audited disagreement to count");
+        long[] audits = audits(som);
+        assertEquals(lookups / 16, audits[3]);
+        assertEquals(auditedMisses, audits[2]);
+    }
+
+    @Test
+    void exhaustiveSearchReportsNoAudit() {
+        SOM_Algorithm som = new SOM_Algorithm(4, 4, DIM, WorkerPool.shared(), "exhaustive");
+        som.trainBatch(clusters(100, 4), 3);
+        assertEquals(null, som.statistics(null));
+    }
+}
@@ -0,0 +1,212 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ScoringServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ScoringServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    // Predicts the first feature of each row as the label id, and remembers the size of every batch
+    private static final class EchoClassifier implements Classifier {
+        final List<Integer> batchRows = new CopyOnWriteArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch gate; // predictBatch waits for it when set
+        volatile String[] labelNames = {"zero", "one", "two"};
+
+        @Override
+        public void fit(Dataset training) {
+        }
+
+        @Override
+        public int predict(float[] features, int offset) {
+            return (int) features[offset];
+        }
+
+        @Override
+        public int[] predictBatch(Dataset queries) {
+            entered.countDown();
+            CountDownLatch wait = gate;
+            if (wait != null) {
+                try {
+                    wait.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            batchRows.add(queries.rows());
+            return Classifier.super.predictBatch(queries);
+        }
+
+        @Override
+        public String[] labelNames() {
+            return labelNames;
+        }
+
+        @Override
+        public int dim() {
+            return 2;
+        }
+
+        @Override
+        public void save(Path path) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void load(Path path) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private ScoringServer start(Classifier classifier, int maxBatch, long maxWaitMicros, int queueCapacity) throws IOException {
+        server = new ScoringServer(classifier, 0, maxBatch, maxWaitMicros, 8, queueCapacity);
+        server.start();
+        return server;
+    }
+
+    private CompletableFuture<HttpResponse<String>> post(String body) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + "/predict"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path)).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // Concurrent requests share one predictBatch call, and each gets the answers for its own rows
+    @Test
+    void coalescesConcurrentRequestsAndSplitsTheAnswers() throws Exception {
+        EchoClassifier classifier = new EchoClassifier();
+        start(classifier, 8, TimeUnit.SECONDS.toMicros(10), 64);
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            // Two rows per request: labels i % 3 and (i + 1) % 3, extra trailing values are ignored
+            responses.add(post(i % 3 + ",9,7\n" + (i + 1) % 3 + ",9,7\n"));
+        }
+        String[] names = classifier.labelNames;
+        for (int i = 0; i < 4; i++) {
+            HttpResponse<String> response = responses.get(i).get(30, TimeUnit.SECONDS);
+            assertEquals(200, response.statusCode());
+            assertEquals(names[i % 3] + "\n" + names[(i + 1) % 3] + "\n", response.body());
+        }
+        assertEquals(Arrays.asList(8), classifier.batchRows);
+    }
+
+    // A request that would overflow the batch waits for the next one
+    @Test
+    void neverExceedsTheMaximumBatch() throws Exception {
+        EchoClassifier classifier = new EchoClassifier();
+        start(classifier, 3, 0, 64);
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            responses.add(post("1,0\n2,0\n"));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals("one\ntwo\n", response.get(30, TimeUnit.SECONDS).body());
+        }
+        int total = 0;
+        for (int rows : classifier.batchRows) {
+            assertTrue(rows <= 3, "Batch of " + rows + " rows");
+            total += rows;
+        }
+        assertEquals(12, total);
+    }
+
+    // While the batcher is stuck in predictBatch, one request fills the queue and the others are refused
+    @Test
+    void refusesRequestsWhenTheQueueIsFull() throws Exception {
+        EchoClassifier classifier = new EchoClassifier();
+        classifier.gate = new CountDownLatch(1);
+        start(classifier, 1, 0, 1);
+        CompletableFuture<HttpResponse<String>> scoring = post("0,0\n");
+        assertTrue(classifier.entered.await(30, TimeUnit.SECONDS));
+
+        List<CompletableFuture<HttpResponse<String>>> waiting = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            waiting.add(post(i % 3 + ",0\n"));
+        }
+        // Only refused requests can be answered before the gate opens; wait for all but the queued one
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (waiting.stream().filter(CompletableFuture::isDone).count() < waiting.size() - 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        classifier.gate.countDown();
+
+        assertEquals("zero\n", scoring.get(30, TimeUnit.SECONDS).body());
+        int refused = 0;
+        for (int i = 0; i < waiting.size(); i++) {
+            HttpResponse<String> response = waiting.get(i).get(30, TimeUnit.SECONDS);
+            if (response.statusCode() == 503) {
+                refused++;
+            } else {
+                assertEquals(200, response.statusCode());
+                assertEquals(classifier.labelNames[i % 3] + "\n", response.body());
+            }
+        }
+        assertEquals(4, refused);
+    }
+
+    // Label ids added to the model after the server started are answered with their names
+    @Test
+    void namesLabelsAddedWhileServing() throws Exception {
+        EchoClassifier classifier = new EchoClassifier();
+        start(classifier, 8, 0, 64);
+        classifier.labelNames = new String[] {"zero", "one", "two", "three"};
+        HttpResponse<String> response = post("3,0\n").get(30, TimeUnit.SECONDS);
+        assertEquals(200, response.statusCode());
+        assertEquals("three\n", response.body());
+    }
+
+    @Test
+    void rejectsMalformedRequests() throws Exception {
+        start(new EchoClassifier(), 8, 0, 64);
+        assertEquals(400, post("1\n").get(30, TimeUnit.SECONDS).statusCode());
+        assertEquals(400, post("1,x\n").get(30, TimeUnit.SECONDS).statusCode());
+        assertEquals(400, post("\n").get(30, TimeUnit.SECONDS).statusCode());
+        assertEquals(405, get("/predict").statusCode());
+    }
+
+    @Test
+    void answersHealthAndStats() throws Exception {
+        start(new EchoClassifier(), 8, 0, 64);
+        assertEquals(200, post("1,0\n").get(30, TimeUnit.SECONDS).statusCode());
+        HttpResponse<String> health = get("/health");
+        assertEquals(200, health.statusCode());
+        assertEquals("ok\n", health.body());
+
+        HttpResponse<String> stats = get("/stats");
+        assertEquals(200, stats.statusCode());
+        assertTrue(stats.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+        for (String field : new String[] {"\"requests\"", "\"rows\"", "\"rejected\"", "\"batches\"", "\"latency_ms\"", "\"p99\""}) {
+            assertTrue(stats.body().contains(field), stats.body());
+        }
+    }
+}
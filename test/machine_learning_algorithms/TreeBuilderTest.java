@@ -0,0 +1,159 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class TreeBuilderTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    static Dataset digits() throws IOException {
+        return Dataset.parseCsv(AlgorithmRunner.Dataset_1);
+    }
+
+    // Features on a grid of at most 40 values, labels from a noisy rule over the first attributes
+    static Dataset gridRows(int rows, int dim, long seed) {
+        Random random = new Random(seed);
+        float[] features = new float[rows * dim];
+        int[] labels = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            for (int d = 0; d < dim; d++) {
+                features[row * dim + d] = (random.nextInt(40) - 20) / 4f;
+            }
+            float score = features[row * dim] + 2 * features[row * dim + 1] - features[row * dim + 2];
+            labels[row] = random.nextInt(10) == 0 ? random.nextInt(3) : score < -3 ? 0 : score < 4 ? 1 : 2;
+        }
+        return new Dataset(rows, dim, features, labels, new String[] {"low", "mid", "high"});
+    }
+
+    static void assertSameTree(C45_Algorithm.Node expected, C45_Algorithm.Node actual, String path) {
+        assertEquals(expected.attribute, actual.attribute, path + " attribute");
+        assertEquals(expected.threshold, actual.threshold, path + " threshold");
+        assertEquals(expected.label, actual.label, path + " label");
+        assertEquals(expected.majorityClass, actual.majorityClass, path + " majority");
+        assertEquals(expected.rows, actual.rows, path + " rows");
+        if (expected.attribute >= 0) {
+            assertSameTree(expected.left, actual.left, path + "L");
+            assertSameTree(expected.right, actual.right, path + "R");
+        }
+    }
+
+    static int leaves(C45_Algorithm.Node node) {
+        return node.attribute < 0 ? 1 : leaves(node.left) + leaves(node.right);
+    }
+
+    // Rows of one attribute, labelled by the given rule, plus a constant attribute that never splits
+    private static Dataset oneAttribute(float[] values, int[] labels) {
+        float[] features = new float[values.length * 2];
+        for (int row = 0; row < values.length; row++) {
+            features[row * 2] = values[row];
+        }
+        return new Dataset(values.length, 2, features, labels, new String[] {"a", "b"});
+    }
+
+    private static int classify(C45_Algorithm.Node node, float value) {
+        while (node.attribute >= 0) {
+            node = value <= node.threshold ? node.left : node.right;
+        }
+        return node.label;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"presorted", "histogram"})
+    void thresholdIsTheLargestValueOnTheLeft(String engine) {
+        Dataset data = oneAttribute(new float[] {9, 1, 8, 2, 7, 3}, new int[] {1, 0, 1, 0, 1, 0});
+        C45_Algorithm.Node root = engine.equals("presorted")
+                ? new PresortedTreeBuilder(data, "gain", 0, 1, 0, null).build()
+                : new HistogramTreeBuilder(data, "gain", 0, 1, 0, null).build();
+        assertEquals(0, root.attribute);
+        assertEquals(3f, root.threshold);
+        assertEquals(0, root.left.label);
+        assertEquals(1, root.right.label);
+    }
+
+    // A band in the middle of one attribute needs two thresholds on it, one below the other
+    @ParameterizedTest
+    @ValueSource(strings = {"presorted", "histogram"})
+    void anAttributeCanBeTestedAgainFurtherDown(String engine) {
+        float[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        int[] labels = {0, 0, 0, 1, 1, 1, 0, 0, 0};
+        Dataset data = oneAttribute(values, labels);
+        C45_Algorithm.Node root = engine.equals("presorted")
+                ? new PresortedTreeBuilder(data, "gain", 0, 1, 0, null).build()
+                : new HistogramTreeBuilder(data, "gain", 0, 1, 0, null).build();
+        assertEquals(0, root.attribute);
+        assertEquals(3, leaves(root));
+        for (int row = 0; row < values.length; row++) {
+            assertEquals(labels[row], classify(root, values[row]), "value " + values[row]);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gain", "gainratio"})
+    void histogramAndPresortedGrowTheSameTreeOnTheDigits(String criterion) throws IOException {
+        Dataset digits = digits();
+        C45_Algorithm.Node presorted = new PresortedTreeBuilder(digits, criterion, 0, 2, 0, null).build();
+        C45_Algorithm.Node histogram = new HistogramTreeBuilder(digits, criterion, 0, 2, 0, null).build();
+        assertTrue(leaves(presorted) > 50);
+        assertSameTree(presorted, histogram, "");
+    }
+
+    @Test
+    void histogramAndPresortedGrowTheSameTreeOnFractionalValues() {
+        Dataset data = gridRows(3000, 6, 31);
+        assertSameTree(new PresortedTreeBuilder(data, "gain", 0, 1, 0, null).build(),
+                new HistogramTreeBuilder(data, "gain", 0, 1, 0, null).build(), "");
+    }
+
+    @Test
+    void growthLimitsApplyToBothEngines() {
+        Dataset data = gridRows(2000, 5, 32);
+        C45_Algorithm.Node presorted = new PresortedTreeBuilder(data, "gain", 3, 20, 0.01, null).build();
+        C45_Algorithm.Node histogram = new HistogramTreeBuilder(data, "gain", 3, 20, 0.01, null).build();
+        assertSameTree(presorted, histogram, "");
+        assertTrue(leaves(presorted) <= 8);
+    }
+
+    @Test
+    void parallelBuildsEqualTheSequentialOnes() throws IOException {
+        Dataset digits = digits();
+        assertSameTree(new PresortedTreeBuilder(digits, "gain", 0, 2, 0, null).build(),
+                new PresortedTreeBuilder(digits, "gain", 0, 2, 0, pool).build(), "");
+        assertSameTree(new HistogramTreeBuilder(digits, "gainratio", 0, 2, 0, null).build(),
+                new HistogramTreeBuilder(digits, "gainratio", 0, 2, 0, pool).build(), "");
+    }
+
+    @Test
+    void everyTrainingRowReachesALeafOfItsCount() throws IOException {
+        Dataset digits = digits();
+        C45_Algorithm.Node root = new HistogramTreeBuilder(digits, "gain", 0, 1, 0, null).build();
+        assertNotNull(root);
+        assertEquals(digits.rows(), root.rows);
+        assertEquals(digits.rows(), leafRows(root));
+    }
+
+    private static int leafRows(C45_Algorithm.Node node) {
+        return node.attribute < 0 ? node.rows : leafRows(node.left) + leafRows(node.right);
+    }
+}
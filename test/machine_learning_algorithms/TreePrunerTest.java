@@ -0,0 +1,104 @@
+package machine_learning_algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class TreePrunerTest {
+
+    // The expected outcomes below are worked out by hand from Quinlan's estimate at CF = 0.25,
+    // where the interpolated normal deviate is 0.6925
+    private final TreePruner pruner = new TreePruner(0.25);
+
+    private static C45_Algorithm.Node leaf(int label, int rows, int errors) {
+        C45_Algorithm.Node node = new C45_Algorithm.Node();
+        node.label = label;
+        node.majorityClass = label;
+        node.rows = rows;
+        node.errors = errors;
+        return node;
+    }
+
+    private static C45_Algorithm.Node split(int majorityClass, int errors, C45_Algorithm.Node left, C45_Algorithm.Node right) {
+        C45_Algorithm.Node node = new C45_Algorithm.Node();
+        node.attribute = 0;
+        node.threshold = 0.5f;
+        node.left = left;
+        node.right = right;
+        node.majorityClass = majorityClass;
+        node.rows = left.rows + right.rows;
+        node.errors = errors;
+        return node;
+    }
+
+    private static void assertLeaf(int label, C45_Algorithm.Node node) {
+        assertEquals(-1, node.attribute);
+        assertEquals(label, node.label);
+        assertNull(node.left);
+        assertNull(node.right);
+    }
+
+    // A split that separates nothing: the leaf estimate 4 + 1.59 beats 2 * (2 + 1.24)
+    @Test
+    void replacesASplitThatDoesNotReduceErrors() {
+        C45_Algorithm.Node root = split(0, 4, leaf(0, 5, 2), leaf(0, 5, 2));
+        assertSame(root, pruner.prune(root));
+        assertLeaf(0, root);
+    }
+
+    // Two pure halves of 10 rows estimate 1.29 errors each, far below the leaf's 12.02
+    @Test
+    void keepsASplitThatSeparatesTheClasses() {
+        C45_Algorithm.Node left = leaf(0, 10, 0);
+        C45_Algorithm.Node right = leaf(1, 10, 0);
+        C45_Algorithm.Node root = split(0, 10, left, right);
+        pruner.prune(root);
+
+        assertEquals(0, root.attribute);
+        assertSame(left, root.left);
+        assertSame(right, root.right);
+        assertLeaf(0, left);
+        assertLeaf(1, right);
+    }
+
+    // Pruning works bottom up: the inner split goes first, then the root is compared with what is left
+    @Test
+    void prunesInnerSplitsBeforeJudgingTheRoot() {
+        C45_Algorithm.Node inner = split(1, 4, leaf(1, 5, 2), leaf(1, 5, 2));
+        C45_Algorithm.Node root = split(0, 10, leaf(0, 10, 0), inner);
+        pruner.prune(root);
+
+        assertEquals(0, root.attribute);
+        assertLeaf(1, inner);
+    }
+
+    // E < 1: a pure leaf of N rows estimates N * (1 - CF^(1/N)) errors, 1.110 for the 3 rows here,
+    // rather than the normal approximation. The leaf of 10 rows with 4 errors estimates 5.587, within
+    // 0.1 of 1.110 + 4.386 = 5.496, so the split goes; the normal approximation of the pure leaf
+    // (1.075) would have kept it
+    @Test
+    void pureLeavesUseTheExactBinomialLimit() {
+        C45_Algorithm.Node root = split(0, 4, leaf(0, 3, 0), leaf(1, 7, 3));
+        pruner.prune(root);
+        assertLeaf(0, root);
+    }
+
+    // N <= E: a leaf whose errors reach its rows adds 0.67 * (N - E) = 0 instead of taking the
+    // square root of a negative variance. With 2 + 1 errors below the leaf's 3.08 + 0.1, the split goes
+    @Test
+    void leavesWithAsManyErrorsAsRowsAddNoErrors() {
+        C45_Algorithm.Node root = split(0, 2, leaf(1, 2, 2), leaf(0, 2, 0));
+        pruner.prune(root);
+        assertLeaf(0, root);
+    }
+
+    @Test
+    void rejectsConfidenceOutsideTheOpenUnitInterval() {
+        assertThrows(IllegalArgumentException.class, () -> new TreePruner(0));
+        assertThrows(IllegalArgumentException.class, () -> new TreePruner(1));
+        assertThrows(IllegalArgumentException.class, () -> new TreePruner(Double.NaN));
+    }
+}